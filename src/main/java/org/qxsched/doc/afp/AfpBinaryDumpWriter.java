@@ -0,0 +1,160 @@
+package org.qxsched.doc.afp;
+
+import java.io.OutputStream;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpBinaryDumpWriter} dumps records in a compact length
+ * prefixed binary format. All numbers are big endian and unsigned. Every
+ * record is written as an entry:
+ * 
+ * <pre>
+ * u32 entry length, not counting this field
+ * u64 offset
+ * u32 structured field identifier
+ * u8  flags
+ * u16 reserved
+ * u16 length
+ * u8  bits: 1 CR LF, 2 digest, 4 data skipped, 8 TLE attribute
+ * u8  level, at most 255
+ * u8  abbreviation length, abbreviation
+ * u8  algorithm length, algorithm            if digest
+ * u16 data length, data or digest            unless data skipped
+ * u16 name length, name, u16 value length,   if TLE attribute
+ *     value; length 0xFFFF means null
+ * </pre>
+ * 
+ * Strings are UTF-8 encoded.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpBinaryDumpWriter extends AfpDumpWriter {
+
+	/**
+	 * Contains the bit set if the record ends in CR LF.
+	 */
+	public static final int BIT_CRLF = 1;
+
+	/**
+	 * Contains the bit set if the digest replaces the data.
+	 */
+	public static final int BIT_DIGEST = 2;
+
+	/**
+	 * Contains the bit set if the data is skipped.
+	 */
+	public static final int BIT_SKIPPED = 4;
+
+	/**
+	 * Contains the bit set if the TLE attribute is written.
+	 */
+	public static final int BIT_TLE = 8;
+
+	private static final int NULL = 0xffff;
+
+	/**
+	 * Constructor accepting the output stream to write to and the properties
+	 * selecting data or digest.
+	 * 
+	 * @param out
+	 *            the output stream to write to.
+	 * @param props
+	 *            the properties selecting data or digest.
+	 */
+	public AfpBinaryDumpWriter(OutputStream out, AfpReadWriteProperties props) {
+		super(out, props);
+	}
+
+	@Override
+	protected void encode(AfpRecord rec, long offset, int level, byte[] data,
+			String algorithm, String attName, String attVal)
+			throws AfpException {
+
+		// Compute entry size
+		String abbrev = rec.getSFIdentifierAbbrev();
+		if (abbrev == null) {
+			abbrev = "";
+		}
+		int abbrevLen = utf8Length(abbrev);
+		int size = 19 + 1 + abbrevLen;
+		int bits = rec.isEndsInCrLf() ? BIT_CRLF : 0;
+		int algLen = 0;
+		if (algorithm != null) {
+			bits |= BIT_DIGEST;
+			algLen = utf8Length(algorithm);
+			size += 1 + algLen;
+		}
+		if (data == null) {
+			bits |= BIT_SKIPPED;
+		} else {
+			size += 2 + data.length;
+		}
+		int nameLen = attName == null ? 0 : utf8Length(attName);
+		int valLen = attVal == null ? 0 : utf8Length(attVal);
+		if (attName != null || attVal != null) {
+			bits |= BIT_TLE;
+			size += 4 + nameLen + valLen;
+		}
+
+		// Fixed fields
+		ensure(4 + size);
+		buff.putInt(size);
+		buff.putLong(offset);
+		buff.putInt(rec.getSFIdentifier());
+		buff.put((byte) rec.getFlags());
+		buff.putShort((short) rec.getReserved());
+		buff.putShort((short) rec.getLength());
+		buff.put((byte) bits);
+		buff.put((byte) Math.min(level, 0xff));
+
+		// Variable fields
+		buff.put((byte) abbrevLen);
+		putString(abbrev);
+		if (algorithm != null) {
+			buff.put((byte) algLen);
+			putString(algorithm);
+		}
+		if (data != null) {
+			buff.putShort((short) data.length);
+			buff.put(data);
+		}
+		if ((bits & BIT_TLE) != 0) {
+			buff.putShort((short) (attName == null ? NULL : nameLen));
+			putString(attName);
+			buff.putShort((short) (attVal == null ? NULL : valLen));
+			putString(attVal);
+		}
+	}
+
+	// Puts the UTF-8 encoding of the supplied string, nothing if null
+	private void putString(String str) {
+		if (str == null) {
+			return;
+		}
+		for (int i = 0; i < str.length();) {
+			i = putUtf8(str, i);
+		}
+	}
+}
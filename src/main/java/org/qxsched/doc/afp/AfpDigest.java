@@ -0,0 +1,166 @@
+package org.qxsched.doc.afp;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpDigest} computes digests of record data. Besides the
+ * algorithms of {@link MessageDigest}, e.g. {@link #MD5} and {@link #SHA1},
+ * the non-cryptographic checksums {@link #CRC32} and {@link #FNV64} are
+ * supported.
+ * 
+ * Message digest and checksum objects are cached per thread and reset before
+ * use, so no objects are created per digest once a thread has computed its
+ * first digest of an algorithm.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpDigest {
+
+	/**
+	 * Contains the name of the 32 bit CRC checksum.
+	 */
+	public static final String CRC32 = "CRC32";
+
+	/**
+	 * Contains the name of the 64 bit FNV-1a hash.
+	 */
+	public static final String FNV64 = "FNV-64";
+
+	/**
+	 * Contains the name of the MD5 message digest.
+	 */
+	public static final String MD5 = "MD5";
+
+	/**
+	 * Contains the name of the SHA-1 message digest.
+	 */
+	public static final String SHA1 = "SHA-1";
+
+	private static final long FNV64_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV64_PRIME = 0x100000001b3L;
+
+	private static ThreadLocal<CRC32> crc32 = new ThreadLocal<CRC32>() {
+		@Override
+		protected CRC32 initialValue() {
+			return new CRC32();
+		}
+	};
+
+	private static ThreadLocal<Map<String, MessageDigest>> messageDigests =
+			new ThreadLocal<Map<String, MessageDigest>>() {
+				@Override
+				protected Map<String, MessageDigest> initialValue() {
+					return new HashMap<String, MessageDigest>();
+				}
+			};
+
+	/**
+	 * Empty constructor.
+	 */
+	private AfpDigest() {
+	}
+
+	/**
+	 * Returns the digest of the supplied data using the supplied algorithm.
+	 * 
+	 * @param algorithm
+	 *            the algorithm.
+	 * @param data
+	 *            the data.
+	 * @return the digest, big endian for the checksums.
+	 * @throws AfpException
+	 *             if the algorithm is not supported.
+	 */
+	public static byte[] digest(String algorithm, byte[] data)
+			throws AfpException {
+
+		// Checksums
+		if (CRC32.equals(algorithm)) {
+			CRC32 crc = crc32.get();
+			crc.reset();
+			crc.update(data);
+			return toBytes(crc.getValue(), 4);
+		}
+		if (FNV64.equals(algorithm)) {
+			return toBytes(fnv64(data), 8);
+		}
+
+		// Message digests
+		return messageDigest(algorithm).digest(data);
+	}
+
+	/**
+	 * Returns the 64 bit FNV-1a hash of the supplied data.
+	 * 
+	 * @param data
+	 *            the data.
+	 * @return the 64 bit FNV-1a hash.
+	 */
+	public static long fnv64(byte[] data) {
+		long hash = FNV64_OFFSET;
+		for (int i = 0; i < data.length; i++) {
+			hash ^= data[i] & 0xff;
+			hash *= FNV64_PRIME;
+		}
+		return hash;
+	}
+
+	// Returns the reset message digest of the current thread
+	private static MessageDigest messageDigest(String algorithm)
+			throws AfpException {
+
+		// Get cached
+		Map<String, MessageDigest> cache = messageDigests.get();
+		MessageDigest ret = cache.get(algorithm);
+		if (ret != null) {
+			ret.reset();
+			return ret;
+		}
+
+		// Create and cache
+		try {
+			ret = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AfpException("No digest algorithm " + algorithm, e);
+		}
+		cache.put(algorithm, ret);
+		return ret;
+	}
+
+	// Returns the low bytes of the value, big endian
+	private static byte[] toBytes(long value, int len) {
+		byte[] ret = new byte[len];
+		for (int i = len - 1; i >= 0; i--) {
+			ret[i] = (byte) value;
+			value >>>= 8;
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,312 @@
+package org.qxsched.doc.afp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.qxsched.doc.afp.impl.AfpRecordTLE;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpDumpWriter} is the base of writers dumping records in a
+ * machine readable format. For every record the offset, the header fields,
+ * the group level, the data or its digest and, for TLE records, the attribute
+ * name and value are encoded straight into a byte buffer, which is written to
+ * the output stream when full.
+ * 
+ * The data is replaced by its digest as done by the text dump: if the
+ * {@link AfpReadWriteProperties#getMessageDigestThreshold()} is not negative
+ * and the data is longer, the digest computed with
+ * {@link AfpReadWriteProperties#getMessageDigestAlgorithm()} is written.
+ * 
+ * TLE records are converted with the factory set by
+ * {@link #setAfpFactory(AfpFactory)} or, if not set, with one factory created
+ * by the writer.
+ * 
+ * Groups are written as their records, the members one level deeper than the
+ * begin and end records. Offsets are counted from the first record written,
+ * which is the offset in the file if all records of a file are written in
+ * order.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public abstract class AfpDumpWriter {
+
+	/**
+	 * Contains the default size of the buffer.
+	 */
+	public static final int BUFFER_SIZE_DEF = 256 * 1024;
+
+	private static final int TLE = 0xD3A090;
+
+	/**
+	 * Contains the lower case hexadecimal digits.
+	 */
+	protected static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6',
+			'7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+	/**
+	 * Contains the buffer the records are encoded into.
+	 */
+	protected ByteBuffer buff;
+
+	private AfpFactory factory;
+	private long offset;
+	private OutputStream out;
+	private AfpReadWriteProperties props;
+
+	/**
+	 * Constructor accepting the output stream to write to and the properties
+	 * selecting data or digest.
+	 * 
+	 * @param out
+	 *            the output stream to write to.
+	 * @param props
+	 *            the properties selecting data or digest.
+	 */
+	protected AfpDumpWriter(OutputStream out, AfpReadWriteProperties props) {
+		this.out = out;
+		this.props = props;
+		buff = ByteBuffer.allocate(BUFFER_SIZE_DEF);
+	}
+
+	/**
+	 * Flushes the buffer and closes the output stream.
+	 * 
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void close() throws AfpException {
+		flush();
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new AfpException("Failed to close output", e);
+		}
+	}
+
+	/**
+	 * Encodes a record into the buffer.
+	 * 
+	 * @param rec
+	 *            the record.
+	 * @param offset
+	 *            the offset of the record.
+	 * @param level
+	 *            the group level of the record.
+	 * @param data
+	 *            the data of the record, its digest or <code>null</code> if
+	 *            the data is skipped.
+	 * @param algorithm
+	 *            the digest algorithm or <code>null</code> if the data is
+	 *            encoded.
+	 * @param attName
+	 *            the attribute name of a TLE record or <code>null</code>.
+	 * @param attVal
+	 *            the attribute value of a TLE record or <code>null</code>.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	protected abstract void encode(AfpRecord rec, long offset, int level,
+			byte[] data, String algorithm, String attName, String attVal)
+			throws AfpException;
+
+	/**
+	 * Makes room for the supplied number of bytes in the buffer, writing the
+	 * buffer if needed.
+	 * 
+	 * @param len
+	 *            the number of bytes needed.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	protected void ensure(int len) throws AfpException {
+		if (buff.remaining() < len) {
+			writeBuffer();
+		}
+	}
+
+	/**
+	 * Writes the buffer and flushes the output stream.
+	 * 
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void flush() throws AfpException {
+		writeBuffer();
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new AfpException("Failed to flush output", e);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes of the UTF-8 encoding of the supplied
+	 * string.
+	 * 
+	 * @param str
+	 *            the string.
+	 * @return the number of bytes of the UTF-8 encoding.
+	 */
+	protected static int utf8Length(String str) {
+		int ret = 0;
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				ret++;
+			} else if (c < 0x800) {
+				ret += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < str.length()) {
+				ret += 4;
+				i++;
+			} else {
+				ret += 3;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Puts the UTF-8 encoding of the supplied character into the buffer. A
+	 * high surrogate is combined with the following low surrogate.
+	 * 
+	 * @param str
+	 *            the string.
+	 * @param i
+	 *            the index of the character.
+	 * @return the index of the next character.
+	 */
+	protected int putUtf8(String str, int i) {
+		char c = str.charAt(i);
+		if (c < 0x80) {
+			buff.put((byte) c);
+		} else if (c < 0x800) {
+			buff.put((byte) (0xc0 | c >> 6));
+			buff.put((byte) (0x80 | c & 0x3f));
+		} else if (Character.isHighSurrogate(c) && i + 1 < str.length()) {
+			int cp = Character.toCodePoint(c, str.charAt(++i));
+			buff.put((byte) (0xf0 | cp >> 18));
+			buff.put((byte) (0x80 | cp >> 12 & 0x3f));
+			buff.put((byte) (0x80 | cp >> 6 & 0x3f));
+			buff.put((byte) (0x80 | cp & 0x3f));
+		} else {
+			buff.put((byte) (0xe0 | c >> 12));
+			buff.put((byte) (0x80 | c >> 6 & 0x3f));
+			buff.put((byte) (0x80 | c & 0x3f));
+		}
+		return i + 1;
+	}
+
+	/**
+	 * Writes the supplied record. Groups are written as their records.
+	 * 
+	 * @param rec
+	 *            the record.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void write(AfpRecord rec) throws AfpException {
+		write(rec, 0);
+	}
+
+	/**
+	 * Sets the factory used to convert TLE records. If not set, a factory is
+	 * created using {@link AfpFactory#createAfpFactory()} on the first TLE
+	 * record.
+	 * 
+	 * @param factory
+	 *            the factory to convert TLE records.
+	 */
+	public void setAfpFactory(AfpFactory factory) {
+		this.factory = factory;
+	}
+
+	// Returns the TLE record of the supplied record
+	private AfpRecordTLE tle(AfpRecord rec, byte[] data) throws AfpException {
+		if (rec instanceof AfpRecordTLE) {
+			return (AfpRecordTLE) rec;
+		}
+		if (data == null) {
+			return null;
+		}
+		if (factory == null) {
+			factory = AfpFactory.createAfpFactory();
+		}
+		return new AfpRecordTLE(rec, factory);
+	}
+
+	// Writes a record at the supplied level
+	private void write(AfpRecord rec, int level) throws AfpException {
+
+		// Write groups recursively
+		if (rec instanceof AfpRecordGroup) {
+			AfpRecordGroup group = (AfpRecordGroup) rec;
+			write(group.getBeginRecord(), level);
+			for (AfpRecord member : group.getMemberList()) {
+				write(member, level + 1);
+			}
+			if (group.getEndRecord() != null) {
+				write(group.getEndRecord(), level);
+			}
+			return;
+		}
+
+		// Replace data by digest if too long
+		byte[] recData = rec.getData();
+		byte[] data = recData;
+		String algorithm = null;
+		int threshold = props.getMessageDigestThreshold();
+		if (data != null && threshold > -1 && data.length > threshold) {
+			algorithm = props.getMessageDigestAlgorithm();
+			data = AfpDigest.digest(algorithm, data);
+		}
+
+		// Get TLE attribute
+		String attName = null;
+		String attVal = null;
+		if (rec.getSFIdentifier() == TLE) {
+			AfpRecordTLE tle = tle(rec, recData);
+			if (tle != null) {
+				attName = tle.getAttName();
+				attVal = tle.getAttVal();
+			}
+		}
+
+		// Encode and count offset
+		encode(rec, offset, level, data, algorithm, attName, attVal);
+		offset += 1 + rec.getLength() + (rec.isEndsInCrLf() ? 2 : 0);
+	}
+
+	// Writes the buffer
+	private void writeBuffer() throws AfpException {
+		try {
+			out.write(buff.array(), 0, buff.position());
+		} catch (IOException e) {
+			throw new AfpException("Failed to write output", e);
+		}
+		buff.clear();
+	}
+}
@@ -0,0 +1,463 @@
+package org.qxsched.doc.afp;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.impl.AfpRecordNOP;
+import org.qxsched.doc.afp.impl.AfpRecordTLE;
+import org.qxsched.doc.afp.impl.AfpTriplet02;
+import org.qxsched.doc.afp.impl.AfpTriplet36;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpEditor} inserts records before or after the records of
+ * given structured field identifiers in a single streaming pass. The
+ * inserted records are computed by {@link AfpInsertion} callbacks, e.g.
+ * 
+ * <pre>
+ * AfpEditor editor = new AfpEditor();
+ * editor.insertAfter(0xD3A8AF, new AfpInsertion() {
+ * 	public AfpRecord[] insert(AfpRecord rec, long seq) throws AfpException {
+ * 		return new AfpRecord[] { AfpEditor.tle(&quot;page&quot;, &quot;&quot; + (seq + 1)) };
+ * 	}
+ * });
+ * editor.insertBefore(0xD3A9A8, AfpEditor.constant(AfpEditor.nop(data)));
+ * editor.run(factory, new AfpWriter(out));
+ * </pre>
+ * 
+ * Inserted records end in CR LF if the matching record does. Records returned
+ * by insertions are not modified; a record ending differently is inserted as
+ * a generic copy. If an executor
+ * service is set, the callbacks are evaluated on its threads while at most
+ * {@link #getMaxInFlight()} records are held in memory. The output order is
+ * the same in either case.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpEditor {
+
+	/**
+	 * Contains the default maximum number of records read ahead of the output.
+	 */
+	public static final int MAX_IN_FLIGHT_DEF = 1024;
+
+	/**
+	 * Contains the fully qualified name type of TLE attribute names.
+	 */
+	public static final int FQN_TYPE_ATT_NAME = 0x0B;
+
+	private static Logger LOG = Logger.getLogger(AfpEditor.class);
+
+	private ExecutorService executor;
+	private int maxInFlight = MAX_IN_FLIGHT_DEF;
+	private Map<Integer, Rule[]> rules = new HashMap<Integer, Rule[]>();
+
+	/**
+	 * Returns an insertion returning the supplied records for every matching
+	 * record.
+	 * 
+	 * @param recs
+	 *            the records to insert.
+	 * @return the insertion.
+	 */
+	public static AfpInsertion constant(final AfpRecord... recs) {
+		return new AfpInsertion() {
+			public AfpRecord[] insert(AfpRecord rec, long seq) {
+				return recs;
+			}
+		};
+	}
+
+	/**
+	 * Returns a NOP record holding the supplied data.
+	 * 
+	 * @param data
+	 *            the data.
+	 * @return the NOP record.
+	 * @throws AfpException
+	 *             if the data is too long.
+	 */
+	public static AfpRecord nop(byte[] data) throws AfpException {
+		return new AfpRecordNOP(0, 0, data);
+	}
+
+	/**
+	 * Returns a NOP record holding the supplied text encoded in
+	 * {@link AfpFactory#AFP_DEFAULT_CS}.
+	 * 
+	 * @param text
+	 *            the text.
+	 * @return the NOP record.
+	 * @throws AfpException
+	 *             if the text is too long.
+	 */
+	public static AfpRecord nop(String text) throws AfpException {
+		return nop(text.getBytes(AfpFactory.AFP_DEFAULT_CS));
+	}
+
+	/**
+	 * Returns a TLE record holding the supplied attribute name and value.
+	 * 
+	 * @param name
+	 *            the attribute name.
+	 * @param value
+	 *            the attribute value.
+	 * @return the TLE record.
+	 * @throws AfpException
+	 *             if the name or the value is illegal.
+	 */
+	public static AfpRecord tle(String name, String value)
+			throws AfpException {
+		return new AfpRecordTLE(0, 0, new AfpTriplet[] {
+				new AfpTriplet02(FQN_TYPE_ATT_NAME, name),
+				new AfpTriplet36(value) });
+	}
+
+	// Adds a rule
+	private void add(int sfid, boolean after, AfpInsertion insertion) {
+		Rule[] cur = rules.get(sfid);
+		Rule[] upd = new Rule[cur == null ? 1 : cur.length + 1];
+		if (cur != null) {
+			System.arraycopy(cur, 0, upd, 0, cur.length);
+		}
+		upd[upd.length - 1] = new Rule(after, insertion);
+		rules.put(sfid, upd);
+	}
+
+	// Returns a generic copy of a record with the supplied CR LF flag
+	private static AfpRecord copy(AfpRecord rec, boolean endsInCrLf)
+			throws AfpException {
+		byte[] data = rec.getData();
+		if (data == null) {
+			throw new AfpException("Cannot insert record "
+					+ rec.getSFIdentifierString() + " with skipped data");
+		}
+		GenericAfpRecord ret = new GenericAfpRecord(rec.getSFIdentifier(), rec
+				.getFlags(), rec.getReserved(), data);
+		ret.setEndsInCrLf(endsInCrLf);
+		return ret;
+	}
+
+	// Evaluates the rules for a record
+	private static List<AfpRecord> edit(AfpRecord rec, Rule[] recRules,
+			long[] seqs) throws AfpException {
+
+		// Collect records before and after
+		List<AfpRecord> before = new ArrayList<AfpRecord>();
+		List<AfpRecord> after = new ArrayList<AfpRecord>();
+		for (int i = 0; i < recRules.length; i++) {
+			AfpRecord[] ins = recRules[i].insertion.insert(rec, seqs[i]);
+			if (ins == null) {
+				continue;
+			}
+			for (AfpRecord insRec : ins) {
+
+				// Copy rather than change records owned by the insertion
+				if (insRec.isEndsInCrLf() != rec.isEndsInCrLf()) {
+					insRec = copy(insRec, rec.isEndsInCrLf());
+				}
+				(recRules[i].after ? after : before).add(insRec);
+			}
+		}
+
+		// Make list
+		List<AfpRecord> ret = new ArrayList<AfpRecord>(before.size() + 1
+				+ after.size());
+		ret.addAll(before);
+		ret.add(rec);
+		ret.addAll(after);
+		return ret;
+	}
+
+	/**
+	 * Returns the maximum number of records read ahead of the output when an
+	 * executor service is set.
+	 * 
+	 * @return the maximum number of records read ahead of the output.
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Adds a rule inserting records after every record of the supplied
+	 * structured field identifier.
+	 * 
+	 * @param sfid
+	 *            the structured field identifier.
+	 * @param insertion
+	 *            the insertion computing the records.
+	 */
+	public void insertAfter(int sfid, AfpInsertion insertion) {
+		add(sfid, true, insertion);
+	}
+
+	/**
+	 * Adds a rule inserting records before every record of the supplied
+	 * structured field identifier.
+	 * 
+	 * @param sfid
+	 *            the structured field identifier.
+	 * @param insertion
+	 *            the insertion computing the records.
+	 */
+	public void insertBefore(int sfid, AfpInsertion insertion) {
+		add(sfid, false, insertion);
+	}
+
+	// Takes the sequence numbers for a record's rules
+	private static long[] nextSeqs(Rule[] recRules) {
+		long[] ret = new long[recRules.length];
+		for (int i = 0; i < recRules.length; i++) {
+			ret[i] = recRules[i].seq++;
+		}
+		return ret;
+	}
+
+	/**
+	 * Reads all records from the supplied factory, inserts records as set by
+	 * the rules and writes the result to the supplied writer. The writer is
+	 * flushed.
+	 * 
+	 * @param factory
+	 *            the factory to read from.
+	 * @param writer
+	 *            the writer to write to.
+	 * @return the number of records inserted.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public long run(AfpFactory factory, AfpWriter writer) throws AfpException {
+
+		// Reset sequence numbers
+		resetSeqs();
+
+		// Reorder buffer
+		LinkedList<Future<List<AfpRecord>>> pending =
+				new LinkedList<Future<List<AfpRecord>>>();
+		long inserted = 0;
+		try {
+			for (AfpRecord rec = factory.createAfpRecord(); rec != null; rec = factory
+					.createAfpRecord()) {
+
+				// Get rules
+				Rule[] recRules = rules.get(rec.getSFIdentifier());
+
+				// Write directly if nothing pending
+				if (pending.isEmpty() && (recRules == null || executor == null)) {
+					if (recRules == null) {
+						writer.write(rec);
+					} else {
+						inserted += write(writer, edit(rec, recRules,
+								nextSeqs(recRules)));
+					}
+					continue;
+				}
+
+				// Wait for the oldest record if too many in flight
+				if (pending.size() >= maxInFlight) {
+					inserted += write(writer, pending.removeFirst());
+				}
+
+				// Queue record as is or evaluate rules on worker
+				if (recRules == null) {
+					List<AfpRecord> list = new ArrayList<AfpRecord>(1);
+					list.add(rec);
+					FutureTask<List<AfpRecord>> done =
+							new FutureTask<List<AfpRecord>>(new Done(list));
+					done.run();
+					pending.add(done);
+				} else {
+					final AfpRecord editRec = rec;
+					final Rule[] editRules = recRules;
+					final long[] seqs = nextSeqs(recRules);
+					pending.add(executor.submit(new Callable<List<AfpRecord>>() {
+						public List<AfpRecord> call() throws Exception {
+							return edit(editRec, editRules, seqs);
+						}
+					}));
+				}
+
+				// Write completed records
+				while (!pending.isEmpty() && pending.getFirst().isDone()) {
+					inserted += write(writer, pending.removeFirst());
+				}
+			}
+
+			// Write remaining records
+			while (!pending.isEmpty()) {
+				inserted += write(writer, pending.removeFirst());
+			}
+		} finally {
+
+			// Cancel remaining work on failure
+			for (Future<List<AfpRecord>> future : pending) {
+				future.cancel(true);
+			}
+		}
+		writer.flush();
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Inserted " + inserted + " records");
+		}
+		return inserted;
+	}
+
+	/**
+	 * Copies the supplied input channel to the output channel, inserting
+	 * records as set by the rules. Records not matching any rule are copied
+	 * unchanged through an {@link AfpRewriter} without building
+	 * {@link AfpRecord} objects. The rules are evaluated on the calling
+	 * thread.
+	 * 
+	 * @param in
+	 *            the input channel.
+	 * @param out
+	 *            the output channel.
+	 * @return the number of records inserted.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public long run(FileChannel in, GatheringByteChannel out)
+			throws AfpException {
+
+		// Reset sequence numbers
+		resetSeqs();
+
+		// Rewrite matching records
+		final long[] inserted = new long[1];
+		new AfpRewriter(in, new AfpRewriteHandler() {
+			public boolean accept(AfpRecordCursor cursor) {
+				return rules.containsKey(cursor.getSFIdentifier());
+			}
+
+			public void rewrite(AfpRecord rec, AfpWriter writer)
+					throws AfpException {
+				Rule[] recRules = rules.get(rec.getSFIdentifier());
+				inserted[0] += write(writer, edit(rec, recRules,
+						nextSeqs(recRules)));
+			}
+		}).run(out);
+		return inserted[0];
+	}
+
+	// Resets the sequence numbers of all rules
+	private void resetSeqs() {
+		for (Rule[] recRules : rules.values()) {
+			for (Rule rule : recRules) {
+				rule.seq = 0;
+			}
+		}
+	}
+
+	/**
+	 * Sets the executor service to evaluate the rules on. If
+	 * <code>null</code>, the rules are evaluated on the calling thread.
+	 * 
+	 * @param executor
+	 *            the executor service.
+	 */
+	public void setExecutorService(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the maximum number of records read ahead of the output when an
+	 * executor service is set.
+	 * 
+	 * @param maxInFlight
+	 *            the maximum number of records read ahead of the output.
+	 * @throws AfpException
+	 *             if the number is smaller than 1.
+	 */
+	public void setMaxInFlight(int maxInFlight) throws AfpException {
+		if (maxInFlight < 1) {
+			throw new AfpException("Maximum in flight must be at least 1");
+		}
+		this.maxInFlight = maxInFlight;
+	}
+
+	// Waits for edited records and writes them
+	private static long write(AfpWriter writer,
+			Future<List<AfpRecord>> future) throws AfpException {
+		try {
+			return write(writer, future.get());
+		} catch (InterruptedException e) {
+			throw new AfpException("Interrupted while evaluating rules", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof AfpException) {
+				throw (AfpException) e.getCause();
+			}
+			throw new AfpException("Failed to evaluate rules", e.getCause());
+		}
+	}
+
+	// Writes edited records, returns the number of records inserted
+	private static long write(AfpWriter writer, List<AfpRecord> recs)
+			throws AfpException {
+		for (AfpRecord rec : recs) {
+			writer.write(rec);
+		}
+		return recs.size() - 1;
+	}
+
+	// Returns records that need no evaluation
+	private static class Done implements Callable<List<AfpRecord>> {
+
+		private List<AfpRecord> recs;
+
+		public Done(List<AfpRecord> recs) {
+			this.recs = recs;
+		}
+
+		public List<AfpRecord> call() {
+			return recs;
+		}
+	}
+
+	// Insertion before or after records
+	private static class Rule {
+
+		private boolean after;
+		private AfpInsertion insertion;
+		private long seq;
+
+		public Rule(boolean after, AfpInsertion insertion) {
+			this.after = after;
+			this.insertion = insertion;
+		}
+	}
+}
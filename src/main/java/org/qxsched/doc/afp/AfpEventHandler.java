@@ -0,0 +1,88 @@
+package org.qxsched.doc.afp;
+
+import java.nio.ByteBuffer;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Interface {@link AfpEventHandler} receives the records read by an
+ * {@link AfpEventParser}. The record data is passed as a region of a buffer
+ * that is reused by the parser. The buffer must not be modified and its
+ * contents are only valid during the call.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public interface AfpEventHandler {
+
+	/**
+	 * Is called for a record beginning a group, e.g. BDT or BPG.
+	 * 
+	 * @param sfid
+	 *            the structured field identifier.
+	 * @param buffer
+	 *            the buffer containing the record data.
+	 * @param off
+	 *            the position of the record data in the buffer.
+	 * @param len
+	 *            the length of the record data.
+	 * @throws AfpException
+	 *             to stop parsing.
+	 */
+	public void onGroupBegin(int sfid, ByteBuffer buffer, int off, int len)
+			throws AfpException;
+
+	/**
+	 * Is called for a record ending a group, e.g. EDT or EPG.
+	 * 
+	 * @param sfid
+	 *            the structured field identifier.
+	 * @param buffer
+	 *            the buffer containing the record data.
+	 * @param off
+	 *            the position of the record data in the buffer.
+	 * @param len
+	 *            the length of the record data.
+	 * @throws AfpException
+	 *             to stop parsing.
+	 */
+	public void onGroupEnd(int sfid, ByteBuffer buffer, int off, int len)
+			throws AfpException;
+
+	/**
+	 * Is called for a record that neither begins nor ends a group.
+	 * 
+	 * @param sfid
+	 *            the structured field identifier.
+	 * @param buffer
+	 *            the buffer containing the record data.
+	 * @param off
+	 *            the position of the record data in the buffer.
+	 * @param len
+	 *            the length of the record data.
+	 * @throws AfpException
+	 *             to stop parsing.
+	 */
+	public void onRecord(int sfid, ByteBuffer buffer, int off, int len)
+			throws AfpException;
+}
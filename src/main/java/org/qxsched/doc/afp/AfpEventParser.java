@@ -0,0 +1,210 @@
+package org.qxsched.doc.afp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpEventParser} reads records from an {@link AfpRecordCursor}
+ * and reports them to an {@link AfpEventHandler}. No {@link AfpRecord} objects
+ * are created and no groups are built, so the memory used does not depend on
+ * the input size. Group begin and end records are recognized as done by
+ * {@link AfpRecordGrouper}, including the groups not to build.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpEventParser {
+
+	private static Logger LOG = Logger.getLogger(AfpEventParser.class);
+
+	private AfpStructuredFieldDefinitions afpDefs;
+	private AfpRecordCursor cursor;
+	private Set<Integer> noGroup = new HashSet<Integer>();
+
+	/**
+	 * Constructor accepting the cursor to read records from.
+	 * 
+	 * @param cursor
+	 *            the cursor to read records from.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpEventParser(AfpRecordCursor cursor) throws AfpException {
+		this.cursor = cursor;
+		afpDefs = AfpStructuredFieldDefinitions.instance();
+	}
+
+	/**
+	 * Parses the supplied AFP file, mapping it into memory, and reports the
+	 * records to the supplied handler.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @param handler
+	 *            the handler.
+	 * @return the number of records parsed.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public static long parse(File file, AfpEventHandler handler)
+			throws AfpException {
+
+		// Open
+		FileInputStream in;
+		try {
+			in = new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			throw new AfpException("Failed to open file " + file.getPath(), e);
+		}
+
+		// Parse and close
+		try {
+			return new AfpEventParser(new AfpRecordCursor(in.getChannel()))
+					.parse(handler);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close file " + file.getPath(), e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the identifiers of group begin and end records reported as
+	 * plain records.
+	 * 
+	 * @return the identifiers of group records reported as plain records.
+	 */
+	public Set<Integer> getNoGroup() {
+		return noGroup;
+	}
+
+	/**
+	 * Reads all records from the cursor and reports them to the supplied
+	 * handler.
+	 * 
+	 * @param handler
+	 *            the handler.
+	 * @return the number of records parsed.
+	 * @throws AfpException
+	 *             if an AFP exception occurs or if the groups are not
+	 *             properly nested.
+	 */
+	public long parse(AfpEventHandler handler) throws AfpException {
+
+		// Stack of SFIdentifiers to wait for
+		int[] waitSFIdEnd = new int[16];
+		int waitSize = 0;
+
+		long cnt = 0;
+		while (cursor.next()) {
+			cnt++;
+
+			// Get record
+			int sFId = cursor.getSFIdentifier();
+			ByteBuffer buff = cursor.getBuffer();
+			int off = cursor.getDataPosition();
+			int len = cursor.getDataLength();
+
+			// Is this a group record begin or end?
+			boolean isGroupRecordBegin = afpDefs.isGroupBegin(sFId);
+			boolean isGroupRecordEnd = afpDefs.isGroupEnd(sFId);
+			if ((isGroupRecordBegin || isGroupRecordEnd)
+					&& noGroup.contains(sFId)) {
+				isGroupRecordBegin = false;
+				isGroupRecordEnd = false;
+			}
+
+			// Handle simple records
+			if (!isGroupRecordBegin && !isGroupRecordEnd) {
+				handler.onRecord(sFId, buff, off, len);
+				continue;
+			}
+
+			// Handle group record begin
+			if (isGroupRecordBegin) {
+
+				// Push sFIdEnd
+				if (waitSize == waitSFIdEnd.length) {
+					int[] grown = new int[waitSize * 2];
+					System.arraycopy(waitSFIdEnd, 0, grown, 0, waitSize);
+					waitSFIdEnd = grown;
+				}
+				waitSFIdEnd[waitSize++] = afpDefs.getGroupEndCode(sFId);
+				handler.onGroupBegin(sFId, buff, off, len);
+				continue;
+			}
+
+			// Handle group record end. Expect correct SFIdentifier
+			if (waitSize == 0) {
+				throw new AfpException("Group end before begin: "
+						+ AfpStructuredFieldDefinitions.hexString(sFId, 6)
+						+ " at offset " + cursor.getOffset());
+			}
+			int sFIdEndExp = waitSFIdEnd[--waitSize];
+			if (sFIdEndExp != sFId) {
+				throw new AfpException("Expected SFID "
+						+ AfpStructuredFieldDefinitions.hexString(sFIdEndExp,
+								6) + " but got "
+						+ AfpStructuredFieldDefinitions.hexString(sFId, 6)
+						+ " at offset " + cursor.getOffset());
+			}
+			handler.onGroupEnd(sFId, buff, off, len);
+		}
+
+		// Expect all groups closed
+		if (waitSize > 0) {
+			throw new AfpException("No ending found for SFID "
+					+ AfpStructuredFieldDefinitions.hexString(
+							waitSFIdEnd[waitSize - 1], 6));
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Parsed " + cnt + " records");
+		}
+		return cnt;
+	}
+
+	/**
+	 * Sets the identifiers of group begin and end records to report as plain
+	 * records.
+	 * 
+	 * @param noGroup
+	 *            the identifiers of group records to report as plain
+	 *            records.
+	 * @see AfpRecordGrouper#noGroupExcept(Integer...)
+	 */
+	public void setNoGroup(Set<Integer> noGroup) {
+		this.noGroup = noGroup;
+	}
+}
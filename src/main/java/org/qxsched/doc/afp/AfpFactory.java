@@ -1,5 +1,9 @@
 package org.qxsched.doc.afp;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -133,12 +137,40 @@ public abstract class AfpFactory {
 		return afpFactoryInstance;
 	}
 
+	// Input file stream opened by this object
+	private FileInputStream inputFileStream;
+
 	/**
 	 * Empty constructor.
 	 */
 	protected AfpFactory() {
 	}
 
+	/**
+	 * Closes the file opened through {@link #setInputFile(File)}. Input
+	 * streams supplied through {@link #setInputStream(InputStream)} are not
+	 * closed; they remain the responsibility of the caller.
+	 * 
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	public void close() throws AfpException {
+
+		// Do nothing if no file opened
+		if (inputFileStream == null) {
+			return;
+		}
+
+		// Close
+		try {
+			inputFileStream.close();
+		} catch (IOException e) {
+			throw new AfpException("Failed to close input file", e);
+		} finally {
+			inputFileStream = null;
+		}
+	}
+
 	/**
 	 * Creates AFP records from the object's input stream.
 	 * 
@@ -152,6 +184,22 @@ public abstract class AfpFactory {
 	public abstract AfpTriplet[] createAfpTriplets(byte[] data, int i, int j)
 			throws AfpException;
 
+	/**
+	 * Creates a specific AFP record from the supplied generic record. This
+	 * implementation returns the supplied record.
+	 * 
+	 * @param record
+	 *            the generic record.
+	 * @return the specific record or the supplied record if no specific
+	 *         record class exists.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	public AfpRecord createSpecificAfpRecord(AfpRecord record)
+			throws AfpException {
+		return record;
+	}
+
 	/**
 	 * Returns the object's input stream.
 	 * 
@@ -163,6 +211,33 @@ public abstract class AfpFactory {
 	 */
 	public abstract InputStream getInputStream() throws AfpException;
 
+	/**
+	 * Opens the supplied file for reading. Any file previously opened by the
+	 * object is closed first. The returned stream is closed by
+	 * {@link #close()}.
+	 * 
+	 * @param file
+	 *            the file to open.
+	 * @return the opened file input stream.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	protected FileInputStream openInputFile(File file) throws AfpException {
+
+		// Close previous
+		close();
+
+		// Open
+		try {
+			inputFileStream = new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			throw new AfpException("Failed to open file " + file.getPath(), e);
+		}
+
+		// Return
+		return inputFileStream;
+	}
+
 	/**
 	 * Sets the object's read/write properties.
 	 * 
@@ -174,6 +249,21 @@ public abstract class AfpFactory {
 	public abstract void setAfpReadWriteProperties(AfpReadWriteProperties props)
 			throws AfpException;
 
+	/**
+	 * Sets the object's input file. The file is opened by the object and must
+	 * be closed through {@link #close()}. Implementations may take advantage
+	 * of random access to the file, by default it is read as buffered input
+	 * stream.
+	 * 
+	 * @param file
+	 *            the object's input file.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	public void setInputFile(File file) throws AfpException {
+		setInputStream(new BufferedInputStream(openInputFile(file)));
+	}
+
 	/**
 	 * Sets the object's input stream.
 	 * 
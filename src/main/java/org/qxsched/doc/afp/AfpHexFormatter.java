@@ -0,0 +1,136 @@
+package org.qxsched.doc.afp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpHexFormatter} formats bytes as lines of up to 16 lower case
+ * hexadecimal pairs, each followed by a space. The lines are filled from a
+ * lookup table into a reusable character buffer and written at once.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpHexFormatter {
+
+	/**
+	 * Contains the number of bytes per line.
+	 */
+	public static final int BYTES_PER_LINE = 16;
+
+	private static final char[] HEX_PAIRS = new char[512];
+
+	static {
+		char[] digits = "0123456789abcdef".toCharArray();
+		for (int i = 0; i < 256; i++) {
+			HEX_PAIRS[i << 1] = digits[i >> 4];
+			HEX_PAIRS[(i << 1) + 1] = digits[i & 0xf];
+		}
+	}
+
+	/**
+	 * Empty constructor.
+	 */
+	private AfpHexFormatter() {
+	}
+
+	// Fills the line buffer with a line, returns the line length
+	private static int fill(char[] line, String head, byte[] data, int off) {
+		head.getChars(0, head.length(), line, 0);
+		int pos = head.length();
+		int end = Math.min(data.length, off + BYTES_PER_LINE);
+		for (int j = off; j < end; j++) {
+			int idx = (data[j] & 0xff) << 1;
+			line[pos++] = HEX_PAIRS[idx];
+			line[pos++] = HEX_PAIRS[idx + 1];
+			line[pos++] = ' ';
+		}
+		return pos;
+	}
+
+	/**
+	 * Returns a line buffer large enough for the supplied line heads.
+	 * 
+	 * @param first
+	 *            the head of the first line.
+	 * @param next
+	 *            the head of the next lines.
+	 * @return the line buffer.
+	 */
+	private static char[] lineBuffer(String first, String next) {
+		return new char[Math.max(first.length(), next.length())
+				+ BYTES_PER_LINE * 3];
+	}
+
+	/**
+	 * Appends the supplied data to the string buffer.
+	 * 
+	 * @param sb
+	 *            the string buffer to append to.
+	 * @param first
+	 *            the head of the first line.
+	 * @param next
+	 *            the head of the next lines.
+	 * @param data
+	 *            the data.
+	 * @param newLine
+	 *            true if every line must be ended with the line separator.
+	 */
+	public static void append(StringBuffer sb, String first, String next,
+			byte[] data, boolean newLine) {
+		char[] line = lineBuffer(first, next);
+		String nl = newLine ? System.getProperty("line.separator") : null;
+		for (int i = 0; i < data.length; i += BYTES_PER_LINE) {
+			sb.append(line, 0, fill(line, i == 0 ? first : next, data, i));
+			if (newLine) {
+				sb.append(nl);
+			}
+		}
+	}
+
+	/**
+	 * Writes the supplied data to the buffered writer, ending every line
+	 * with {@link BufferedWriter#newLine()}.
+	 * 
+	 * @param out
+	 *            the buffered writer to write to.
+	 * @param first
+	 *            the head of the first line.
+	 * @param next
+	 *            the head of the next lines.
+	 * @param data
+	 *            the data.
+	 * @throws IOException
+	 *             if an I/O exception occurs.
+	 */
+	public static void write(BufferedWriter out, String first, String next,
+			byte[] data) throws IOException {
+		char[] line = lineBuffer(first, next);
+		for (int i = 0; i < data.length; i += BYTES_PER_LINE) {
+			out.write(line, 0, fill(line, i == 0 ? first : next, data, i));
+			out.newLine();
+		}
+	}
+}
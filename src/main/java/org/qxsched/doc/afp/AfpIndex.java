@@ -0,0 +1,733 @@
+package org.qxsched.doc.afp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpIndex} contains the offset, length and structured field
+ * identifier of every record in an AFP file as primitive arrays. It also
+ * contains the begin and end record indexes of the pages (BPG/EPG) and the
+ * documents (BDT/EDT) in the file. Groups are detected using
+ * {@link AfpStructuredFieldDefinitions#isGroupBegin(Integer)} and
+ * {@link AfpStructuredFieldDefinitions#isGroupEnd(Integer)}.
+ * 
+ * The index is built in one pass over the file and can be stored in a sidecar
+ * file with suffix {@link #SUFFIX}. The records of any record, page or
+ * document range are read with one seek.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpIndex {
+
+	/**
+	 * Contains the suffix of index sidecar files.
+	 */
+	public static final String SUFFIX = ".afpidx";
+
+	private static final int BDT = 0xD3A8A8;
+	private static final int BPG = 0xD3A8AF;
+	private static final int CRLF_BIT = 0x10000;
+	private static final int MAGIC = 0x41465049;
+	private static final int VERSION = 1;
+
+	private static Logger LOG = Logger.getLogger(AfpIndex.class);
+
+	// File
+	private long fileLength;
+	private long fileModified;
+
+	// Records
+	private int count;
+	private int[] identifiers;
+	private int[] lengths;
+	private long[] offsets;
+
+	// Groups
+	private int documentCount;
+	private int[] documentBegin;
+	private int[] documentEnd;
+	private int pageCount;
+	private int[] pageBegin;
+	private int[] pageEnd;
+
+	// Use static methods
+	private AfpIndex() {
+	}
+
+	/**
+	 * Builds an index reading the supplied AFP file.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @return the index.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public static AfpIndex build(File file) throws AfpException {
+
+		// Props to skip all data
+		AfpReadWriteProperties props = new AfpReadWriteProperties();
+		props.setConvertSpecificNone();
+		props.setReadDataNone();
+		props.setReturnSkipped(true);
+
+		// Read
+		AfpFactory fact = AfpFactory.createAfpFactory();
+		try {
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(file);
+			AfpIndex index = build(fact);
+			index.fileLength = file.length();
+			index.fileModified = file.lastModified();
+			return index;
+		} finally {
+			fact.close();
+		}
+	}
+
+	/**
+	 * Builds an index reading all records from the supplied factory. The
+	 * factory's input must start at offset 0 of the file. The factory should
+	 * be set to skip the record data using
+	 * {@link AfpReadWriteProperties#setReadDataNone()}.
+	 * 
+	 * @param fact
+	 *            the AFP factory to read from.
+	 * @return the index.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public static AfpIndex build(AfpFactory fact) throws AfpException {
+
+		AfpStructuredFieldDefinitions afpDefs = AfpStructuredFieldDefinitions
+				.instance();
+
+		// Make index
+		AfpIndex index = new AfpIndex();
+		index.identifiers = new int[1024];
+		index.lengths = new int[1024];
+		index.offsets = new long[1024];
+		index.documentBegin = new int[16];
+		index.documentEnd = new int[16];
+		index.pageBegin = new int[16];
+		index.pageEnd = new int[16];
+
+		// Stacks of open groups
+		int[] stackCode = new int[16];
+		int[] stackIdx = new int[16];
+		int depth = 0;
+
+		long offset = 0;
+		for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+				.createAfpRecord()) {
+
+			// Grow arrays
+			int i = index.count;
+			if (i == index.offsets.length) {
+				index.identifiers = grow(index.identifiers);
+				index.lengths = grow(index.lengths);
+				index.offsets = grow(index.offsets);
+			}
+
+			// Add record
+			int sfid = rec.getSFIdentifier();
+			index.identifiers[i] = sfid;
+			index.lengths[i] = rec.getLength()
+					| (rec.isEndsInCrLf() ? CRLF_BIT : 0);
+			index.offsets[i] = offset;
+			index.count++;
+			offset += index.getSize(i);
+
+			// Push group begin
+			if (afpDefs.isGroupBegin(sfid)) {
+				if (depth == stackCode.length) {
+					stackCode = grow(stackCode);
+					stackIdx = grow(stackIdx);
+				}
+				stackCode[depth] = afpDefs.getGroupEndCode(sfid);
+				stackIdx[depth] = i;
+				depth++;
+
+				// Add page or document
+				if (sfid == BPG) {
+					if (index.pageCount == index.pageBegin.length) {
+						index.pageBegin = grow(index.pageBegin);
+						index.pageEnd = grow(index.pageEnd);
+					}
+					index.pageBegin[index.pageCount] = i;
+					index.pageEnd[index.pageCount] = -1;
+					index.pageCount++;
+				} else if (sfid == BDT) {
+					if (index.documentCount == index.documentBegin.length) {
+						index.documentBegin = grow(index.documentBegin);
+						index.documentEnd = grow(index.documentEnd);
+					}
+					index.documentBegin[index.documentCount] = i;
+					index.documentEnd[index.documentCount] = -1;
+					index.documentCount++;
+				}
+				continue;
+			}
+
+			// Pop group end
+			if (afpDefs.isGroupEnd(sfid)) {
+				if (depth == 0) {
+					throw new AfpException("Group end before begin: '"
+							+ rec.getSFIdentifierString() + "' at offset "
+							+ index.offsets[i]);
+				}
+				depth--;
+				if (stackCode[depth] != sfid) {
+					throw new AfpException("Expected SFID '"
+							+ AfpStructuredFieldDefinitions.hexString(
+									stackCode[depth], 6) + "' but got '"
+							+ rec.getSFIdentifierString() + "' at offset "
+							+ index.offsets[i]);
+				}
+
+				// Set end of page or document
+				int begin = stackIdx[depth];
+				if (index.identifiers[begin] == BPG) {
+					index.pageEnd[index.pageCount - 1] = i;
+				} else if (index.identifiers[begin] == BDT) {
+					index.documentEnd[index.documentCount - 1] = i;
+				}
+			}
+		}
+
+		// Check all groups closed
+		if (depth > 0) {
+			throw new AfpException("No ending found for group '"
+					+ AfpStructuredFieldDefinitions.hexString(
+							index.identifiers[stackIdx[depth - 1]], 6)
+					+ "' at offset " + index.offsets[stackIdx[depth - 1]]);
+		}
+		index.fileLength = offset;
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Indexed " + index.count + " records, "
+					+ index.pageCount + " pages and " + index.documentCount
+					+ " documents");
+		}
+
+		// Return
+		return index;
+	}
+
+	/**
+	 * Returns the sidecar index file of the supplied AFP file.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @return the sidecar index file.
+	 */
+	public static File getIndexFile(File file) {
+		return new File(file.getPath() + SUFFIX);
+	}
+
+	// Grows an array
+	private static int[] grow(int[] a) {
+		int[] ret = new int[a.length * 2];
+		System.arraycopy(a, 0, ret, 0, a.length);
+		return ret;
+	}
+
+	// Grows an array
+	private static long[] grow(long[] a) {
+		long[] ret = new long[a.length * 2];
+		System.arraycopy(a, 0, ret, 0, a.length);
+		return ret;
+	}
+
+	/**
+	 * Returns the index of the supplied AFP file. The index is read from the
+	 * sidecar index file if it matches the AFP file's length and modification
+	 * time. Otherwise the index is built and the sidecar index file is
+	 * written. Failing to write the sidecar index file, e.g. in a read-only
+	 * directory, is logged and the built index is returned.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @return the index.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public static AfpIndex open(File file) throws AfpException {
+
+		// Read sidecar if up to date
+		File indexFile = getIndexFile(file);
+		if (indexFile.exists()) {
+			try {
+				AfpIndex index = read(indexFile);
+				if (index.isValidFor(file)) {
+					return index;
+				}
+				LOG.info("Index file " + indexFile + " is out of date");
+			} catch (AfpException e) {
+				LOG.warn("Ignoring index file " + indexFile + ": "
+						+ e.getMessage());
+			}
+		}
+
+		// Build and write sidecar
+		AfpIndex index = build(file);
+		try {
+			index.write(indexFile);
+		} catch (AfpException e) {
+			LOG.warn("Not writing index file " + indexFile + ": "
+					+ e.getMessage());
+		}
+		return index;
+	}
+
+	/**
+	 * Reads an index from the supplied index file.
+	 * 
+	 * @param indexFile
+	 *            the index file.
+	 * @return the index.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public static AfpIndex read(File indexFile) throws AfpException {
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(indexFile)));
+
+			// Check header
+			if (in.readInt() != MAGIC) {
+				throw new AfpException("Not an AFP index file: " + indexFile);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new AfpException("Unsupported AFP index file version "
+						+ version + ": " + indexFile);
+			}
+
+			// Read file
+			AfpIndex index = new AfpIndex();
+			index.fileLength = in.readLong();
+			index.fileModified = in.readLong();
+
+			// Read records, the header and counts taking 36 bytes
+			long left = indexFile.length() - 36;
+			index.count = in.readInt();
+			left = checkCount(indexFile, index.count, 16, left);
+			index.offsets = new long[index.count];
+			index.lengths = new int[index.count];
+			index.identifiers = new int[index.count];
+			for (int i = 0; i < index.count; i++) {
+				index.offsets[i] = in.readLong();
+			}
+			for (int i = 0; i < index.count; i++) {
+				index.lengths[i] = in.readInt();
+			}
+			for (int i = 0; i < index.count; i++) {
+				index.identifiers[i] = in.readInt();
+			}
+
+			// Read pages
+			index.pageCount = in.readInt();
+			left = checkCount(indexFile, index.pageCount, 8, left);
+			index.pageBegin = new int[index.pageCount];
+			index.pageEnd = new int[index.pageCount];
+			for (int i = 0; i < index.pageCount; i++) {
+				index.pageBegin[i] = in.readInt();
+				index.pageEnd[i] = in.readInt();
+			}
+
+			// Read documents
+			index.documentCount = in.readInt();
+			checkCount(indexFile, index.documentCount, 8, left);
+			index.documentBegin = new int[index.documentCount];
+			index.documentEnd = new int[index.documentCount];
+			for (int i = 0; i < index.documentCount; i++) {
+				index.documentBegin[i] = in.readInt();
+				index.documentEnd[i] = in.readInt();
+			}
+
+			return index;
+		} catch (IOException e) {
+			throw new AfpException("Failed to read AFP index file "
+					+ indexFile, e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					LOG.error(e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	// Checks a count of entries of the supplied size against the bytes left
+	// in the index file and returns the bytes left after the entries
+	private static long checkCount(File indexFile, int count, int size,
+			long left) throws AfpException {
+		if (count < 0 || (long) count * size > left) {
+			throw new AfpException("Illegal count " + count
+					+ " in AFP index file " + indexFile);
+		}
+		return left - (long) count * size;
+	}
+
+	// Checks a range of record indexes
+	private void checkRange(int first, int last) {
+		if (first < 0 || last >= count || first > last) {
+			throw new IndexOutOfBoundsException("Record range " + first
+					+ " to " + last + " not in 0 to " + (count - 1));
+		}
+	}
+
+	/**
+	 * Returns the number of documents.
+	 * 
+	 * @return the number of documents.
+	 */
+	public int getDocumentCount() {
+		return documentCount;
+	}
+
+	/**
+	 * Returns the record index of the begin record (BDT) of the supplied
+	 * document.
+	 * 
+	 * @param document
+	 *            the document number, starting at 0.
+	 * @return the record index of the begin record of the document.
+	 */
+	public int getDocumentBegin(int document) {
+		if (document < 0 || document >= documentCount) {
+			throw new IndexOutOfBoundsException("Document " + document
+					+ " not in 0 to " + (documentCount - 1));
+		}
+		return documentBegin[document];
+	}
+
+	/**
+	 * Returns the record index of the end record (EDT) of the supplied
+	 * document.
+	 * 
+	 * @param document
+	 *            the document number, starting at 0.
+	 * @return the record index of the end record of the document.
+	 */
+	public int getDocumentEnd(int document) {
+		if (document < 0 || document >= documentCount) {
+			throw new IndexOutOfBoundsException("Document " + document
+					+ " not in 0 to " + (documentCount - 1));
+		}
+		return documentEnd[document];
+	}
+
+	/**
+	 * Returns the length of the indexed AFP file.
+	 * 
+	 * @return the length of the indexed AFP file.
+	 */
+	public long getFileLength() {
+		return fileLength;
+	}
+
+	/**
+	 * Returns the modification time of the indexed AFP file or 0 if unknown.
+	 * 
+	 * @return the modification time of the indexed AFP file.
+	 */
+	public long getFileModified() {
+		return fileModified;
+	}
+
+	/**
+	 * Returns the length of the supplied record as in the structured field
+	 * introducer.
+	 * 
+	 * @param record
+	 *            the record index.
+	 * @return the length of the record.
+	 */
+	public int getLength(int record) {
+		return lengths[record] & 0xffff;
+	}
+
+	/**
+	 * Returns the offset of the supplied record in the AFP file.
+	 * 
+	 * @param record
+	 *            the record index.
+	 * @return the offset of the record.
+	 */
+	public long getOffset(int record) {
+		return offsets[record];
+	}
+
+	/**
+	 * Returns the number of pages.
+	 * 
+	 * @return the number of pages.
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * Returns the record index of the begin record (BPG) of the supplied page.
+	 * 
+	 * @param page
+	 *            the page number, starting at 0.
+	 * @return the record index of the begin record of the page.
+	 */
+	public int getPageBegin(int page) {
+		if (page < 0 || page >= pageCount) {
+			throw new IndexOutOfBoundsException("Page " + page
+					+ " not in 0 to " + (pageCount - 1));
+		}
+		return pageBegin[page];
+	}
+
+	/**
+	 * Returns the record index of the end record (EPG) of the supplied page.
+	 * 
+	 * @param page
+	 *            the page number, starting at 0.
+	 * @return the record index of the end record of the page.
+	 */
+	public int getPageEnd(int page) {
+		if (page < 0 || page >= pageCount) {
+			throw new IndexOutOfBoundsException("Page " + page
+					+ " not in 0 to " + (pageCount - 1));
+		}
+		return pageEnd[page];
+	}
+
+	/**
+	 * Returns the number of records.
+	 * 
+	 * @return the number of records.
+	 */
+	public int getRecordCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the structured field identifier of the supplied record.
+	 * 
+	 * @param record
+	 *            the record index.
+	 * @return the structured field identifier of the record.
+	 */
+	public int getSFIdentifier(int record) {
+		return identifiers[record];
+	}
+
+	/**
+	 * Returns the number of bytes the supplied record occupies in the AFP
+	 * file, including CCC and trailing CR LF.
+	 * 
+	 * @param record
+	 *            the record index.
+	 * @return the number of bytes the record occupies.
+	 */
+	public int getSize(int record) {
+		return 1 + (lengths[record] & 0xffff)
+				+ ((lengths[record] & CRLF_BIT) == 0 ? 0 : 2);
+	}
+
+	/**
+	 * Returns <code>true</code> if the supplied record is ended with CR LF.
+	 * 
+	 * @param record
+	 *            the record index.
+	 * @return <code>true</code> if the record is ended with CR LF.
+	 */
+	public boolean isEndsInCrLf(int record) {
+		return (lengths[record] & CRLF_BIT) != 0;
+	}
+
+	/**
+	 * Returns <code>true</code> if the index matches the length and the
+	 * modification time of the supplied AFP file.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @return <code>true</code> if the index matches the AFP file.
+	 */
+	public boolean isValidFor(File file) {
+		return file.length() == fileLength
+				&& file.lastModified() == fileModified;
+	}
+
+	/**
+	 * Reads the bytes of the supplied range of records from the AFP file with
+	 * one seek.
+	 * 
+	 * @param file
+	 *            the AFP file opened for reading.
+	 * @param first
+	 *            the index of the first record.
+	 * @param last
+	 *            the index of the last record.
+	 * @return the bytes of the records.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public byte[] readBytes(RandomAccessFile file, int first, int last)
+			throws AfpException {
+
+		// Make buffer
+		checkRange(first, last);
+		long start = offsets[first];
+		long end = offsets[last] + getSize(last);
+		if (end - start > Integer.MAX_VALUE) {
+			throw new AfpException("Record range " + first + " to " + last
+					+ " too large to read: " + (end - start) + " bytes");
+		}
+		byte[] buff = new byte[(int) (end - start)];
+
+		// Read
+		try {
+			file.seek(start);
+			file.readFully(buff);
+		} catch (IOException e) {
+			throw new AfpException("Failed to read " + buff.length
+					+ " bytes at offset " + start, e);
+		}
+		return buff;
+	}
+
+	/**
+	 * Reads the records of the supplied range from the AFP file with one
+	 * seek. The records are created by an AFP factory using the supplied
+	 * properties.
+	 * 
+	 * @param file
+	 *            the AFP file opened for reading.
+	 * @param first
+	 *            the index of the first record.
+	 * @param last
+	 *            the index of the last record.
+	 * @param props
+	 *            the properties for reading the records.
+	 * @return the records.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public List<AfpRecord> readRecords(RandomAccessFile file, int first,
+			int last, AfpReadWriteProperties props) throws AfpException {
+
+		// Read bytes
+		byte[] buff = readBytes(file, first, last);
+
+		// Make records
+		AfpFactory fact = AfpFactory.createAfpFactory();
+		fact.setAfpReadWriteProperties(props);
+		fact.setInputStream(new ByteArrayInputStream(buff));
+		List<AfpRecord> ret = new ArrayList<AfpRecord>(last - first + 1);
+		for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+				.createAfpRecord()) {
+			ret.add(rec);
+		}
+		return ret;
+	}
+
+	/**
+	 * Writes the index to the supplied index file.
+	 * 
+	 * @param indexFile
+	 *            the index file.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void write(File indexFile) throws AfpException {
+
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(indexFile)));
+
+			// Write header
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileLength);
+			out.writeLong(fileModified);
+
+			// Write records
+			out.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				out.writeLong(offsets[i]);
+			}
+			for (int i = 0; i < count; i++) {
+				out.writeInt(lengths[i]);
+			}
+			for (int i = 0; i < count; i++) {
+				out.writeInt(identifiers[i]);
+			}
+
+			// Write pages
+			out.writeInt(pageCount);
+			for (int i = 0; i < pageCount; i++) {
+				out.writeInt(pageBegin[i]);
+				out.writeInt(pageEnd[i]);
+			}
+
+			// Write documents
+			out.writeInt(documentCount);
+			for (int i = 0; i < documentCount; i++) {
+				out.writeInt(documentBegin[i]);
+				out.writeInt(documentEnd[i]);
+			}
+
+			out.close();
+			out = null;
+		} catch (IOException e) {
+			throw new AfpException("Failed to write AFP index file "
+					+ indexFile, e);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					LOG.error(e.getMessage(), e);
+				}
+			}
+		}
+	}
+}
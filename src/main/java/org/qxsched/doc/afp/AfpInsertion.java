@@ -0,0 +1,48 @@
+package org.qxsched.doc.afp;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Interface {@link AfpInsertion} computes the records an {@link AfpEditor}
+ * inserts before or after the records matching a rule. Implementations used
+ * with an executor service must be thread-safe.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public interface AfpInsertion {
+
+	/**
+	 * Returns the records to insert for the supplied matching record.
+	 * 
+	 * @param rec
+	 *            the matching record.
+	 * @param seq
+	 *            the sequence number of the matching record among the
+	 *            records matching the rule, starting at 0.
+	 * @return the records to insert or <code>null</code> to insert none.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpRecord[] insert(AfpRecord rec, long seq) throws AfpException;
+}
@@ -0,0 +1,211 @@
+package org.qxsched.doc.afp;
+
+import java.io.OutputStream;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpJsonDumpWriter} dumps records as JSON Lines, one JSON object
+ * per record:
+ * 
+ * <pre>
+ * {"offset":0,"sfid":"0xD3A8A8","abbrev":"BDT","level":0,"length":24,
+ *  "flags":0,"reserved":0,"crlf":false,"data":"c4d6c3f0..."}
+ * </pre>
+ * 
+ * If the data is replaced by its digest, the <code>data</code> member is
+ * replaced by the <code>digest</code> and <code>alg</code> members. Skipped
+ * data is written as <code>null</code>. TLE records have the additional
+ * <code>attName</code> and <code>attVal</code> members. Hexadecimal values are
+ * lower case except for the structured field identifier, which is written as
+ * in the text dump.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpJsonDumpWriter extends AfpDumpWriter {
+
+	private static final byte[] ABBREV = ascii(",\"abbrev\":");
+	private static final byte[] ALG = ascii(",\"alg\":");
+	private static final byte[] ATT_NAME = ascii(",\"attName\":");
+	private static final byte[] ATT_VAL = ascii(",\"attVal\":");
+	private static final byte[] CRLF = ascii(",\"crlf\":");
+	private static final byte[] DATA = ascii(",\"data\":");
+	private static final byte[] DIGEST = ascii(",\"digest\":");
+	private static final byte[] FALSE = ascii("false");
+	private static final byte[] FLAGS = ascii(",\"flags\":");
+	private static final byte[] LENGTH = ascii(",\"length\":");
+	private static final byte[] LEVEL = ascii(",\"level\":");
+	private static final byte[] NULL = ascii("null");
+	private static final byte[] OFFSET = ascii("{\"offset\":");
+	private static final byte[] RESERVED = ascii(",\"reserved\":");
+	private static final byte[] SFID = ascii(",\"sfid\":\"0x");
+	private static final byte[] TRUE = ascii("true");
+
+	private static final byte[] HEX_UPPER = { '0', '1', '2', '3', '4', '5',
+			'6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+	// Space for the fixed members
+	private static final int FIXED = 256;
+
+	private byte[] digits = new byte[20];
+
+	/**
+	 * Constructor accepting the output stream to write to and the properties
+	 * selecting data or digest.
+	 * 
+	 * @param out
+	 *            the output stream to write to.
+	 * @param props
+	 *            the properties selecting data or digest.
+	 */
+	public AfpJsonDumpWriter(OutputStream out, AfpReadWriteProperties props) {
+		super(out, props);
+	}
+
+	// Returns the ASCII bytes of the supplied string
+	private static byte[] ascii(String str) {
+		byte[] ret = new byte[str.length()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = (byte) str.charAt(i);
+		}
+		return ret;
+	}
+
+	@Override
+	protected void encode(AfpRecord rec, long offset, int level, byte[] data,
+			String algorithm, String attName, String attVal)
+			throws AfpException {
+
+		// Header members
+		ensure(FIXED);
+		buff.put(OFFSET);
+		putLong(offset);
+		buff.put(SFID);
+		int sfid = rec.getSFIdentifier();
+		for (int shift = 20; shift >= 0; shift -= 4) {
+			buff.put(HEX_UPPER[sfid >> shift & 0xf]);
+		}
+		buff.put((byte) '"');
+		buff.put(ABBREV);
+		putString(rec.getSFIdentifierAbbrev());
+		buff.put(LEVEL);
+		putLong(level);
+		buff.put(LENGTH);
+		putLong(rec.getLength());
+		buff.put(FLAGS);
+		putLong(rec.getFlags());
+		buff.put(RESERVED);
+		putLong(rec.getReserved());
+		buff.put(CRLF);
+		buff.put(rec.isEndsInCrLf() ? TRUE : FALSE);
+
+		// Data or digest
+		buff.put(algorithm == null ? DATA : DIGEST);
+		putHex(data);
+		if (algorithm != null) {
+			ensure(FIXED);
+			buff.put(ALG);
+			putString(algorithm);
+		}
+
+		// TLE attribute
+		if (attName != null || attVal != null) {
+			ensure(ATT_NAME.length);
+			buff.put(ATT_NAME);
+			putString(attName);
+			ensure(ATT_VAL.length);
+			buff.put(ATT_VAL);
+			putString(attVal);
+		}
+
+		// End line
+		ensure(2);
+		buff.put((byte) '}');
+		buff.put((byte) '\n');
+	}
+
+	// Puts the supplied bytes as hexadecimal string or null
+	private void putHex(byte[] data) throws AfpException {
+		if (data == null) {
+			ensure(NULL.length);
+			buff.put(NULL);
+			return;
+		}
+		ensure(2 + data.length * 2);
+		buff.put((byte) '"');
+		for (int i = 0; i < data.length; i++) {
+			buff.put(HEX[data[i] >> 4 & 0xf]);
+			buff.put(HEX[data[i] & 0xf]);
+		}
+		buff.put((byte) '"');
+	}
+
+	// Puts the decimal digits of the supplied value
+	private void putLong(long val) {
+		if (val < 0) {
+			buff.put((byte) '-');
+			val = -val;
+		}
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + val % 10);
+			val /= 10;
+		} while (val > 0);
+		while (n > 0) {
+			buff.put(digits[--n]);
+		}
+	}
+
+	// Puts the supplied string as JSON string or null
+	private void putString(String str) throws AfpException {
+		if (str == null) {
+			ensure(NULL.length);
+			buff.put(NULL);
+			return;
+		}
+
+		// Room for the quotes and the longest escape of every character
+		ensure(2 + str.length() * 6);
+		buff.put((byte) '"');
+		for (int i = 0; i < str.length();) {
+			char c = str.charAt(i);
+			if (c == '"' || c == '\\') {
+				buff.put((byte) '\\');
+				buff.put((byte) c);
+				i++;
+			} else if (c < 0x20) {
+				buff.put((byte) '\\');
+				buff.put((byte) 'u');
+				buff.put((byte) '0');
+				buff.put((byte) '0');
+				buff.put(HEX[c >> 4]);
+				buff.put(HEX[c & 0xf]);
+				i++;
+			} else {
+				i = putUtf8(str, i);
+			}
+		}
+		buff.put((byte) '"');
+	}
+}
@@ -0,0 +1,225 @@
+package org.qxsched.doc.afp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpPagePipeline} reads pages (BPG..EPG groups) from an AFP
+ * factory on the calling thread and transforms them with an
+ * {@link AfpPageTransformer} on the threads of an executor service. Records
+ * outside pages are passed unchanged. The results are written to the output
+ * stream in the original order, so with an identity transformer the output is
+ * byte-identical to the input.
+ * 
+ * At most {@link #getMaxInFlight()} records are read ahead of the output.
+ * When that limit is reached the reading thread waits for the oldest record
+ * to be written.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpPagePipeline {
+
+	/**
+	 * Contains the default maximum number of records read ahead of the output.
+	 */
+	public static final int MAX_IN_FLIGHT_DEF = 64;
+
+	private static final int BPG = 0xD3A8AF;
+
+	private static Logger LOG = Logger.getLogger(AfpPagePipeline.class);
+
+	private ExecutorService executor;
+	private AfpFactory factory;
+	private int maxInFlight = MAX_IN_FLIGHT_DEF;
+	private AfpReadWriteProperties props = AfpReadWriteProperties.instance();
+	private AfpPageTransformer transformer;
+
+	/**
+	 * Constructor accepting the factory to read from, the transformer and the
+	 * executor service to run the transformer on.
+	 * 
+	 * @param factory
+	 *            the AFP factory to read from.
+	 * @param transformer
+	 *            the page transformer.
+	 * @param executor
+	 *            the executor service to run the transformer on.
+	 */
+	public AfpPagePipeline(AfpFactory factory, AfpPageTransformer transformer,
+			ExecutorService executor) {
+		this.factory = factory;
+		this.transformer = transformer;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the maximum number of records read ahead of the output.
+	 * 
+	 * @return the maximum number of records read ahead of the output.
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Reads all records from the factory, transforms the pages and writes
+	 * the results to the supplied output stream in original order.
+	 * 
+	 * @param out
+	 *            the output stream to write to.
+	 * @return the number of pages transformed.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public int run(OutputStream out) throws AfpException {
+
+		// Group pages only
+		AfpRecordGrouper grouper = new AfpRecordGrouper(factory,
+				AfpRecordGrouper.noGroupExcept(BPG));
+
+		// Reorder buffer
+		LinkedList<Future<AfpRecord>> pending =
+				new LinkedList<Future<AfpRecord>>();
+		int pages = 0;
+		try {
+			for (AfpRecord rec = grouper.getAfpRecord(); rec != null; rec = grouper
+					.getAfpRecord()) {
+
+				// Wait for the oldest record if too many in flight
+				if (pending.size() >= maxInFlight) {
+					write(out, pending.removeFirst());
+				}
+
+				// Pass records outside pages
+				if (rec.getSFIdentifier() != BPG
+						|| !(rec instanceof AfpRecordGroup)) {
+					FutureTask<AfpRecord> done = new FutureTask<AfpRecord>(
+							new Done(rec));
+					done.run();
+					pending.add(done);
+					continue;
+				}
+
+				// Transform page on worker
+				final AfpRecordGroup page = (AfpRecordGroup) rec;
+				pending.add(executor.submit(new Callable<AfpRecord>() {
+					public AfpRecord call() throws Exception {
+						return transformer.transform(page);
+					}
+				}));
+				pages++;
+			}
+
+			// Write remaining records
+			while (!pending.isEmpty()) {
+				write(out, pending.removeFirst());
+			}
+		} finally {
+
+			// Cancel remaining work on failure
+			for (Future<AfpRecord> future : pending) {
+				future.cancel(true);
+			}
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Transformed " + pages + " pages");
+		}
+		return pages;
+	}
+
+	/**
+	 * Sets the object's read/write properties.
+	 * 
+	 * @param props
+	 *            the object's read/write properties.
+	 */
+	public void setAfpReadWriteProperties(AfpReadWriteProperties props) {
+		this.props = props;
+	}
+
+	/**
+	 * Sets the maximum number of records read ahead of the output.
+	 * 
+	 * @param maxInFlight
+	 *            the maximum number of records read ahead of the output.
+	 * @throws AfpException
+	 *             if the number is smaller than 1.
+	 */
+	public void setMaxInFlight(int maxInFlight) throws AfpException {
+		if (maxInFlight < 1) {
+			throw new AfpException("Maximum in flight must be at least 1");
+		}
+		this.maxInFlight = maxInFlight;
+	}
+
+	// Waits for a record and writes it
+	private void write(OutputStream out, Future<AfpRecord> future)
+			throws AfpException {
+
+		// Wait
+		AfpRecord rec;
+		try {
+			rec = future.get();
+		} catch (InterruptedException e) {
+			throw new AfpException("Interrupted while transforming page", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof AfpException) {
+				throw (AfpException) e.getCause();
+			}
+			throw new AfpException("Failed to transform page", e.getCause());
+		}
+
+		// Write
+		try {
+			rec.write(out, props);
+		} catch (IOException e) {
+			throw new AfpException("Failed to write record", e);
+		}
+	}
+
+	// Returns a record that needs no transformation
+	private static class Done implements Callable<AfpRecord> {
+
+		private AfpRecord rec;
+
+		public Done(AfpRecord rec) {
+			this.rec = rec;
+		}
+
+		public AfpRecord call() {
+			return rec;
+		}
+	}
+}
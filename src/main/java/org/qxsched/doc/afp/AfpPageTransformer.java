@@ -0,0 +1,46 @@
+package org.qxsched.doc.afp;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Interface {@link AfpPageTransformer} must be implemented by classes that
+ * transform pages in an {@link AfpPagePipeline}. Implementations are called
+ * concurrently from worker threads for different pages.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public interface AfpPageTransformer {
+
+	/**
+	 * Transforms the supplied page and returns the record to write in its
+	 * place. The page itself may be returned, modified or not.
+	 * 
+	 * @param page
+	 *            the page (BPG..EPG group) to transform.
+	 * @return the record to write in place of the page.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpRecord transform(AfpRecordGroup page) throws AfpException;
+}
@@ -0,0 +1,260 @@
+package org.qxsched.doc.afp;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpPublisher} delivers the records or the pages read from an
+ * {@link AfpFactory} to a single {@link AfpSubscriber}. Records are read on
+ * the threads of an executor only as far as the subscriber requested them,
+ * so a slow subscriber throttles reading and the memory used does not
+ * depend on the input size.
+ * 
+ * The factory is not closed by the publisher.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ * @param <T>
+ *            the type of records delivered.
+ */
+public class AfpPublisher<T extends AfpRecord> {
+
+	private static final int BPG = 0xD3A8AF;
+
+	private static Logger LOG = Logger.getLogger(AfpPublisher.class);
+
+	private Executor executor;
+	private AfpFactory factory;
+	private AfpRecordGrouper grouper;
+	private AtomicBoolean subscribed = new AtomicBoolean();
+	private Class<T> type;
+
+	/**
+	 * Constructor accepting the type of the records delivered, the factory
+	 * and the grouper to read from and the executor.
+	 * 
+	 * @param type
+	 *            the type of records delivered.
+	 * @param factory
+	 *            the factory to read from if no grouper is supplied.
+	 * @param grouper
+	 *            the grouper to read pages from or <code>null</code>.
+	 * @param executor
+	 *            the executor to read and deliver on.
+	 */
+	private AfpPublisher(Class<T> type, AfpFactory factory,
+			AfpRecordGrouper grouper, Executor executor) {
+		this.type = type;
+		this.factory = factory;
+		this.grouper = grouper;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns a publisher of the pages (BPG..EPG groups) read from the
+	 * supplied factory. Records outside pages are skipped.
+	 * 
+	 * @param factory
+	 *            the factory to read from.
+	 * @param executor
+	 *            the executor to read and deliver on.
+	 * @return the publisher.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public static AfpPublisher<AfpRecordGroup> pages(AfpFactory factory,
+			Executor executor) throws AfpException {
+		return new AfpPublisher<AfpRecordGroup>(AfpRecordGroup.class,
+				factory, new AfpRecordGrouper(factory, AfpRecordGrouper
+						.noGroupExcept(BPG)), executor);
+	}
+
+	/**
+	 * Returns a publisher of the records read from the supplied factory.
+	 * 
+	 * @param factory
+	 *            the factory to read from.
+	 * @param executor
+	 *            the executor to read and deliver on.
+	 * @return the publisher.
+	 */
+	public static AfpPublisher<AfpRecord> records(AfpFactory factory,
+			Executor executor) {
+		return new AfpPublisher<AfpRecord>(AfpRecord.class, factory, null,
+				executor);
+	}
+
+	// Reads the next record or page
+	private T read() throws AfpException {
+		while (true) {
+			AfpRecord rec = grouper == null ? factory.createAfpRecord()
+					: grouper.getAfpRecord();
+			if (rec == null) {
+				return null;
+			}
+			if (grouper == null
+					|| (rec instanceof AfpRecordGroup && rec
+							.getSFIdentifier() == BPG)) {
+				return type.cast(rec);
+			}
+		}
+	}
+
+	/**
+	 * Subscribes the supplied subscriber. Only one subscriber is accepted;
+	 * further subscribers receive an {@link IllegalStateException} through
+	 * {@link AfpSubscriber#onError(Throwable)}.
+	 * 
+	 * @param subscriber
+	 *            the subscriber.
+	 */
+	public void subscribe(AfpSubscriber<? super T> subscriber) {
+
+		// Reject further subscribers
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new AfpSubscription() {
+				public void cancel() {
+				}
+
+				public void request(long n) {
+				}
+			});
+			subscriber.onError(new IllegalStateException(
+					"Publisher accepts one subscriber only"));
+			return;
+		}
+
+		// Subscribe
+		subscriber.onSubscribe(new Subscription(subscriber));
+	}
+
+	// Delivers records as requested
+	private class Subscription implements AfpSubscription, Runnable {
+
+		private volatile boolean done;
+		private AtomicLong demand = new AtomicLong();
+		private AtomicReference<Throwable> error =
+				new AtomicReference<Throwable>();
+		private AfpSubscriber<? super T> subscriber;
+		private AtomicInteger wip = new AtomicInteger();
+
+		public Subscription(AfpSubscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void cancel() {
+			done = true;
+		}
+
+		public void request(long n) {
+
+			// Do nothing if done
+			if (done) {
+				return;
+			}
+
+			// Fail on non-positive requests, signalled by the delivery loop
+			if (n <= 0) {
+				error.compareAndSet(null, new IllegalArgumentException(
+						"Requested number must be positive: " + n));
+			}
+
+			// Add demand, capped at Long.MAX_VALUE
+			while (n > 0) {
+				long cur = demand.get();
+				long upd = cur + n < 0 ? Long.MAX_VALUE : cur + n;
+				if (demand.compareAndSet(cur, upd)) {
+					break;
+				}
+			}
+
+			// Schedule delivery unless running
+			if (wip.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+
+		public void run() {
+			int missed = 1;
+			do {
+
+				// Deliver as long as requested
+				while (!done) {
+
+					// Signal pending error
+					Throwable err = error.get();
+					if (err != null) {
+						done = true;
+						subscriber.onError(err);
+						return;
+					}
+					if (demand.get() == 0) {
+						break;
+					}
+
+					// Read record
+					T rec;
+					try {
+						rec = read();
+					} catch (Throwable e) {
+						done = true;
+						if (LOG.isDebugEnabled()) {
+							LOG.debug("Failed to read record", e);
+						}
+						subscriber.onError(e);
+						return;
+					}
+					if (rec == null) {
+						done = true;
+						subscriber.onComplete();
+						return;
+					}
+
+					// Deliver record, failing the subscription if the
+					// subscriber throws
+					demand.decrementAndGet();
+					try {
+						subscriber.onNext(rec);
+					} catch (Throwable e) {
+						done = true;
+						if (LOG.isDebugEnabled()) {
+							LOG.debug("Subscriber failed on record", e);
+						}
+						subscriber.onError(e);
+						return;
+					}
+				}
+
+				// Run again for requests made meanwhile
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
+}
@@ -2,6 +2,7 @@ package org.qxsched.doc.afp;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /*
  * 
@@ -55,10 +56,17 @@ public class AfpReadWriteProperties {
 		return instance;
 	}
 
+	private boolean convertLazy;
 	private Map<Integer, String> convertSpecific;
-	private Map<Integer, String> levelPrefix = new HashMap<Integer, String>();
+	private Map<Integer, String> levelPrefix =
+			new ConcurrentHashMap<Integer, String>();
 	private int levelSpaces = 2;
+	private String messageDigestAlgorithm = AfpDigest.MD5;
 	private int messageDigestThreshold = -1;
+	private int readAheadDepth;
+	private int readBufferSize = AfpRecordCursor.BUFFER_SIZE_DEF;
+	private Map<Integer, String> readData;
+	private boolean returnSkipped = true;
 
 	/**
 	 * Simple constructor.
@@ -68,10 +76,13 @@ public class AfpReadWriteProperties {
 
 	public String getLevelPrefix(int level) {
 
-		if (levelPrefix.containsKey(level)) {
-			return levelPrefix.get(level);
+		// Return cached prefix
+		String cached = levelPrefix.get(level);
+		if (cached != null) {
+			return cached;
 		}
 
+		// Make and cache prefix
 		StringBuffer sb = new StringBuffer();
 		for (int i = 0; i < level; i++) {
 			for (int j = 0; j < levelSpaces; j++) {
@@ -79,14 +90,22 @@ public class AfpReadWriteProperties {
 			}
 		}
 		String prefix = sb.toString();
-
-		synchronized (levelPrefix) {
-			levelPrefix.put(level, prefix);
-		}
-
+		levelPrefix.put(level, prefix);
 		return prefix;
 	}
 
+	/**
+	 * Returns the algorithm of the message digest shown instead of the actual
+	 * contents. See {@link AfpDigest} for the supported algorithms.
+	 * 
+	 * The default is {@link AfpDigest#MD5}.
+	 * 
+	 * @return the algorithm of the message digest.
+	 */
+	public String getMessageDigestAlgorithm() {
+		return messageDigestAlgorithm;
+	}
+
 	/**
 	 * Returns the threshold for the data length at which a message digest is
 	 * shown instead of the actual contents. A negative value means no threshold
@@ -99,6 +118,38 @@ public class AfpReadWriteProperties {
 		return messageDigestThreshold;
 	}
 
+	/**
+	 * Returns true if records are converted to specific objects lazily. In
+	 * that case the AFP factory returns generic records and the conversion is
+	 * done on the first call of {@link AfpRecord#as(Class)}.
+	 * 
+	 * The default is <code>false</code>.
+	 * 
+	 * @return true if records are converted to specific objects lazily.
+	 */
+	public boolean isConvertLazy() {
+		return convertLazy;
+	}
+
+	/**
+	 * Returns the number of blocks read ahead of the parser on a dedicated I/O
+	 * thread. If 0, no I/O thread is used.
+	 * 
+	 * @return the number of blocks read ahead.
+	 */
+	public int getReadAheadDepth() {
+		return readAheadDepth;
+	}
+
+	/**
+	 * Returns the size of the buffer used to read records from input streams.
+	 * 
+	 * @return the size of the buffer used to read records from input streams.
+	 */
+	public int getReadBufferSize() {
+		return readBufferSize;
+	}
+
 	/**
 	 * Returns true if the supplied generic AFP record must be converted to a
 	 * specific object during reading.
@@ -131,6 +182,49 @@ public class AfpReadWriteProperties {
 		return convertSpecific.containsKey(identifier);
 	}
 
+	/**
+	 * Returns true if the data of records of the supplied record identifier
+	 * type must be read. The data of other records is skipped.
+	 * 
+	 * The default behavior is that the data of all records is read.
+	 * 
+	 * @param identifier
+	 *            the AFP record identifier
+	 */
+	public boolean isReadData(int identifier) {
+
+		// Read all if map is null
+		if (readData == null) {
+			return true;
+		}
+
+		// Read if map contains key
+		return readData.containsKey(identifier);
+	}
+
+	/**
+	 * Returns true if records of which the data is skipped must be returned
+	 * by the AFP factory as header-only records. If false, such records are
+	 * not returned at all.
+	 * 
+	 * The default is <code>true</code>.
+	 * 
+	 * @return true if records of which the data is skipped must be returned.
+	 */
+	public boolean isReturnSkipped() {
+		return returnSkipped;
+	}
+
+	/**
+	 * Sets if records are converted to specific objects lazily.
+	 * 
+	 * @param convertLazy
+	 *            true if records are converted to specific objects lazily.
+	 */
+	public void setConvertLazy(boolean convertLazy) {
+		this.convertLazy = convertLazy;
+	}
+
 	/**
 	 * Sets that objects of supplied identifier type must be converted to
 	 * specific object types during read.
@@ -165,6 +259,17 @@ public class AfpReadWriteProperties {
 		convertSpecific = new HashMap<Integer, String>();
 	}
 
+	/**
+	 * Sets the algorithm of the message digest shown instead of the actual
+	 * contents.
+	 * 
+	 * @param messageDigestAlgorithm
+	 *            the algorithm of the message digest.
+	 */
+	public void setMessageDigestAlgorithm(String messageDigestAlgorithm) {
+		this.messageDigestAlgorithm = messageDigestAlgorithm;
+	}
+
 	/**
 	 * Sets the threshold for the data length at which a message digest is shown
 	 * instead of the actual contents.
@@ -177,6 +282,86 @@ public class AfpReadWriteProperties {
 		this.messageDigestThreshold = messageDigestThreshold;
 	}
 
+	/**
+	 * Sets the number of blocks read ahead of the parser on a dedicated I/O
+	 * thread. The blocks are {@link #getReadBufferSize()} bytes large. If 0,
+	 * no I/O thread is used.
+	 * 
+	 * @param readAheadDepth
+	 *            the number of blocks read ahead.
+	 * @throws AfpException
+	 *             if the number is negative.
+	 * @see ReadAheadInputStream
+	 */
+	public void setReadAheadDepth(int readAheadDepth) throws AfpException {
+		if (readAheadDepth < 0) {
+			throw new AfpException("Read ahead depth may not be negative");
+		}
+		this.readAheadDepth = readAheadDepth;
+	}
+
+	/**
+	 * Sets the size of the buffer used to read records from input streams set
+	 * hereafter. The size may not be smaller than
+	 * {@link AfpRecordCursor#RECORD_MAX}.
+	 * 
+	 * @param readBufferSize
+	 *            the size of the buffer used to read records from input
+	 *            streams.
+	 * @throws AfpException
+	 *             if the size is too small.
+	 */
+	public void setReadBufferSize(int readBufferSize) throws AfpException {
+		if (readBufferSize < AfpRecordCursor.RECORD_MAX) {
+			throw new AfpException("Read buffer size must be at least "
+					+ AfpRecordCursor.RECORD_MAX);
+		}
+		this.readBufferSize = readBufferSize;
+	}
+
+	/**
+	 * Sets that the data of records of supplied identifier type must be read.
+	 * 
+	 * @param identifier
+	 *            the AFP record identifier
+	 */
+	public void setReadData(Integer identifier) {
+
+		// Create map if null
+		if (readData == null) {
+			readData = new HashMap<Integer, String>();
+		}
+
+		// Set identifier
+		readData.put(identifier, "");
+	}
+
+	/**
+	 * Sets that the data of records of all identifier types must be read.
+	 */
+	public void setReadDataAll() {
+		readData = null;
+	}
+
+	/**
+	 * Sets that the data of no records must be read.
+	 */
+	public void setReadDataNone() {
+		readData = new HashMap<Integer, String>();
+	}
+
+	/**
+	 * Sets if records of which the data is skipped must be returned by the
+	 * AFP factory as header-only records.
+	 * 
+	 * @param returnSkipped
+	 *            true if records of which the data is skipped must be
+	 *            returned.
+	 */
+	public void setReturnSkipped(boolean returnSkipped) {
+		this.returnSkipped = returnSkipped;
+	}
+
 	/**
 	 * Sets that objects of supplied identifier types must NOT be converted to
 	 * specific object types during read.
@@ -194,4 +379,22 @@ public class AfpReadWriteProperties {
 		// Remove identifier
 		convertSpecific.remove(identifier);
 	}
+
+	/**
+	 * Sets that the data of records of supplied identifier type must NOT be
+	 * read.
+	 * 
+	 * @param identifier
+	 *            the AFP record identifier
+	 */
+	public void unsetReadData(Integer identifier) {
+
+		// Do nothing if null
+		if (readData == null) {
+			return;
+		}
+
+		// Remove identifier
+		readData.remove(identifier);
+	}
 }
@@ -3,6 +3,7 @@ package org.qxsched.doc.afp;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /*
  * 
@@ -34,6 +35,21 @@ import java.io.OutputStream;
  */
 public interface AfpRecord {
 
+	/**
+	 * Returns the record as an instance of the supplied class. If the record
+	 * is not an instance of the class, a specific record is created from it
+	 * on first call and cached. If the specific record is not an instance of
+	 * the class either, <code>null</code> is returned.
+	 * 
+	 * @param cls
+	 *            the class to return the record as.
+	 * @return the record as an instance of the supplied class or
+	 *         <code>null</code>.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public <T extends AfpRecord> T as(Class<T> cls) throws AfpException;
+
 	/**
 	 * Returns the record data as byte array.
 	 * 
@@ -41,6 +57,15 @@ public interface AfpRecord {
 	 */
 	public byte[] getData();
 
+	/**
+	 * Returns the record data as read-only byte buffer. Implementations backed
+	 * by a memory mapped file return a slice of the mapping without copying
+	 * the data.
+	 * 
+	 * @return the record data as read-only byte buffer.
+	 */
+	public ByteBuffer getDataBuffer();
+
 	/**
 	 * Returns the 1 byte flags field from the structured field introducer as
 	 * integer.
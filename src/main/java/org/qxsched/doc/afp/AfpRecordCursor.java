@@ -0,0 +1,643 @@
+package org.qxsched.doc.afp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpRecordCursor} is a mutable cursor over the structured fields
+ * in an AFP data stream. The cursor exposes the structured field introducer of
+ * the current record as primitives and does not allocate objects per record.
+ * The record data is only read when requested; otherwise it is skipped.
+ * 
+ * The cursor reads either from an input stream into a reusable buffer or from
+ * a file channel which it maps in windows. The data of the current record is
+ * available in the buffer returned by {@link #getBuffer()} starting at
+ * {@link #getDataPosition()}. The buffer contents are only valid until the
+ * next call to {@link #next()}.
+ * 
+ * Typical use:
+ * 
+ * <pre>
+ * AfpRecordCursor cursor = new AfpRecordCursor(in);
+ * while (cursor.next()) {
+ * 	if (cursor.getSFIdentifier() == sfid) {
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpRecordCursor {
+
+	/**
+	 * Contains the default buffer size for reading input streams.
+	 */
+	public static final int BUFFER_SIZE_DEF = 256 * 1024;
+
+	/**
+	 * Contains the maximum size of a record including CCC and CR LF. Buffers
+	 * and windows may not be smaller.
+	 */
+	public static final int RECORD_MAX = 1 + 0xffff + 2;
+
+	/**
+	 * Contains the default size of the mapped windows when reading file
+	 * channels.
+	 */
+	public static final long WINDOW_SIZE_DEF = 64L * 1024L * 1024L;
+
+	private static Logger LOG = Logger.getLogger(AfpRecordCursor.class);
+
+	// Buffer
+	private byte[] array;
+	private ByteBuffer buffer;
+	private int bufferLimit;
+	private long bufferOffset;
+
+	// Source
+	private FileChannel channel;
+	private long end = Long.MAX_VALUE;
+	private boolean eof;
+	private InputStream in;
+	private long windowSize;
+
+	// Current record
+	private boolean dataLoaded;
+	private boolean dataSkipped;
+	private int flags;
+	private int identifier;
+	private int length;
+	private long offset;
+	private long position;
+	private int reserved;
+	private int trailer = -1;
+	private boolean valid;
+
+	/**
+	 * Constructor accepting a file channel. The cursor reads from the
+	 * channel's current position up to the channel's size.
+	 * 
+	 * @param channel
+	 *            the file channel to read from.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpRecordCursor(FileChannel channel) throws AfpException {
+		this(channel, channelPosition(channel), channelSize(channel),
+				WINDOW_SIZE_DEF);
+	}
+
+	/**
+	 * Constructor accepting a file channel and the range to read from. The
+	 * channel's position is not used nor changed. Offsets returned by the
+	 * cursor are offsets in the file.
+	 * 
+	 * @param channel
+	 *            the file channel to read from.
+	 * @param start
+	 *            the offset of the first record.
+	 * @param end
+	 *            the offset after the last record.
+	 * @param windowSize
+	 *            the size of the mapped windows.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpRecordCursor(FileChannel channel, long start, long end,
+			long windowSize) throws AfpException {
+
+		// Check window size
+		if (windowSize < RECORD_MAX) {
+			throw new AfpException("Window size must be at least "
+					+ RECORD_MAX);
+		}
+
+		this.channel = channel;
+		this.end = end;
+		this.windowSize = windowSize;
+		position = start;
+		bufferOffset = start;
+	}
+
+	/**
+	 * Constructor accepting an input stream. The default buffer size is used.
+	 * 
+	 * @param in
+	 *            the input stream to read from.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpRecordCursor(InputStream in) throws AfpException {
+		this(in, BUFFER_SIZE_DEF);
+	}
+
+	/**
+	 * Constructor accepting an input stream and the buffer size. Offsets
+	 * returned by the cursor count from the first byte read from the stream.
+	 * 
+	 * @param in
+	 *            the input stream to read from.
+	 * @param bufferSize
+	 *            the size of the reusable buffer.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpRecordCursor(InputStream in, int bufferSize) throws AfpException {
+
+		// Check buffer size
+		if (bufferSize < RECORD_MAX) {
+			throw new AfpException("Buffer size must be at least "
+					+ RECORD_MAX);
+		}
+
+		this.in = in;
+		array = new byte[bufferSize];
+		buffer = ByteBuffer.wrap(array);
+	}
+
+	private static long channelPosition(FileChannel channel)
+			throws AfpException {
+		try {
+			return channel.position();
+		} catch (IOException e) {
+			throw new AfpException("Failed to get channel position", e);
+		}
+	}
+
+	private static long channelSize(FileChannel channel) throws AfpException {
+		try {
+			return channel.size();
+		} catch (IOException e) {
+			throw new AfpException("Failed to get channel size", e);
+		}
+	}
+
+	// Checks that the cursor is on a record
+	private void checkValid() {
+		if (!valid) {
+			throw new IllegalStateException("Cursor is not on a record.");
+		}
+	}
+
+	// Decodes the trailing bytes at the supplied buffer index
+	private void decodeTrailer(int idx, int avail) throws AfpException {
+
+		// EOF
+		if (avail < 1) {
+			trailer = 0;
+			return;
+		}
+
+		// New record
+		int b = buffer.get(idx) & 0xff;
+		if (b == 0x5a) {
+			trailer = 0;
+			return;
+		}
+
+		// Expect CR LF
+		if (b != 0x0d) {
+			throw new AfpException("Expected CR but got "
+					+ AfpStructuredFieldDefinitions.hexString(b, 2)
+					+ " at offset " + (bufferOffset + idx));
+		}
+		b = avail < 2 ? -1 : buffer.get(idx + 1) & 0xff;
+		if (b != 0x0a) {
+			throw new AfpException("Expected LF but got "
+					+ AfpStructuredFieldDefinitions.hexString(b, 2)
+					+ " at offset " + (bufferOffset + idx + 1));
+		}
+		trailer = 2;
+	}
+
+	// Makes sure len bytes from position are in the buffer and returns the
+	// number of bytes available, which is less than len at end of input.
+	private int ensure(int len) throws AfpException {
+
+		// Return if available
+		int idx = (int) (position - bufferOffset);
+		int avail = bufferLimit - idx;
+		if (idx >= 0 && avail >= len) {
+			return len;
+		}
+		if (idx >= 0 && (eof || bufferOffset + bufferLimit >= end)) {
+			return Math.max(avail, 0);
+		}
+
+		// Map file channel
+		if (channel != null) {
+			long mapSize = Math.min(windowSize, end - position);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Mapping " + mapSize + " bytes at offset "
+						+ position);
+			}
+			try {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						mapSize);
+			} catch (IOException e) {
+				throw new AfpException("Failed to map " + mapSize
+						+ " bytes at offset " + position, e);
+			}
+			bufferOffset = position;
+			bufferLimit = (int) mapSize;
+			return (int) Math.min(len, mapSize);
+		}
+
+		// Compact buffer
+		if (idx > 0) {
+			System.arraycopy(array, idx, array, 0, avail);
+			bufferOffset = position;
+			bufferLimit = avail;
+		}
+
+		// Read until enough bytes or end of input
+		try {
+			while (bufferLimit < len) {
+				int read = in.read(array, bufferLimit, array.length
+						- bufferLimit);
+				if (read < 0) {
+					eof = true;
+					break;
+				}
+				bufferLimit += read;
+			}
+		} catch (IOException e) {
+			throw new AfpException("Failed to read from input stream", e);
+		}
+
+		// Return
+		return Math.min(len, bufferLimit);
+	}
+
+	/**
+	 * Returns the buffer containing the current record's data. The data is
+	 * read into the buffer if not done already. The buffer must not be
+	 * modified and its contents are only valid until the next call to
+	 * {@link #next()}.
+	 * 
+	 * @return the buffer containing the current record's data.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public ByteBuffer getBuffer() throws AfpException {
+		loadData();
+		return buffer;
+	}
+
+	/**
+	 * Copies the current record's data into the supplied array.
+	 * 
+	 * @param dst
+	 *            the destination array.
+	 * @param dstOffset
+	 *            the offset in the destination array.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void getData(byte[] dst, int dstOffset) throws AfpException {
+		loadData();
+		int idx = (int) (offset + 9 - bufferOffset);
+		if (array != null) {
+			System.arraycopy(array, idx, dst, dstOffset, length - 8);
+		} else {
+			ByteBuffer dup = buffer.duplicate();
+			dup.position(idx);
+			dup.get(dst, dstOffset, length - 8);
+		}
+	}
+
+	/**
+	 * Returns the length of the current record's data.
+	 * 
+	 * @return the length of the current record's data.
+	 */
+	public int getDataLength() {
+		checkValid();
+		return length - 8;
+	}
+
+	/**
+	 * Returns the offset of the current record's data in the input.
+	 * 
+	 * @return the offset of the current record's data in the input.
+	 */
+	public long getDataOffset() {
+		checkValid();
+		return offset + 9;
+	}
+
+	/**
+	 * Returns the position of the current record's data in the buffer
+	 * returned by {@link #getBuffer()}. The data is read into the buffer if
+	 * not done already.
+	 * 
+	 * @return the position of the current record's data in the buffer.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public int getDataPosition() throws AfpException {
+		loadData();
+		return (int) (offset + 9 - bufferOffset);
+	}
+
+	/**
+	 * Returns the offset after the current record, including the trailing CR
+	 * LF if any.
+	 * 
+	 * @return the offset after the current record.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public long getEndOffset() throws AfpException {
+		loadTrailer();
+		return offset + 1 + length + trailer;
+	}
+
+	/**
+	 * Returns the 1 byte flags field from the structured field introducer.
+	 * 
+	 * @return the 1 byte flags field from the structured field introducer.
+	 */
+	public int getFlags() {
+		checkValid();
+		return flags;
+	}
+
+	/**
+	 * Returns the 2 bytes length field from the structured field introducer.
+	 * 
+	 * @return the 2 bytes length field from the structured field introducer.
+	 */
+	public int getLength() {
+		checkValid();
+		return length;
+	}
+
+	/**
+	 * Returns the offset of the current record's CCC in the input.
+	 * 
+	 * @return the offset of the current record's CCC in the input.
+	 */
+	public long getOffset() {
+		checkValid();
+		return offset;
+	}
+
+	/**
+	 * Returns the 2 bytes reserved field from the structured field introducer.
+	 * 
+	 * @return the 2 bytes reserved field from the structured field introducer.
+	 */
+	public int getReserved() {
+		checkValid();
+		return reserved;
+	}
+
+	/**
+	 * Returns the 3 bytes structured field identifier from the structured
+	 * field introducer.
+	 * 
+	 * @return the 3 bytes structured field identifier from the structured
+	 *         field introducer.
+	 */
+	public int getSFIdentifier() {
+		checkValid();
+		return identifier;
+	}
+
+	/**
+	 * Returns the flag to denote that the current record is ended with CR LF.
+	 * 
+	 * @return the flag to denote that the current record is ended with CR LF.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public boolean isEndsInCrLf() throws AfpException {
+		loadTrailer();
+		return trailer == 2;
+	}
+
+	// Reads the data of the current record into the buffer
+	private void loadData() throws AfpException {
+
+		// Return if loaded
+		checkValid();
+		if (dataLoaded) {
+			return;
+		}
+		if (dataSkipped) {
+			throw new IllegalStateException(
+					"Data of current record was skipped.");
+		}
+
+		// Read
+		int avail = ensure(1 + length);
+		if (avail < 1 + length) {
+			throw new AfpException("Expected " + (length - 8)
+					+ " bytes as data but got " + (avail - 9)
+					+ " bytes at offset " + (offset + 9));
+		}
+		dataLoaded = true;
+	}
+
+	// Reads the trailing CR LF of the current record if any
+	private void loadTrailer() throws AfpException {
+
+		// Return if loaded
+		checkValid();
+		if (trailer > -1) {
+			return;
+		}
+
+		// Read data and trailing bytes
+		loadData();
+		int avail = ensure(1 + length + 2);
+		decodeTrailer((int) (position - bufferOffset) + 1 + length, avail - 1
+				- length);
+	}
+
+	/**
+	 * Advances the cursor to the next record. The data of the current record
+	 * is skipped if it was not read.
+	 * 
+	 * @return <code>true</code> if the cursor is on a record and
+	 *         <code>false</code> at end of input.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public boolean next() throws AfpException {
+
+		// Skip current record
+		if (valid) {
+			if (dataLoaded) {
+				loadTrailer();
+			} else {
+				skipData();
+			}
+			position = offset + 1 + length + trailer;
+			valid = false;
+		}
+
+		// Return if end of input
+		if (position >= end) {
+			return false;
+		}
+		int avail = ensure(9);
+		if (avail == 0) {
+			return false;
+		}
+		if (avail < 9) {
+			throw new AfpException("Expected 9 bytes as CCC and structured"
+					+ " field introducer but got " + avail
+					+ " bytes at offset " + position);
+		}
+		int idx = (int) (position - bufferOffset);
+
+		// Expect the CCC
+		int cccRead = buffer.get(idx) & 0xff;
+		if (cccRead != 0x5a) {
+			throw new AfpException(
+					"Expected Carriage Control Character but got "
+							+ AfpStructuredFieldDefinitions.hexString(cccRead,
+									2) + " at offset " + position);
+		}
+
+		// Make introducer fields
+		length = buffer.getShort(idx + 1) & 0xffff;
+		identifier = (buffer.get(idx + 3) & 0xff) << 16
+				| (buffer.get(idx + 4) & 0xff) << 8 | buffer.get(idx + 5)
+				& 0xff;
+		flags = buffer.get(idx + 6) & 0xff;
+		reserved = buffer.getShort(idx + 7) & 0xffff;
+		if (length < 8) {
+			throw new AfpException("Illegal record length "
+					+ AfpStructuredFieldDefinitions.hexString(length, 4)
+					+ " at offset " + position);
+		}
+
+		// Set state
+		offset = position;
+		dataLoaded = false;
+		dataSkipped = false;
+		trailer = -1;
+		valid = true;
+
+		// Return
+		return true;
+	}
+
+	/**
+	 * Skips the current record's data without reading it into the buffer,
+	 * unless read already, and decodes the trailing bytes. Input streams are
+	 * skipped using {@link InputStream#skip(long)}. The data of the current
+	 * record is not available afterwards.
+	 * 
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void skipData() throws AfpException {
+
+		// Return if trailer known
+		checkValid();
+		if (trailer > -1) {
+			return;
+		}
+
+		// Decode trailer after data already read
+		if (dataLoaded) {
+			loadTrailer();
+			return;
+		}
+
+		// Skip data
+		if (!skip(offset + 1 + length)) {
+			throw new AfpException("Expected " + (length - 8)
+					+ " bytes as data but input ended at offset " + position);
+		}
+		dataSkipped = true;
+		decodeTrailer((int) (position - bufferOffset), ensure(2));
+	}
+
+	// Moves position to target. Skips the input stream if target is beyond
+	// the buffered bytes. Returns false if the input ends before target.
+	private boolean skip(long target) throws AfpException {
+
+		// Within buffer or file channel
+		if (channel != null || target <= bufferOffset + bufferLimit) {
+			position = target;
+			return target <= end;
+		}
+
+		// Discard buffer and skip input stream
+		long toSkip = target - (bufferOffset + bufferLimit);
+		bufferOffset += bufferLimit;
+		bufferLimit = 0;
+		try {
+			while (toSkip > 0) {
+				long skipped = in.skip(toSkip);
+				if (skipped <= 0) {
+
+					// Some streams return 0 at EOF, check by reading
+					int read = in.read();
+					if (read < 0) {
+						eof = true;
+						position = bufferOffset;
+						return false;
+					}
+					skipped = 1;
+				}
+				toSkip -= skipped;
+				bufferOffset += skipped;
+			}
+		} catch (IOException e) {
+			throw new AfpException("Failed to skip input stream", e);
+		}
+		position = target;
+		return true;
+	}
+
+	/**
+	 * Returns a read-only slice of the current record's data. When reading a
+	 * file channel the slice remains valid after advancing the cursor, when
+	 * reading an input stream it does not.
+	 * 
+	 * @return a read-only slice of the current record's data.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public ByteBuffer sliceData() throws AfpException {
+		int idx = getDataPosition();
+		ByteBuffer dup = buffer.asReadOnlyBuffer();
+		dup.limit(idx + length - 8);
+		dup.position(idx);
+		return dup.slice();
+	}
+}
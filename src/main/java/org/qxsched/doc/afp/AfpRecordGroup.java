@@ -3,6 +3,7 @@ package org.qxsched.doc.afp;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -41,6 +42,7 @@ public class AfpRecordGroup implements AfpRecord {
 	private AfpStructuredFieldDefinitions afpStructuredFieldDefinitions;
 	private boolean closed = false;
 	private boolean endsInCrLf;
+	private byte[] frozen;
 	private List<AfpRecord> memberList = new ArrayList<AfpRecord>();
 	private AfpRecordGroup parent;
 
@@ -62,7 +64,15 @@ public class AfpRecordGroup implements AfpRecord {
 		}
 	}
 
+	public <T extends AfpRecord> T as(Class<T> cls) {
+		return cls.isInstance(this) ? cls.cast(this) : null;
+	}
+
 	public void addMember(AfpRecord rec) {
+		if (frozen != null) {
+			throw new IllegalStateException("Cannot add to a frozen group: "
+					+ getSFIdentifierAbbrev());
+		}
 		memberList.add(rec);
 	}
 
@@ -97,10 +107,105 @@ public class AfpRecordGroup implements AfpRecord {
 
 	}
 
+	/**
+	 * Returns the record beginning the group.
+	 * 
+	 * @return the record beginning the group.
+	 */
+	public AfpRecord getBeginRecord() {
+		return afpBeginGroup;
+	}
+
+	// Encodes the supplied record into the buffer
+	private static void encode(ByteBuffer buff, AfpRecord rec)
+			throws AfpException {
+		if (rec instanceof AfpRecordGroup) {
+			AfpRecordGroup group = (AfpRecordGroup) rec;
+			if (group.frozen != null) {
+				buff.put(group.frozen);
+				return;
+			}
+			encode(buff, group.afpBeginGroup);
+			for (AfpRecord member : group.memberList) {
+				encode(buff, member);
+			}
+			encode(buff, group.afpEndGroup);
+			return;
+		}
+		ByteBuffer data = rec.getDataBuffer();
+		if (data == null) {
+			throw new AfpException("Cannot freeze record "
+					+ rec.getSFIdentifierString() + " with skipped data");
+		}
+		AfpWriter.encode(buff, rec, data);
+	}
+
+	/**
+	 * Serializes the closed group into one contiguous byte array of exactly
+	 * {@link #getSerializedSize()} bytes. Afterwards the group is written with
+	 * a single bulk write and no members can be added. Changes to the members
+	 * made after freezing are not written.
+	 * 
+	 * @throws AfpException
+	 *             if the group is not closed, too large or holds records
+	 *             whose data was skipped.
+	 */
+	public void freeze() throws AfpException {
+
+		// Return if frozen
+		if (frozen != null) {
+			return;
+		}
+
+		// Get size
+		long size = getSerializedSize();
+		if (size > Integer.MAX_VALUE) {
+			throw new AfpException("Cannot freeze group "
+					+ getSFIdentifierAbbrev() + " of " + size + " bytes");
+		}
+
+		// Serialize
+		ByteBuffer buff = ByteBuffer.allocate((int) size);
+		encode(buff, this);
+		frozen = buff.array();
+	}
+
 	public byte[] getData() {
 		return null;
 	}
 
+	public ByteBuffer getDataBuffer() {
+		return null;
+	}
+
+	/**
+	 * Returns the record ending the group or <code>null</code> if the group
+	 * is not closed.
+	 * 
+	 * @return the record ending the group.
+	 */
+	public AfpRecord getEndRecord() {
+		return afpEndGroup;
+	}
+
+	/**
+	 * Returns a read-only buffer on the serialized group if the group is
+	 * frozen or <code>null</code> otherwise.
+	 * 
+	 * @return a read-only buffer on the serialized group or <code>null</code>.
+	 * @see #freeze()
+	 */
+	public ByteBuffer getFrozenBuffer() {
+		return frozen == null ? null : ByteBuffer.wrap(frozen)
+				.asReadOnlyBuffer();
+	}
+
+	// Returns a buffer backed by the serialized group if frozen, for writers
+	// to use its array. The buffer must not be modified.
+	ByteBuffer getFrozenArrayBuffer() {
+		return frozen == null ? null : ByteBuffer.wrap(frozen);
+	}
+
 	public int getFlags() {
 		return 0;
 	}
@@ -121,6 +226,44 @@ public class AfpRecordGroup implements AfpRecord {
 		return afpBeginGroup.getSFIdentifier();
 	}
 
+	/**
+	 * Returns the number of bytes the closed group takes when written,
+	 * including the begin and end records and CR LF sequences.
+	 * 
+	 * @return the number of bytes the group takes when written.
+	 * @throws AfpException
+	 *             if the group is not closed.
+	 */
+	public long getSerializedSize() throws AfpException {
+
+		// Return size if frozen
+		if (frozen != null) {
+			return frozen.length;
+		}
+
+		// Throw exception if not closed
+		if (!closed) {
+			throw new AfpException("Cannot size an open group: "
+					+ getSFIdentifierAbbrev());
+		}
+
+		// Sum records
+		long ret = getSerializedSize(afpBeginGroup)
+				+ getSerializedSize(afpEndGroup);
+		for (AfpRecord member : memberList) {
+			ret += getSerializedSize(member);
+		}
+		return ret;
+	}
+
+	// Returns the number of bytes the supplied record takes when written
+	private static long getSerializedSize(AfpRecord rec) throws AfpException {
+		if (rec instanceof AfpRecordGroup) {
+			return ((AfpRecordGroup) rec).getSerializedSize();
+		}
+		return 1 + rec.getLength() + (rec.isEndsInCrLf() ? 2 : 0);
+	}
+
 	public String getSFIdentifierAbbrev() {
 		return afpBeginGroup.getSFIdentifierAbbrev();
 	}
@@ -133,6 +276,16 @@ public class AfpRecordGroup implements AfpRecord {
 		return endsInCrLf;
 	}
 
+	/**
+	 * Returns true if the group is frozen.
+	 * 
+	 * @return true if the group is frozen.
+	 * @see #freeze()
+	 */
+	public boolean isFrozen() {
+		return frozen != null;
+	}
+
 	public void setData(byte[] data) throws AfpException {
 		throw new AfpException("Method not supported in class "
 				+ AfpRecordGroup.class.getName());
@@ -187,6 +340,12 @@ public class AfpRecordGroup implements AfpRecord {
 	public void write(OutputStream out, AfpReadWriteProperties props)
 			throws IOException, AfpException {
 
+		// Write frozen group at once
+		if (frozen != null) {
+			out.write(frozen);
+			return;
+		}
+
 		// Throw exception if not closed
 		if (!closed) {
 			throw new AfpException("Cannot write an open group: "
@@ -2,7 +2,6 @@ package org.qxsched.doc.afp;
 
 import java.util.HashSet;
 import java.util.Set;
-import java.util.Stack;
 
 import org.apache.log4j.Logger;
 
@@ -75,13 +74,48 @@ public class AfpRecordGrouper {
 		}
 	}
 
+	/**
+	 * Returns the set of all group begin and end SFIDs except those of the
+	 * supplied group begin SFIDs and their matching end SFIDs. The set can be
+	 * supplied as <code>noGroup</code> to group only the supplied groups, e.g.
+	 * pages.
+	 * 
+	 * @param groupBegin
+	 *            the group begin SFIDs to consider for grouping.
+	 * @return the set of SFIDs to NOT consider for grouping.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public static Set<Integer> noGroupExcept(Integer... groupBegin)
+			throws AfpException {
+
+		AfpStructuredFieldDefinitions afpDefs = AfpStructuredFieldDefinitions
+				.instance();
+
+		// Add all group codes
+		Set<Integer> ret = new HashSet<Integer>();
+		for (Integer code : afpDefs.getCodes()) {
+			if (afpDefs.isGroupBegin(code) || afpDefs.isGroupEnd(code)) {
+				ret.add(code);
+			}
+		}
+
+		// Remove supplied groups
+		for (Integer code : groupBegin) {
+			ret.remove(code);
+			ret.remove(afpDefs.getGroupEnd(code));
+		}
+		return ret;
+	}
+
 	public AfpRecord getAfpRecord() throws AfpException {
 
 		// Group record to return
 		AfpRecordGroup currRecordGroup = null;
 
 		// Stack of SFIdentifiers to wait for
-		Stack<Integer> waitSFIdEnd = new Stack<Integer>();
+		int[] waitSFIdEnd = new int[16];
+		int waitSize = 0;
 
 		while (true) {
 
@@ -98,16 +132,21 @@ public class AfpRecordGrouper {
 			}
 
 			if (LOG.isTraceEnabled()) {
-				LOG.trace("Stack size: " + waitSFIdEnd.size());
+				LOG.trace("Stack size: " + waitSize);
 			}
 
 			// Is this a group record begin or end?
-			Integer sFId = rec.getSFIdentifier();
+			int sFId = rec.getSFIdentifier();
 			String sFIdAbbrev = rec.getSFIdentifierAbbrev();
-			boolean isGroupRecordBegin = noGroup.contains(sFId) ? false
-					: afpStructuredFieldDefinitions.isGroupBegin(sFId);
-			boolean isGroupRecordEnd = noGroup.contains(sFId) ? false
-					: afpStructuredFieldDefinitions.isGroupEnd(sFId);
+			boolean isGroupRecordBegin = afpStructuredFieldDefinitions
+					.isGroupBegin(sFId);
+			boolean isGroupRecordEnd = afpStructuredFieldDefinitions
+					.isGroupEnd(sFId);
+			if ((isGroupRecordBegin || isGroupRecordEnd)
+					&& noGroup.contains(sFId)) {
+				isGroupRecordBegin = false;
+				isGroupRecordEnd = false;
+			}
 			if (LOG.isDebugEnabled()) {
 				if (isGroupRecordBegin) {
 					LOG.debug("Got group BEGIN: " + sFIdAbbrev);
@@ -152,22 +191,27 @@ public class AfpRecordGrouper {
 				currRecordGroup = newRecordGroup;
 
 				// Get structured field identifier for end of group
-				Integer sFIdEnd = afpStructuredFieldDefinitions.getGroupEnd(rec
-						.getSFIdentifier());
+				int sFIdEnd = afpStructuredFieldDefinitions
+						.getGroupEndCode(sFId);
 
 				// Push sFIdEnd
-				waitSFIdEnd.push(sFIdEnd);
+				if (waitSize == waitSFIdEnd.length) {
+					int[] grown = new int[waitSize * 2];
+					System.arraycopy(waitSFIdEnd, 0, grown, 0, waitSize);
+					waitSFIdEnd = grown;
+				}
+				waitSFIdEnd[waitSize++] = sFIdEnd;
 				continue;
 			}
 
 			// Handle group record end. Expect stack not to be empty
-			if (waitSFIdEnd.size() == 0) {
+			if (waitSize == 0) {
 				throw new AfpException("Group end before begin: '" + sFId + "'");
 			}
 
 			// Handle group record end. Expect correct SFIdentifier
-			Integer sFIdEndExp = waitSFIdEnd.pop();
-			if (!sFIdEndExp.equals(sFId)) {
+			int sFIdEndExp = waitSFIdEnd[--waitSize];
+			if (sFIdEndExp != sFId) {
 				throw new AfpException("Expected SFID '" + sFIdEndExp
 						+ "' but got '" + sFId + "'");
 			}
@@ -176,7 +220,7 @@ public class AfpRecordGrouper {
 			currRecordGroup.close(rec);
 
 			// If stack is empty, return
-			if (waitSFIdEnd.size() == 0) {
+			if (waitSize == 0) {
 				return currRecordGroup;
 			} else {
 				currRecordGroup = currRecordGroup.getParent();
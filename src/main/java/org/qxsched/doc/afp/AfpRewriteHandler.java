@@ -0,0 +1,60 @@
+package org.qxsched.doc.afp;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Interface {@link AfpRewriteHandler} selects and rewrites the records of an
+ * {@link AfpRewriter}. Records not selected are copied unchanged without
+ * building {@link AfpRecord} objects.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public interface AfpRewriteHandler {
+
+	/**
+	 * Returns true if the record the supplied cursor is on must be passed to
+	 * {@link #rewrite(AfpRecord, AfpWriter)}. The cursor must not be moved.
+	 * 
+	 * @param cursor
+	 *            the cursor on the record.
+	 * @return true if the record must be rewritten.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public boolean accept(AfpRecordCursor cursor) throws AfpException;
+
+	/**
+	 * Writes the records replacing the supplied record. The supplied record
+	 * may be written as is or changed, records may be inserted before or
+	 * after it, or nothing may be written to drop it.
+	 * 
+	 * @param rec
+	 *            the record to rewrite.
+	 * @param writer
+	 *            the writer to write the replacing records to.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void rewrite(AfpRecord rec, AfpWriter writer) throws AfpException;
+}
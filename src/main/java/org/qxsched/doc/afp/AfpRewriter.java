@@ -0,0 +1,154 @@
+package org.qxsched.doc.afp;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpRewriter} copies an AFP file to a channel, rewriting only
+ * the records selected by an {@link AfpRewriteHandler}. The runs of records
+ * between selected records are transferred from the input channel to the
+ * output channel through
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * and no {@link AfpRecord} objects are built for them. Selected records are
+ * read into {@link GenericAfpRecord} objects and their replacements are
+ * written through an {@link AfpWriter}.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpRewriter {
+
+	private static Logger LOG = Logger.getLogger(AfpRewriter.class);
+
+	private long copied;
+	private AfpRewriteHandler handler;
+	private FileChannel in;
+	private long rewritten;
+
+	/**
+	 * Constructor accepting the input channel and the handler. The input is
+	 * read from the channel's current position to its end.
+	 * 
+	 * @param in
+	 *            the input channel.
+	 * @param handler
+	 *            the handler selecting and rewriting records.
+	 */
+	public AfpRewriter(FileChannel in, AfpRewriteHandler handler) {
+		this.in = in;
+		this.handler = handler;
+	}
+
+	/**
+	 * Returns the number of bytes copied unchanged by the last run.
+	 * 
+	 * @return the number of bytes copied unchanged.
+	 */
+	public long getCopiedBytes() {
+		return copied;
+	}
+
+	/**
+	 * Returns the number of records passed to the handler by the last run.
+	 * 
+	 * @return the number of records passed to the handler.
+	 */
+	public long getRewrittenRecords() {
+		return rewritten;
+	}
+
+	/**
+	 * Copies the input to the supplied output channel, rewriting the records
+	 * selected by the handler. The output channel is not closed.
+	 * 
+	 * @param out
+	 *            the output channel.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void run(GatheringByteChannel out) throws AfpException {
+
+		// Initialize
+		copied = 0;
+		rewritten = 0;
+		AfpRecordCursor cursor = new AfpRecordCursor(in);
+		AfpWriter writer = new AfpWriter(out, AfpWriter.BUFFER_SIZE_DEF);
+
+		// Copy runs between rewritten records
+		long runStart = -1;
+		long runEnd = -1;
+		while (cursor.next()) {
+
+			// Extend run if the record is not rewritten
+			if (runStart < 0) {
+				runStart = cursor.getOffset();
+			}
+			if (!handler.accept(cursor)) {
+				runEnd = cursor.getEndOffset();
+				continue;
+			}
+
+			// Copy run and rewrite record
+			transfer(runStart, cursor.getOffset(), out);
+			handler.rewrite(new GenericAfpRecord(cursor, null), writer);
+			writer.flush();
+			runStart = cursor.getEndOffset();
+			runEnd = runStart;
+			rewritten++;
+		}
+
+		// Copy last run
+		if (runStart > -1) {
+			transfer(runStart, runEnd, out);
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Copied " + copied + " bytes, rewrote " + rewritten
+					+ " records");
+		}
+	}
+
+	// Transfers a range of the input to the output
+	private void transfer(long from, long to, GatheringByteChannel out)
+			throws AfpException {
+		long pos = from;
+		try {
+			while (pos < to) {
+				long n = in.transferTo(pos, to - pos, out);
+				if (n <= 0) {
+					throw new AfpException("Failed to transfer bytes at offset "
+							+ pos);
+				}
+				pos += n;
+			}
+		} catch (IOException e) {
+			throw new AfpException("Failed to transfer bytes at offset " + pos,
+					e);
+		}
+		copied += to - from;
+	}
+}
@@ -0,0 +1,326 @@
+package org.qxsched.doc.afp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.impl.MappedAfpFactory;
+import org.qxsched.doc.afp.impl.ParallelAfpFactory;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpStreams} iterates over the records or the pages of an AFP
+ * file and splits files into ranges that can be iterated independently, e.g.
+ * on the threads of an executor service.
+ * 
+ * The iterators map the file through a {@link MappedAfpFactory} and close it
+ * when the last element is returned. Iterators that are abandoned early keep
+ * the file open until they are garbage collected. Exceptions that occur while
+ * iterating are thrown as {@link IllegalStateException} with the
+ * {@link AfpException} as cause.
+ * 
+ * Typical use, counting pages in parallel:
+ * 
+ * <pre>
+ * long[] bounds = AfpStreams.splitPages(file, threads);
+ * for (int i = 0; i &lt; bounds.length - 1; i++) {
+ * 	final long start = bounds[i], end = bounds[i + 1];
+ * 	futures.add(executor.submit(new Callable&lt;Integer&gt;() {
+ * 		public Integer call() throws Exception {
+ * 			int cnt = 0;
+ * 			for (AfpRecordGroup page : AfpStreams.pages(file, start, end, props)) {
+ * 				cnt++;
+ * 			}
+ * 			return cnt;
+ * 		}
+ * 	}));
+ * }
+ * </pre>
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpStreams {
+
+	private static final int BPG = 0xD3A8AF;
+
+	private static Logger LOG = Logger.getLogger(AfpStreams.class);
+
+	// Iterates over records or pages
+	private static class AfpIterator<T extends AfpRecord> implements
+			Iterator<T> {
+
+		private MappedAfpFactory factory;
+		private AfpRecordGrouper grouper;
+		private T next;
+		private Class<T> type;
+
+		public AfpIterator(Class<T> type, File file, long start, long end,
+				AfpReadWriteProperties props, boolean pages)
+				throws AfpException {
+			this.type = type;
+			factory = new MappedAfpFactory();
+			factory.setAfpReadWriteProperties(props);
+			factory.setInputRange(file, start, end);
+			if (pages) {
+				grouper = new AfpRecordGrouper(factory, AfpRecordGrouper
+						.noGroupExcept(BPG));
+			}
+			advance();
+		}
+
+		// Reads the next element and closes the factory at the end
+		private void advance() throws AfpException {
+			next = null;
+			try {
+				while (next == null) {
+					AfpRecord rec = grouper == null ? factory
+							.createAfpRecord() : grouper.getAfpRecord();
+					if (rec == null) {
+						factory.close();
+						return;
+					}
+					if (grouper == null
+							|| (rec instanceof AfpRecordGroup && rec
+									.getSFIdentifier() == BPG)) {
+						next = type.cast(rec);
+					}
+				}
+			} catch (AfpException e) {
+				factory.close();
+				throw e;
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T ret = next;
+			try {
+				advance();
+			} catch (AfpException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+			return ret;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Empty constructor.
+	 */
+	private AfpStreams() {
+	}
+
+	// Makes an iterable
+	private static <T extends AfpRecord> Iterable<T> iterable(
+			final Class<T> type, final File file, final long start,
+			final long end, final AfpReadWriteProperties props,
+			final boolean pages) {
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				try {
+					return new AfpIterator<T>(type, file, start, end, props,
+							pages);
+				} catch (AfpException e) {
+					throw new IllegalStateException(e.getMessage(), e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the pages (BPG..EPG groups) of the supplied file. Records
+	 * outside pages are skipped.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @return the pages of the file.
+	 */
+	public static Iterable<AfpRecordGroup> pages(File file) {
+		return pages(file, 0, file.length(), AfpReadWriteProperties
+				.instance());
+	}
+
+	/**
+	 * Returns the pages (BPG..EPG groups) in the supplied range of the file.
+	 * Records outside pages are skipped. The range must not split pages, e.g.
+	 * it is obtained through {@link #splitPages(File, int)}.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @param start
+	 *            the offset of the first record.
+	 * @param end
+	 *            the offset after the last record.
+	 * @param props
+	 *            the properties for reading records.
+	 * @return the pages in the range.
+	 */
+	public static Iterable<AfpRecordGroup> pages(File file, long start,
+			long end, AfpReadWriteProperties props) {
+		return iterable(AfpRecordGroup.class, file, start, end, props, true);
+	}
+
+	/**
+	 * Returns the records of the supplied file.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @return the records of the file.
+	 */
+	public static Iterable<AfpRecord> records(File file) {
+		return records(file, 0, file.length(), AfpReadWriteProperties
+				.instance());
+	}
+
+	/**
+	 * Returns the records in the supplied range of the file. The range must
+	 * start at a record and end after a record, e.g. it is obtained through
+	 * {@link #splitRecords(File, int)}.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @param start
+	 *            the offset of the first record.
+	 * @param end
+	 *            the offset after the last record.
+	 * @param props
+	 *            the properties for reading records.
+	 * @return the records in the range.
+	 */
+	public static Iterable<AfpRecord> records(File file, long start, long end,
+			AfpReadWriteProperties props) {
+		return iterable(AfpRecord.class, file, start, end, props, false);
+	}
+
+	/**
+	 * Splits the supplied file at page boundaries into at most the supplied
+	 * number of ranges holding about the same number of pages. The page
+	 * offsets are taken from the file's {@link AfpIndex}, see
+	 * {@link AfpIndex#open(File)}. Range <i>i</i> starts at offset
+	 * <i>bounds[i]</i> and ends at offset <i>bounds[i+1]</i>.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @param parts
+	 *            the maximum number of ranges.
+	 * @return the range bounds.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public static long[] splitPages(File file, int parts) throws AfpException {
+
+		// Get pages
+		AfpIndex index = AfpIndex.open(file);
+		int pageCount = index.getPageCount();
+		if (parts > pageCount) {
+			parts = Math.max(pageCount, 1);
+		}
+
+		// Start ranges at pages
+		long[] ret = new long[parts + 1];
+		for (int i = 1; i < parts; i++) {
+			ret[i] = index.getOffset(index.getPageBegin((int) ((long) i
+					* pageCount / parts)));
+		}
+		ret[parts] = index.getFileLength();
+		return ret;
+	}
+
+	/**
+	 * Splits the supplied file at record boundaries into at most the supplied
+	 * number of ranges of about equal size. The boundaries are found as done
+	 * by {@link ParallelAfpFactory#resync(FileChannel, long, long, Set)}.
+	 * Range <i>i</i> starts at offset <i>bounds[i]</i> and ends at offset
+	 * <i>bounds[i+1]</i>.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @param parts
+	 *            the maximum number of ranges.
+	 * @return the range bounds.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public static long[] splitRecords(File file, int parts)
+			throws AfpException {
+
+		// Limit parts to the maximum record size
+		long size = file.length();
+		long parts2 = Math.max(1, Math.min(parts, size
+				/ AfpRecordCursor.RECORD_MAX));
+
+		// Open
+		FileInputStream in;
+		try {
+			in = new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			throw new AfpException("Failed to open file " + file.getPath(), e);
+		}
+
+		// Resynchronize bounds, dropping empty ranges
+		try {
+			Set<Integer> codes = AfpStructuredFieldDefinitions.instance()
+					.getCodes();
+			long[] bounds = new long[(int) parts2 + 1];
+			int n = 1;
+			for (int i = 1; i < parts2; i++) {
+				long pos = ParallelAfpFactory.resync(in.getChannel(), i * size
+						/ parts2, size, codes);
+				if (pos > bounds[n - 1] && pos < size) {
+					bounds[n++] = pos;
+				}
+			}
+			bounds[n++] = size;
+			long[] ret = new long[n];
+			System.arraycopy(bounds, 0, ret, 0, n);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Split " + file.getPath() + " in " + (n - 1)
+						+ " ranges");
+			}
+			return ret;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close file " + file.getPath(), e);
+			}
+		}
+	}
+}
@@ -47,6 +47,13 @@ import org.apache.log4j.Logger;
  */
 public class AfpStructuredFieldDefinitions {
 
+	// Definition flags
+	private static final byte BEGIN = 1;
+	private static final byte END = 2;
+
+	// Class byte of MO:DCA structured fields
+	private static final int SF_CLASS = 0xd3;
+
 	private static AfpStructuredFieldDefinitions instance = null;
 	private static Logger LOG = Logger
 			.getLogger(AfpStructuredFieldDefinitions.class);
@@ -94,6 +101,14 @@ public class AfpStructuredFieldDefinitions {
 	private Map<Integer, String> code2desc = new HashMap<Integer, String>();
 	private Map<Integer, Integer> end2begin = new HashMap<Integer, Integer>();
 
+	// Dense tables. Definitions of 0xD3 class codes are found through the
+	// index by the type and category bytes. Index 0 means no definition.
+	private String[] defAbbrev;
+	private String[] defDesc;
+	private int[] defEndCode;
+	private byte[] defFlags;
+	private char[][] defIndex = new char[0x100][];
+
 	private AfpStructuredFieldDefinitions() throws AfpException {
 
 		// Get resource
@@ -208,6 +223,60 @@ public class AfpStructuredFieldDefinitions {
 			}
 			end2begin.put(codeEnd, codeBegin);
 		}
+
+		// Make dense tables
+		initTables();
+	}
+
+	// Returns the index of the definition of the supplied code
+	private int defIndex(int code) {
+
+		// Codes outside the structured field class are not in the tables
+		if (code >>> 16 != SF_CLASS) {
+			return -1;
+		}
+
+		// Look up
+		char[] page = defIndex[(code >> 8) & 0xff];
+		return page == null ? 0 : page[code & 0xff];
+	}
+
+	// Fills the dense tables from the maps
+	private void initTables() {
+
+		// Make definition arrays. Index 0 is no definition.
+		int size = code2abbrev.size() + 1;
+		defAbbrev = new String[size];
+		defDesc = new String[size];
+		defEndCode = new int[size];
+		defFlags = new byte[size];
+		defEndCode[0] = -1;
+
+		// Fill
+		int idx = 1;
+		for (Integer code : code2abbrev.keySet()) {
+
+			// Skip codes outside the structured field class
+			if (code >>> 16 != SF_CLASS) {
+				continue;
+			}
+
+			// Make index page
+			int type = (code >> 8) & 0xff;
+			if (defIndex[type] == null) {
+				defIndex[type] = new char[0x100];
+			}
+			defIndex[type][code & 0xff] = (char) idx;
+
+			// Set definition
+			defAbbrev[idx] = code2abbrev.get(code);
+			defDesc[idx] = code2desc.get(code);
+			Integer codeEnd = begin2end.get(code);
+			defEndCode[idx] = codeEnd == null ? -1 : codeEnd;
+			defFlags[idx] = (byte) ((codeEnd == null ? 0 : BEGIN) | (end2begin
+					.containsKey(code) ? END : 0));
+			idx++;
+		}
 	}
 
 	/**
@@ -234,6 +303,21 @@ public class AfpStructuredFieldDefinitions {
 		return code2abbrev.get(code);
 	}
 
+	/**
+	 * Returns the abbreviation string for the supplied structured definition
+	 * code without boxing the code. If code is unknown, <code>null</code> is
+	 * returned.
+	 * 
+	 * @param code
+	 *            the structured definition code.
+	 * @return the abbreviation string for the supplied structured definition
+	 *         code.
+	 */
+	public String getAbbreviation(int code) {
+		int idx = defIndex(code);
+		return idx < 0 ? code2abbrev.get(code) : defAbbrev[idx];
+	}
+
 	/**
 	 * Returns the structured definition code for the supplied abbreviation
 	 * string. If the abbreviation is unknown, <code>null</code> is returned.
@@ -269,6 +353,21 @@ public class AfpStructuredFieldDefinitions {
 		return code2desc.get(code);
 	}
 
+	/**
+	 * Returns the description string for the supplied structured definition
+	 * code without boxing the code. If code is unknown, <code>null</code> is
+	 * returned.
+	 * 
+	 * @param code
+	 *            the structured definition code.
+	 * @return the description string for the supplied structured definition
+	 *         code.
+	 */
+	public String getDescription(int code) {
+		int idx = defIndex(code);
+		return idx < 0 ? code2desc.get(code) : defDesc[idx];
+	}
+
 	/**
 	 * Returns the matching begin-code for the supplied end-group code. If no
 	 * begin-code is found -e.g. when the supplied code is not an end- group
@@ -295,6 +394,25 @@ public class AfpStructuredFieldDefinitions {
 		return begin2end.get(code);
 	}
 
+	/**
+	 * Returns the matching end-code for the supplied begin-group code without
+	 * boxing. If no end-code is found -e.g. when the supplied code is not a
+	 * begin-group code- then <code>-1</code> is returned.
+	 * 
+	 * @param code
+	 *            the begin-group code.
+	 * @return the matching end-code for the supplied begin-group code or
+	 *         <code>-1</code>.
+	 */
+	public int getGroupEndCode(int code) {
+		int idx = defIndex(code);
+		if (idx < 0) {
+			Integer codeEnd = begin2end.get(code);
+			return codeEnd == null ? -1 : codeEnd;
+		}
+		return defEndCode[idx];
+	}
+
 	/**
 	 * Returns <code>true</code> if the code belongs to a 'begin-group' AFP
 	 * record and <code>false</code> otherwise.
@@ -308,6 +426,21 @@ public class AfpStructuredFieldDefinitions {
 		return begin2end.containsKey(code);
 	}
 
+	/**
+	 * Returns <code>true</code> if the code belongs to a 'begin-group' AFP
+	 * record and <code>false</code> otherwise. The code is not boxed.
+	 * 
+	 * @param code
+	 *            the code to test.
+	 * @return <code>true</code> if the code belongs to a 'begin-group' AFP
+	 *         record and <code>false</code> otherwise.
+	 */
+	public boolean isGroupBegin(int code) {
+		int idx = defIndex(code);
+		return idx < 0 ? begin2end.containsKey(code)
+				: (defFlags[idx] & BEGIN) != 0;
+	}
+
 	/**
 	 * Returns <code>true</code> if the code belongs to a 'end-group' AFP record
 	 * and <code>false</code> otherwise.
@@ -321,4 +454,19 @@ public class AfpStructuredFieldDefinitions {
 		return end2begin.containsKey(code);
 	}
 
+	/**
+	 * Returns <code>true</code> if the code belongs to a 'end-group' AFP record
+	 * and <code>false</code> otherwise. The code is not boxed.
+	 * 
+	 * @param code
+	 *            the code to test.
+	 * @return <code>true</code> if the code belongs to a 'end-group' AFP record
+	 *         and <code>false</code> otherwise.
+	 */
+	public boolean isGroupEnd(int code) {
+		int idx = defIndex(code);
+		return idx < 0 ? end2begin.containsKey(code)
+				: (defFlags[idx] & END) != 0;
+	}
+
 }
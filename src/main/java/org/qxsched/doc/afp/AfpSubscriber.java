@@ -0,0 +1,69 @@
+package org.qxsched.doc.afp;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Interface {@link AfpSubscriber} receives records from an
+ * {@link AfpPublisher}. Records are only delivered as requested through the
+ * {@link AfpSubscription} passed to {@link #onSubscribe(AfpSubscription)}.
+ * The methods are called one at a time, though not necessarily on the same
+ * thread.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ * @param <T>
+ *            the type of records received.
+ */
+public interface AfpSubscriber<T extends AfpRecord> {
+
+	/**
+	 * Is called once all records have been delivered. No other method is
+	 * called afterwards.
+	 */
+	public void onComplete();
+
+	/**
+	 * Is called if reading fails. No other method is called afterwards.
+	 * 
+	 * @param throwable
+	 *            the cause of the failure.
+	 */
+	public void onError(Throwable throwable);
+
+	/**
+	 * Is called for every record delivered.
+	 * 
+	 * @param record
+	 *            the record.
+	 */
+	public void onNext(T record);
+
+	/**
+	 * Is called before any other method with the subscription to request
+	 * records through.
+	 * 
+	 * @param subscription
+	 *            the subscription.
+	 */
+	public void onSubscribe(AfpSubscription subscription);
+}
@@ -0,0 +1,47 @@
+package org.qxsched.doc.afp;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Interface {@link AfpSubscription} links an {@link AfpSubscriber} to an
+ * {@link AfpPublisher}.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public interface AfpSubscription {
+
+	/**
+	 * Stops delivering records. Records being delivered may still arrive.
+	 */
+	public void cancel();
+
+	/**
+	 * Requests the supplied number of records in addition to those requested
+	 * before. Only requested records are read from the input.
+	 * 
+	 * @param n
+	 *            the number of records, must be positive.
+	 */
+	public void request(long n);
+}
@@ -0,0 +1,293 @@
+package org.qxsched.doc.afp;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpWriter} writes AFP records to an output stream or channel.
+ * The records are encoded into a reusable batch buffer which is written when
+ * full. A record that does not fit in the remaining batch buffer is written
+ * together with the batch buffer without copying its data: on channels with
+ * a single gathering write, on streams with one write per part.
+ * 
+ * If the output stream is a {@link FileOutputStream} its channel is written
+ * to. The writer must be flushed through {@link #flush()} or {@link #close()}
+ * to write the records remaining in the batch buffer.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpWriter {
+
+	/**
+	 * Contains the default size of the batch buffer.
+	 */
+	public static final int BUFFER_SIZE_DEF = AfpRecordCursor.BUFFER_SIZE_DEF;
+
+	private static final byte CCC = 0x5a;
+	private static final byte CR = 0x0d;
+	private static final byte LF = 0x0a;
+
+	private ByteBuffer batch;
+	private GatheringByteChannel channel;
+	private ByteBuffer crLf = ByteBuffer.wrap(new byte[] { CR, LF });
+	private ByteBuffer[] gather = new ByteBuffer[4];
+	private ByteBuffer header = ByteBuffer.allocate(9);
+	private ByteBuffer none = ByteBuffer.allocate(0);
+	private OutputStream out;
+
+	/**
+	 * Constructor accepting the channel to write to and the size of the batch
+	 * buffer.
+	 * 
+	 * @param channel
+	 *            the channel to write to.
+	 * @param bufferSize
+	 *            the size of the batch buffer.
+	 */
+	public AfpWriter(GatheringByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		batch = ByteBuffer.allocate(bufferSize);
+	}
+
+	/**
+	 * Constructor accepting the output stream to write to. The default batch
+	 * buffer size is used.
+	 * 
+	 * @param out
+	 *            the output stream to write to.
+	 */
+	public AfpWriter(OutputStream out) {
+		this(out, BUFFER_SIZE_DEF);
+	}
+
+	/**
+	 * Constructor accepting the output stream to write to and the size of the
+	 * batch buffer.
+	 * 
+	 * @param out
+	 *            the output stream to write to.
+	 * @param bufferSize
+	 *            the size of the batch buffer.
+	 */
+	public AfpWriter(OutputStream out, int bufferSize) {
+		this.out = out;
+		if (out instanceof FileOutputStream) {
+			channel = ((FileOutputStream) out).getChannel();
+		}
+		batch = ByteBuffer.allocate(bufferSize);
+	}
+
+	/**
+	 * Flushes the writer and closes the output stream or channel.
+	 * 
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void close() throws AfpException {
+		flush();
+		try {
+			if (out != null) {
+				out.close();
+			} else {
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new AfpException("Failed to close output", e);
+		}
+	}
+
+	// Encodes the record into the supplied buffer
+	static void encode(ByteBuffer buff, AfpRecord rec, ByteBuffer data) {
+		encodeHeader(buff, rec);
+		buff.put(data);
+		if (rec.isEndsInCrLf()) {
+			buff.put(CR);
+			buff.put(LF);
+		}
+	}
+
+	// Encodes the record header into the supplied buffer
+	private static void encodeHeader(ByteBuffer buff, AfpRecord rec) {
+		int length = rec.getLength();
+		int identifier = rec.getSFIdentifier();
+		int reserved = rec.getReserved();
+		buff.put(CCC);
+		buff.put((byte) (length >> 8));
+		buff.put((byte) length);
+		buff.put((byte) (identifier >> 16));
+		buff.put((byte) (identifier >> 8));
+		buff.put((byte) identifier);
+		buff.put((byte) rec.getFlags());
+		buff.put((byte) (reserved >> 8));
+		buff.put((byte) reserved);
+	}
+
+	/**
+	 * Writes the records in the batch buffer and flushes the output stream.
+	 * 
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void flush() throws AfpException {
+		batch.flip();
+		gather[0] = batch;
+		gather[1] = none;
+		gather[2] = none;
+		gather[3] = none;
+		writeGather();
+		try {
+			if (out != null) {
+				out.flush();
+			}
+		} catch (IOException e) {
+			throw new AfpException("Failed to flush output", e);
+		}
+	}
+
+	/**
+	 * Writes the supplied record. Groups are written with their begin record,
+	 * their members and their end record.
+	 * 
+	 * @param rec
+	 *            the record to write.
+	 * @throws AfpException
+	 *             if the record data was skipped, the group is not closed or
+	 *             an I/O exception occurs.
+	 */
+	public void write(AfpRecord rec) throws AfpException {
+
+		// Write frozen groups at once and other groups recursively
+		if (rec instanceof AfpRecordGroup) {
+			AfpRecordGroup group = (AfpRecordGroup) rec;
+			if (group.isFrozen()) {
+				write(group.getFrozenArrayBuffer());
+				return;
+			}
+			if (group.getEndRecord() == null) {
+				throw new AfpException("Cannot write an open group: "
+						+ group.getSFIdentifierAbbrev());
+			}
+			write(group.getBeginRecord());
+			for (AfpRecord member : group.getMemberList()) {
+				write(member);
+			}
+			write(group.getEndRecord());
+			return;
+		}
+
+		// Get data
+		ByteBuffer data = rec.getDataBuffer();
+		if (data == null) {
+			throw new AfpException("Cannot write record "
+					+ rec.getSFIdentifierString() + " with skipped data");
+		}
+		boolean endsInCrLf = rec.isEndsInCrLf();
+
+		// Copy to batch if it fits
+		if (9 + data.remaining() + (endsInCrLf ? 2 : 0) <= batch.remaining()) {
+			encode(batch, rec, data);
+			return;
+		}
+
+		// Write heap data to streams from its array rather than from the
+		// read-only buffer, which would be copied
+		if (channel == null && !data.isDirect()) {
+			data = ByteBuffer.wrap(rec.getData());
+		}
+
+		// Write batch, header, data and CR LF together
+		header.clear();
+		encodeHeader(header, rec);
+		header.flip();
+		batch.flip();
+		crLf.rewind();
+		gather[0] = batch;
+		gather[1] = header;
+		gather[2] = data;
+		gather[3] = endsInCrLf ? crLf : none;
+		writeGather();
+	}
+
+	// Writes encoded records
+	private void write(ByteBuffer encoded) throws AfpException {
+
+		// Copy to batch if it fits
+		if (encoded.remaining() <= batch.remaining()) {
+			batch.put(encoded);
+			return;
+		}
+
+		// Write batch and encoded records together
+		batch.flip();
+		gather[0] = batch;
+		gather[1] = encoded;
+		gather[2] = none;
+		gather[3] = none;
+		writeGather();
+	}
+
+	// Writes the gather buffers and clears the batch buffer
+	private void writeGather() throws AfpException {
+		try {
+
+			// Write to channel until all written
+			if (channel != null) {
+				while (gather[0].hasRemaining() || gather[1].hasRemaining()
+						|| gather[2].hasRemaining()
+						|| gather[3].hasRemaining()) {
+					channel.write(gather);
+				}
+			}
+
+			// Write to stream
+			else {
+				for (ByteBuffer buff : gather) {
+					if (!buff.hasRemaining()) {
+						continue;
+					}
+					if (buff.hasArray()) {
+						out.write(buff.array(), buff.arrayOffset()
+								+ buff.position(), buff.remaining());
+						buff.position(buff.limit());
+					} else {
+						byte[] tmp = new byte[buff.remaining()];
+						buff.get(tmp);
+						out.write(tmp);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new AfpException("Failed to write records", e);
+		} finally {
+			batch.clear();
+			gather[1] = none;
+			gather[2] = none;
+		}
+	}
+}
@@ -6,8 +6,7 @@ import org.apache.commons.lang.StringUtils;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PushbackInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
 
 import org.apache.log4j.Logger;
 import org.qxsched.doc.afp.util.AfpDump;
@@ -46,6 +45,7 @@ public class GenericAfpRecord implements AfpRecord {
 	protected static int ccc = 0x5a;
 	protected static int cr = 0x0d;
 	protected static int lf = 0x0a;
+	private static final byte[] CR_LF = { (byte) cr, (byte) lf };
 
 	private static Logger LOG = Logger.getLogger(GenericAfpRecord.class);
 	private static int maxDataLength = 0xffff - 8;
@@ -54,14 +54,18 @@ public class GenericAfpRecord implements AfpRecord {
 	private static int maxReserved = 0xffff;
 
 	private byte[] data;
+	private boolean dataSkipped;
 	private boolean endsInCrLf;
+	private AfpFactory factory;
 	private int flags;
 	private int identifier;
 	private String identifierAbbrev;
 	private int length;
 	private int reserved;
+	private AfpRecord specific;
 
 	protected GenericAfpRecord() throws AfpException {
+		init();
 	}
 
 	public GenericAfpRecord(PushbackInputStream in) throws AfpException {
@@ -69,6 +73,129 @@ public class GenericAfpRecord implements AfpRecord {
 		// Initialize
 		init();
 
+		// Read
+		read(in, null);
+	}
+
+	/**
+	 * Constructor reading the record from the supplied input stream. The data
+	 * is only read if the supplied properties select the record's identifier
+	 * through {@link AfpReadWriteProperties#isReadData(int)}. Otherwise the
+	 * data is skipped and {@link #isDataSkipped()} returns <code>true</code>.
+	 * 
+	 * @param in
+	 *            the input stream to read from.
+	 * @param props
+	 *            the properties for reading the record.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 * @throws IOException
+	 *             if an IO exception occurs.
+	 */
+	public GenericAfpRecord(PushbackInputStream in, AfpReadWriteProperties props)
+			throws AfpException, IOException {
+
+		// Initialize
+		init();
+
+		// Read
+		read(in, props);
+	}
+
+	/**
+	 * Constructor reading the record the supplied cursor is on. The data is
+	 * only read if the supplied properties select the record's identifier
+	 * through {@link AfpReadWriteProperties#isReadData(int)}. Otherwise the
+	 * data is skipped and {@link #isDataSkipped()} returns <code>true</code>.
+	 * 
+	 * @param cursor
+	 *            the cursor positioned on the record.
+	 * @param props
+	 *            the properties for reading the record or <code>null</code>
+	 *            to read all data.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public GenericAfpRecord(AfpRecordCursor cursor,
+			AfpReadWriteProperties props) throws AfpException {
+
+		// Initialize
+		init();
+
+		// Set introducer fields
+		length = cursor.getLength();
+		setSFIdentifier(cursor.getSFIdentifier());
+		flags = cursor.getFlags();
+		reserved = cursor.getReserved();
+
+		// Skip data if not to be read
+		if (props != null && !props.isReadData(identifier)) {
+			cursor.skipData();
+			dataSkipped = true;
+		} else {
+			data = new byte[length - 8];
+			cursor.getData(data, 0);
+		}
+
+		// Set trailing CR LF
+		endsInCrLf = cursor.isEndsInCrLf();
+	}
+
+	/**
+	 * Constructor for a header-only record. The data is not available and
+	 * {@link #isDataSkipped()} returns <code>true</code> unless a subclass
+	 * provides the data through {@link #getData()} and overrides
+	 * {@link #isDataSkipped()}.
+	 * 
+	 * @param length
+	 *            the length from the structured field introducer.
+	 * @param identifier
+	 *            the structured field identifier.
+	 * @param flags
+	 *            the flags.
+	 * @param reserved
+	 *            the reserved field.
+	 * @param endsInCrLf
+	 *            the flag to denote that the record is ended with CR LF.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public GenericAfpRecord(int length, int identifier, int flags,
+			int reserved, boolean endsInCrLf) throws AfpException {
+
+		// Initialize
+		init();
+
+		// Check length
+		if (length < 8 || length > maxDataLength + 8) {
+			throw new AfpException("Illegal record length "
+					+ AfpStructuredFieldDefinitions.hexString(length, 4));
+		}
+		this.length = length;
+
+		setSFIdentifier(identifier);
+		setFlags(flags);
+		setReserved(reserved);
+		setEndsInCrLf(endsInCrLf);
+		dataSkipped = true;
+	}
+
+	public GenericAfpRecord(int identifier, int flags, int reserved, byte[] data)
+			throws AfpException {
+
+		// Initialize
+		init();
+
+		setSFIdentifier(identifier);
+		setFlags(flags);
+		setReserved(reserved);
+		setData(data);
+	}
+
+	// Reads the record from the input stream
+	private void read(PushbackInputStream in, AfpReadWriteProperties props)
+			throws AfpException {
+
 		// Expect the CCC
 		int cccRead;
 		try {
@@ -142,22 +269,12 @@ public class GenericAfpRecord implements AfpRecord {
 					+ AfpStructuredFieldDefinitions.hexString(reserved, 4));
 		}
 
-		// Expect data
-		data = new byte[length - 8];
-		try {
-			read = in.read(data);
-		} catch (IOException e) {
-			throw new AfpException(
-					"Failed to read record data from input stream", e);
-		}
-		if (read != data.length) {
-			throw new AfpException("Expected " + data.length
-					+ " bytes as data but got " + read
-					+ " bytes from input stream.");
-		}
-		if (LOG.isDebugEnabled()) {
-			LOG.debug("Data length: "
-					+ AfpStructuredFieldDefinitions.hexString(data.length, 4));
+		// Skip data if not to be read
+		if (props != null && !props.isReadData(identifier)) {
+			skip(in, length - 8);
+			dataSkipped = true;
+		} else {
+			readData(in);
 		}
 
 		// Allow trailing CR LF
@@ -195,26 +312,94 @@ public class GenericAfpRecord implements AfpRecord {
 		endsInCrLf = true;
 	}
 
-	public GenericAfpRecord(PushbackInputStream in, AfpReadWriteProperties props)
-			throws AfpException, IOException {
+	public <T extends AfpRecord> T as(Class<T> cls) throws AfpException {
+
+		// Return this if instance of class
+		if (cls.isInstance(this)) {
+			return cls.cast(this);
+		}
+
+		// Create specific record on first call
+		AfpRecord spec;
+		synchronized (this) {
+			if (specific == null) {
+				AfpFactory fact = factory == null ? AfpFactory
+						.createAfpFactory() : factory;
+				specific = fact.createSpecificAfpRecord(this);
+			}
+			spec = specific;
+		}
+
+		// Return
+		return cls.isInstance(spec) ? cls.cast(spec) : null;
 	}
 
-	public GenericAfpRecord(int identifier, int flags, int reserved, byte[] data)
-			throws AfpException {
+	// Reads the record data from the input stream
+	private void readData(PushbackInputStream in) throws AfpException {
 
-		// Initialize
-		init();
+		// Expect data
+		data = new byte[length - 8];
+		int read;
+		try {
+			read = in.read(data);
+		} catch (IOException e) {
+			throw new AfpException(
+					"Failed to read record data from input stream", e);
+		}
+		if (read != data.length) {
+			throw new AfpException("Expected " + data.length
+					+ " bytes as data but got " + read
+					+ " bytes from input stream.");
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Data length: "
+					+ AfpStructuredFieldDefinitions.hexString(data.length, 4));
+		}
+	}
 
-		setSFIdentifier(identifier);
-		setFlags(flags);
-		setReserved(reserved);
-		setData(data);
+	// Skips the record data in the input stream
+	private void skip(PushbackInputStream in, int len) throws AfpException {
+		int todo = len;
+		try {
+			while (todo > 0) {
+
+				// Skip
+				long skipped = in.skip(todo);
+				if (skipped > 0) {
+					todo -= skipped;
+					continue;
+				}
+
+				// Check EOF if nothing skipped
+				if (in.read() == -1) {
+					break;
+				}
+				todo--;
+			}
+		} catch (IOException e) {
+			throw new AfpException("Failed to skip record data in input stream",
+					e);
+		}
+		if (todo > 0) {
+			throw new AfpException("Expected " + len
+					+ " bytes as data but got " + (len - todo)
+					+ " bytes from input stream.");
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Skipped data length: "
+					+ AfpStructuredFieldDefinitions.hexString(len, 4));
+		}
 	}
 
 	public byte[] getData() {
 		return data;
 	}
 
+	public ByteBuffer getDataBuffer() {
+		byte[] data = getData();
+		return data == null ? null : ByteBuffer.wrap(data).asReadOnlyBuffer();
+	}
+
 	public int getFlags() {
 		return flags;
 	}
@@ -239,6 +424,17 @@ public class GenericAfpRecord implements AfpRecord {
 		return AfpStructuredFieldDefinitions.hexString(identifier, 6);
 	}
 	
+	/**
+	 * Returns <code>true</code> if the record data was skipped while reading.
+	 * The header fields of such records are available but the data is not and
+	 * the record cannot be written to an output stream.
+	 * 
+	 * @return <code>true</code> if the record data was skipped while reading.
+	 */
+	public boolean isDataSkipped() {
+		return dataSkipped;
+	}
+
 	public boolean isEndsInCrLf() {
 		return endsInCrLf;
 	}
@@ -255,6 +451,18 @@ public class GenericAfpRecord implements AfpRecord {
 
 	}
 
+	/**
+	 * Sets the factory used by {@link #as(Class)} to create the specific
+	 * record. If not set, a factory is created using
+	 * {@link AfpFactory#createAfpFactory()}.
+	 * 
+	 * @param factory
+	 *            the factory to create the specific record.
+	 */
+	public void setAfpFactory(AfpFactory factory) {
+		this.factory = factory;
+	}
+
 	protected void setData(byte[] data) throws AfpException {
 
 		// Check length
@@ -263,6 +471,7 @@ public class GenericAfpRecord implements AfpRecord {
 					+ maxDataLength);
 		}
 		this.data = data;
+		dataSkipped = false;
 		length = this.data.length + 8;
 	}
 
@@ -371,47 +580,40 @@ public class GenericAfpRecord implements AfpRecord {
 	}
 
 	public void write(OutputStream out, AfpReadWriteProperties props)
-			throws IOException {
-
-		// Write CCC
-		out.write(ccc);
-
-		// Write length
-		byte b = (byte) (length >> 8);
-		out.write(b);
-		b = (byte) (length & 0xff);
-		out.write(b);
-
-		// Write identifier
-		b = (byte) (identifier >> 16 & 0xff);
-		out.write(b);
-		b = (byte) (identifier >> 8 & 0xff);
-		out.write(b);
-		b = (byte) (identifier & 0xff);
-		out.write(b);
+			throws IOException, AfpException {
 
-		// Write flags
-		out.write(flags);
+		// Check data
+		if (isDataSkipped()) {
+			throw new AfpException("Cannot write record "
+					+ getSFIdentifierString() + " with skipped data");
+		}
 
-		// Write reserved
-		b = (byte) (reserved >> 8 & 0xff);
-		out.write(b);
-		b = (byte) (reserved & 0xff);
-		out.write(b);
+		// Write CCC, length, identifier, flags and reserved at once
+		byte[] header = new byte[9];
+		header[0] = (byte) ccc;
+		header[1] = (byte) (length >> 8);
+		header[2] = (byte) (length & 0xff);
+		header[3] = (byte) (identifier >> 16 & 0xff);
+		header[4] = (byte) (identifier >> 8 & 0xff);
+		header[5] = (byte) (identifier & 0xff);
+		header[6] = (byte) flags;
+		header[7] = (byte) (reserved >> 8 & 0xff);
+		header[8] = (byte) (reserved & 0xff);
+		out.write(header);
 
 		// Write data
 		out.write(getData());
-		
+
 		// Write CR LF
 		if (endsInCrLf) {
-			out.write(cr);
-			out.write(lf);
+			out.write(CR_LF);
 		}
 	}
 
 	private boolean mustWriteMD5(AfpReadWriteProperties props) {
 		return props.getMessageDigestThreshold() > -1
-				&& data.length > props.getMessageDigestThreshold();
+				&& length - 8 > props.getMessageDigestThreshold()
+				&& !isDataSkipped();
 	}
 
 	public void writeData(BufferedWriter out, AfpReadWriteProperties props,
@@ -420,6 +622,14 @@ public class GenericAfpRecord implements AfpRecord {
 		// Get data
 		byte[] data = getData();
 
+		// Write notice if data skipped
+		if (data == null) {
+			out.write(prefix);
+			out.write("  data skipped");
+			out.newLine();
+			return;
+		}
+
 		// Write MD5 sum if data too big
 		if (mustWriteMD5(props)) {
 			if (writeMd(out, props, prefix, data)) {
@@ -434,20 +644,19 @@ public class GenericAfpRecord implements AfpRecord {
 	public boolean writeMd(BufferedWriter out, AfpReadWriteProperties props,
 			String prefix, byte[] data) throws IOException, AfpException {
 
+		// Compute digest with cached digest of this thread
+		String algorithm = props.getMessageDigestAlgorithm();
+		byte[] digest;
 		try {
-			MessageDigest messageDigest = MessageDigest.getInstance("MD5");
-			messageDigest.reset();
-			messageDigest.update(data);
-			byte[] digest = messageDigest.digest();
-
-			// Write digext
-			AfpDump.dumpData(out, props, "MD5: ", prefix, digest);
-
-		} catch (NoSuchAlgorithmException e) {
-			LOG.error("No MD5 MessageDigest", e);
+			digest = AfpDigest.digest(algorithm, data);
+		} catch (AfpException e) {
+			LOG.error("No " + algorithm + " digest", e);
 			return false;
 		}
 
+		// Write digest
+		AfpDump.dumpData(out, props, algorithm + ": ", prefix, digest);
+
 		return true;
 	}
 }
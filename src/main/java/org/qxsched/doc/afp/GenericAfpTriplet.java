@@ -4,7 +4,6 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 
 /*
@@ -189,32 +188,9 @@ public class GenericAfpTriplet implements AfpTriplet {
 	public void write(BufferedWriter out, AfpReadWriteProperties props,
 			String prefix) throws IOException, AfpException {
 
-		// Get data
-		byte[] data = getData();
-
-		// Loop
-		for (int i = 0; i < data.length;) {
-
-			int iStart = i;
-			out.write(prefix);
-			out.write("  ");
-			if (i == 0) {
-				out.write("TRP ");
-			} else {
-				out.write("    ");
-			}
-
-			for (int j = i; j < data.length && j < iStart + 16; j++) {
-				i++;
-
-				int val = data[j] & 0xff;
-				out.write(StringUtils.leftPad(Integer.toString(val, 16)
-						.toLowerCase(), 2, '0'));
-				out.write(" ");
-
-			}
-			out.newLine();
-		}
+		// Write data
+		AfpHexFormatter.write(out, prefix + "  TRP ", prefix + "      ",
+				getData());
 	}
 
 	public void write(OutputStream out, AfpReadWriteProperties props)
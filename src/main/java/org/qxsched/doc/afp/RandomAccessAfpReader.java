@@ -0,0 +1,262 @@
+package org.qxsched.doc.afp;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link RandomAccessAfpReader} reads pages from an AFP file in constant
+ * time. The page positions are taken from the file's {@link AfpIndex}, which
+ * is read from the sidecar index file or built once. Reading a page takes one
+ * seek regardless of the page number and the file size.
+ * 
+ * Besides the page itself, the reader returns the records that precede the
+ * page at document level: the document prolog from the BDT record up to the
+ * first page of the document and the records between the previous page of
+ * the document and the page, e.g. IMM and TLE records.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class RandomAccessAfpReader {
+
+	private static Logger LOG = Logger.getLogger(RandomAccessAfpReader.class);
+
+	private RandomAccessFile file;
+	private AfpIndex index;
+	private int[] documentFirstPage;
+	private int[] pageDocument;
+	private AfpReadWriteProperties props;
+
+	/**
+	 * Constructor accepting the AFP file. The index is opened using
+	 * {@link AfpIndex#open(File)}.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public RandomAccessAfpReader(File file) throws AfpException {
+		this(file, AfpIndex.open(file), AfpReadWriteProperties.instance());
+	}
+
+	/**
+	 * Constructor accepting the AFP file, its index and the properties for
+	 * reading records.
+	 * 
+	 * @param file
+	 *            the AFP file.
+	 * @param index
+	 *            the index of the AFP file.
+	 * @param props
+	 *            the properties for reading records.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public RandomAccessAfpReader(File file, AfpIndex index,
+			AfpReadWriteProperties props) throws AfpException {
+		this.index = index;
+		this.props = props;
+
+		// Map pages to documents
+		int pageCount = index.getPageCount();
+		int documentCount = index.getDocumentCount();
+		pageDocument = new int[pageCount];
+		documentFirstPage = new int[documentCount];
+		int doc = 0;
+		for (int i = 0; i < documentCount; i++) {
+			documentFirstPage[i] = -1;
+		}
+		for (int i = 0; i < pageCount; i++) {
+			int begin = index.getPageBegin(i);
+
+			// Find document beginning before page
+			while (doc < documentCount && index.getDocumentEnd(doc) < begin) {
+				doc++;
+			}
+
+			// Page outside documents
+			if (doc == documentCount || index.getDocumentBegin(doc) > begin) {
+				pageDocument[i] = -1;
+				continue;
+			}
+
+			// Page in document
+			pageDocument[i] = doc;
+			if (documentFirstPage[doc] < 0) {
+				documentFirstPage[doc] = i;
+			}
+		}
+
+		// Open file
+		try {
+			this.file = new RandomAccessFile(file, "r");
+		} catch (IOException e) {
+			throw new AfpException("Failed to open file " + file, e);
+		}
+	}
+
+	/**
+	 * Closes the AFP file.
+	 * 
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public synchronized void close() throws AfpException {
+		try {
+			file.close();
+		} catch (IOException e) {
+			throw new AfpException("Failed to close file", e);
+		}
+	}
+
+	/**
+	 * Returns the records of the supplied document from its begin record (BDT)
+	 * up to its first page. If the document has no pages, the records up to
+	 * its end record are returned.
+	 * 
+	 * @param document
+	 *            the document number, starting at 0.
+	 * @return the records of the document prolog.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public List<AfpRecord> getDocumentProlog(int document) throws AfpException {
+		int first = index.getDocumentBegin(document);
+		int last = documentFirstPage[document] < 0 ? index
+				.getDocumentEnd(document) - 1 : index
+				.getPageBegin(documentFirstPage[document]) - 1;
+		return readRecords(first, last);
+	}
+
+	/**
+	 * Returns the index of the AFP file.
+	 * 
+	 * @return the index of the AFP file.
+	 */
+	public AfpIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the supplied page as record group.
+	 * 
+	 * @param page
+	 *            the page number, starting at 0.
+	 * @return the page.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpRecordGroup getPage(int page) throws AfpException {
+
+		// Read bytes
+		byte[] buff;
+		synchronized (this) {
+			buff = index.readBytes(file, index.getPageBegin(page), index
+					.getPageEnd(page));
+		}
+
+		// Group records
+		AfpFactory fact = AfpFactory.createAfpFactory();
+		fact.setAfpReadWriteProperties(props);
+		fact.setInputStream(new ByteArrayInputStream(buff));
+		AfpRecord rec = new AfpRecordGrouper(fact).getAfpRecord();
+		if (!(rec instanceof AfpRecordGroup)) {
+			throw new AfpException("Expected page group for page " + page);
+		}
+		return (AfpRecordGroup) rec;
+	}
+
+	/**
+	 * Returns the number of pages.
+	 * 
+	 * @return the number of pages.
+	 */
+	public int getPageCount() {
+		return index.getPageCount();
+	}
+
+	/**
+	 * Returns the number of the document containing the supplied page or -1
+	 * if the page is not contained in a document.
+	 * 
+	 * @param page
+	 *            the page number, starting at 0.
+	 * @return the number of the document containing the page.
+	 */
+	public int getPageDocument(int page) {
+		return pageDocument[page];
+	}
+
+	/**
+	 * Returns the records between the previous page of the same document and
+	 * the supplied page. For the first page of a document an empty list is
+	 * returned as the preceding records are the document prolog.
+	 * 
+	 * @param page
+	 *            the page number, starting at 0.
+	 * @return the records preceding the page.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public List<AfpRecord> getPageProlog(int page) throws AfpException {
+
+		// Get first record after previous page or document begin
+		int doc = pageDocument[page];
+		int first;
+		if (doc > -1 && documentFirstPage[doc] == page) {
+			return new ArrayList<AfpRecord>();
+		} else if (page > 0 && pageDocument[page - 1] == doc) {
+			first = index.getPageEnd(page - 1) + 1;
+		} else {
+			first = doc > -1 ? index.getDocumentBegin(doc) + 1 : 0;
+		}
+
+		// Read
+		int last = index.getPageBegin(page) - 1;
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Page " + page + " prolog: records " + first + " to "
+					+ last);
+		}
+		return readRecords(first, last);
+	}
+
+	// Reads a range of records
+	private List<AfpRecord> readRecords(int first, int last)
+			throws AfpException {
+		if (last < first) {
+			return new ArrayList<AfpRecord>();
+		}
+		synchronized (this) {
+			return index.readRecords(file, first, last, props);
+		}
+	}
+}
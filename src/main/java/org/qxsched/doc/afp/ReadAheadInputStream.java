@@ -0,0 +1,273 @@
+package org.qxsched.doc.afp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link ReadAheadInputStream} reads an input stream ahead of the
+ * consumer on a dedicated I/O thread. The I/O thread fills blocks of
+ * {@link #getBlockSize()} bytes and queues them for the consumer. At most
+ * {@link #getDepth()} filled blocks are queued, so the I/O thread blocks when
+ * the consumer falls behind. The blocks are recycled through a fixed pool so
+ * no buffers are allocated after construction.
+ * 
+ * Exceptions thrown by the underlying stream are thrown to the consumer after
+ * the blocks read before the exception.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class ReadAheadInputStream extends InputStream {
+
+	/**
+	 * Contains the default number of blocks read ahead.
+	 */
+	public static final int DEPTH_DEF = 2;
+
+	private static Logger LOG = Logger.getLogger(ReadAheadInputStream.class);
+
+	private int blockSize;
+	private Block current;
+	private int depth;
+	private BlockingQueue<Block> filled;
+	private BlockingQueue<Block> free;
+	private InputStream in;
+	private Thread thread;
+	private volatile boolean stopped;
+
+	/**
+	 * Constructor accepting the input stream to read ahead, the size of the
+	 * blocks and the number of blocks read ahead. The I/O thread is started.
+	 * 
+	 * @param in
+	 *            the input stream to read ahead.
+	 * @param blockSize
+	 *            the size of the blocks.
+	 * @param depth
+	 *            the number of blocks read ahead.
+	 * @throws AfpException
+	 *             if the block size or the depth is smaller than 1.
+	 */
+	public ReadAheadInputStream(InputStream in, int blockSize, int depth)
+			throws AfpException {
+
+		// Check
+		if (blockSize < 1) {
+			throw new AfpException("Block size must be at least 1");
+		}
+		if (depth < 1) {
+			throw new AfpException("Read ahead depth must be at least 1");
+		}
+
+		this.in = in;
+		this.blockSize = blockSize;
+		this.depth = depth;
+
+		// Make pool with one block for the consumer
+		filled = new ArrayBlockingQueue<Block>(depth);
+		free = new ArrayBlockingQueue<Block>(depth + 1);
+		for (int i = 0; i <= depth; i++) {
+			free.add(new Block(blockSize));
+		}
+
+		// Start I/O thread
+		thread = new Thread(new Runnable() {
+			public void run() {
+				fill();
+			}
+		}, "AfpReadAhead");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public int available() throws IOException {
+		return current == null ? 0 : current.length - current.position;
+	}
+
+	/**
+	 * Stops the I/O thread and closes the underlying input stream.
+	 * 
+	 * @throws IOException
+	 *             if the underlying input stream fails to close.
+	 */
+	@Override
+	public void close() throws IOException {
+		stop();
+		in.close();
+	}
+
+	// Reads blocks on the I/O thread until end of input, error or stop
+	private void fill() {
+		try {
+			while (!stopped) {
+
+				// Get free block
+				Block block = free.take();
+
+				// Read until block full or end of input
+				block.position = 0;
+				block.length = 0;
+				block.error = null;
+				try {
+					while (block.length < blockSize) {
+						int n = in.read(block.data, block.length, blockSize
+								- block.length);
+						if (n < 0) {
+							break;
+						}
+						block.length += n;
+					}
+				} catch (IOException e) {
+					block.error = e;
+				}
+
+				// Queue block, an empty block marks end of input
+				boolean last = block.error != null || block.length < blockSize;
+				filled.put(block);
+				if (last) {
+					if (block.length > 0 && block.error == null) {
+						Block eof = free.take();
+						eof.position = 0;
+						eof.length = 0;
+						eof.error = null;
+						filled.put(eof);
+					}
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Read ahead interrupted");
+			}
+		}
+	}
+
+	/**
+	 * Returns the size of the blocks.
+	 * 
+	 * @return the size of the blocks.
+	 */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Returns the number of blocks read ahead.
+	 * 
+	 * @return the number of blocks read ahead.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	// Makes the current block readable, returns false at end of input
+	private boolean next() throws IOException {
+
+		// Current block not exhausted
+		if (current != null && current.position < current.length) {
+			return true;
+		}
+
+		// End of input or error reached
+		if (current != null && (current.length == 0 || current.error != null)) {
+			if (current.error != null) {
+				throw current.error;
+			}
+			return false;
+		}
+
+		// Return exhausted block to pool and take the next
+		if (stopped) {
+			throw new IOException("Stream closed");
+		}
+		try {
+			if (current != null) {
+				free.put(current);
+			}
+			current = filled.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while reading ahead");
+		}
+
+		// Throw error after no data or return
+		if (current.length == 0 && current.error != null) {
+			throw current.error;
+		}
+		return current.length > 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!next()) {
+			return -1;
+		}
+		return current.data[current.position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+
+		// Nothing to read
+		if (len == 0) {
+			return 0;
+		}
+
+		// Copy from current block
+		if (!next()) {
+			return -1;
+		}
+		int n = Math.min(len, current.length - current.position);
+		System.arraycopy(current.data, current.position, b, off, n);
+		current.position += n;
+		return n;
+	}
+
+	/**
+	 * Stops the I/O thread without closing the underlying input stream.
+	 */
+	public void stop() {
+		stopped = true;
+		thread.interrupt();
+	}
+
+	// Block of bytes read ahead
+	private static class Block {
+
+		private byte[] data;
+		private IOException error;
+		private int length;
+		private int position;
+
+		public Block(int size) {
+			data = new byte[size];
+		}
+	}
+}
@@ -3,6 +3,7 @@ package org.qxsched.doc.afp.impl;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,6 +41,12 @@ import org.qxsched.doc.afp.AfpTriplet;
  * Class {@link AfpClasses} contains all {@link AfpRecord} classes that
  * implement a specific AFP identifier.
  * 
+ * Specific records and triplets are created through {@link AfpRecordCreator}
+ * and {@link AfpTripletCreator} objects resolved once and stored in arrays
+ * indexed by SFID and TID. The classes of this package are created by direct
+ * constructor calls, other classes through their cached constructor. A
+ * missing specific class is only warned about once per SFID or TID.
+ * 
  * @author Vincenzo Zocca
  * 
  */
@@ -61,15 +68,203 @@ public class AfpClasses {
 		return instance;
 	}
 
+	// Creates records by cached constructor
+	private static class ReflectiveRecordCreator implements AfpRecordCreator {
+
+		private Constructor<? extends AfpRecord> constr;
+
+		public ReflectiveRecordCreator(
+				Constructor<? extends AfpRecord> constr) {
+			this.constr = constr;
+		}
+
+		public AfpRecord create(AfpRecord record, AfpFactory fact)
+				throws AfpException {
+			try {
+				return constr.newInstance(record, fact);
+			} catch (IllegalArgumentException e) {
+				LOG.error("Unexpected exception: " + e.getMessage(), e);
+				return record;
+			} catch (InstantiationException e) {
+				LOG.error("Unexpected exception: " + e.getMessage(), e);
+				return record;
+			} catch (IllegalAccessException e) {
+				LOG.error("Unexpected exception: " + e.getMessage(), e);
+				return record;
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof AfpException) {
+					throw (AfpException) cause;
+				}
+				LOG.error("Unexpected exception: " + e.getMessage(), e);
+				return record;
+			}
+		}
+	}
+
+	// Creates triplets by cached constructor
+	private static class ReflectiveTripletCreator implements
+			AfpTripletCreator {
+
+		private Constructor<? extends AfpTriplet> constr;
+
+		public ReflectiveTripletCreator(
+				Constructor<? extends AfpTriplet> constr) {
+			this.constr = constr;
+		}
+
+		public AfpTriplet create(AfpTriplet triplet) throws AfpException {
+			try {
+				return constr.newInstance(triplet);
+			} catch (IllegalArgumentException e) {
+				LOG.error("Unexpected exception: " + e.getMessage(), e);
+				return triplet;
+			} catch (InstantiationException e) {
+				LOG.error("Unexpected exception: " + e.getMessage(), e);
+				return triplet;
+			} catch (IllegalAccessException e) {
+				LOG.error("Unexpected exception: " + e.getMessage(), e);
+				return triplet;
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof AfpException) {
+					throw (AfpException) cause;
+				}
+				LOG.error("Unexpected exception: " + e.getMessage(), e);
+				return triplet;
+			}
+		}
+	}
+
+	// Class byte of MO:DCA structured fields
+	private static final int SF_CLASS = 0xd3;
+
 	private Map<String, Class<AfpRecord>> recordAbbrev2class = new HashMap<String, Class<AfpRecord>>();
 	private Map<Integer, Class<AfpRecord>> recordCode2class = new HashMap<Integer, Class<AfpRecord>>();
+	private Map<Integer, AfpRecordCreator> recordCode2creator = new HashMap<Integer, AfpRecordCreator>();
+	private AfpRecordCreator[] recordCreators = new AfpRecordCreator[0x10000];
+	private boolean[] recordWarned = new boolean[0x10000];
 
 	private Map<Integer, Class<AfpTriplet>> tripletCode2class = new HashMap<Integer, Class<AfpTriplet>>();
+	private AfpTripletCreator[] tripletCreators = new AfpTripletCreator[0x100];
+	private boolean[] tripletWarned = new boolean[0x100];
+
+	private Set<Integer> warnedRecordCodes = new HashSet<Integer>();
 
 	private AfpClasses() throws AfpException {
 		init();
 	}
 
+	// Makes the creator for a record class
+	private AfpRecordCreator makeRecordCreator(Class<?> cls) {
+
+		// Direct calls for the classes of this package
+		if (cls == AfpRecordFND.class) {
+			return new AfpRecordCreator() {
+				public AfpRecord create(AfpRecord record, AfpFactory fact)
+						throws AfpException {
+					return new AfpRecordFND(record, fact);
+				}
+			};
+		}
+		if (cls == AfpRecordNOP.class) {
+			return new AfpRecordCreator() {
+				public AfpRecord create(AfpRecord record, AfpFactory fact)
+						throws AfpException {
+					return new AfpRecordNOP(record, fact);
+				}
+			};
+		}
+		if (cls == AfpRecordTLE.class) {
+			return new AfpRecordCreator() {
+				public AfpRecord create(AfpRecord record, AfpFactory fact)
+						throws AfpException {
+					return new AfpRecordTLE(record, fact);
+				}
+			};
+		}
+
+		// Cached constructor otherwise
+		try {
+			return new ReflectiveRecordCreator(cls.asSubclass(AfpRecord.class)
+					.getConstructor(AfpRecord.class, AfpFactory.class));
+		} catch (NoSuchMethodException e) {
+			LOG.error("No constructor found accepting AfpRecord in class "
+					+ cls.getName(), e);
+			return null;
+		}
+	}
+
+	// Makes the creator for a triplet class
+	private AfpTripletCreator makeTripletCreator(Class<?> cls) {
+
+		// Direct calls for the classes of this package
+		if (cls == AfpTriplet01.class) {
+			return new AfpTripletCreator() {
+				public AfpTriplet create(AfpTriplet triplet)
+						throws AfpException {
+					return new AfpTriplet01(triplet);
+				}
+			};
+		}
+		if (cls == AfpTriplet02.class) {
+			return new AfpTripletCreator() {
+				public AfpTriplet create(AfpTriplet triplet)
+						throws AfpException {
+					return new AfpTriplet02(triplet);
+				}
+			};
+		}
+		if (cls == AfpTriplet36.class) {
+			return new AfpTripletCreator() {
+				public AfpTriplet create(AfpTriplet triplet)
+						throws AfpException {
+					return new AfpTriplet36(triplet);
+				}
+			};
+		}
+
+		// Cached constructor otherwise
+		try {
+			return new ReflectiveTripletCreator(cls.asSubclass(
+					AfpTriplet.class).getConstructor(AfpTriplet.class));
+		} catch (NoSuchMethodException e) {
+			LOG.error("No constructor found accepting AfpTriplet in class "
+					+ cls.getName());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the creator of specific records for the supplied SFID or
+	 * <code>null</code> if none.
+	 * 
+	 * @param code
+	 *            the SFID.
+	 * @return the creator of specific records for the SFID.
+	 */
+	public AfpRecordCreator getAfpRecordCreator(int code) {
+		if (code >> 16 == SF_CLASS) {
+			return recordCreators[code & 0xffff];
+		}
+		return recordCode2creator.get(code);
+	}
+
+	/**
+	 * Returns the creator of specific triplets for the supplied TID or
+	 * <code>null</code> if none.
+	 * 
+	 * @param code
+	 *            the TID.
+	 * @return the creator of specific triplets for the TID.
+	 */
+	public AfpTripletCreator getAfpTripletCreator(int code) {
+		if (code < 0 || code >= tripletCreators.length) {
+			return null;
+		}
+		return tripletCreators[code];
+	}
+
 	public Class<AfpRecord> getSpecificAfpRecordClass(AfpRecord record) {
 		return recordCode2class.get(record.getSFIdentifier());
 	}
@@ -142,6 +337,7 @@ public class AfpClasses {
 			Integer code = defs.getCode(abbrev);
 			recordCode2class.put(code, (Class<AfpRecord>) recordClass);
 			recordAbbrev2class.put(abbrev, (Class<AfpRecord>) recordClass);
+			setAfpRecordCreator(code, makeRecordCreator(recordClass));
 		}
 
 		// Try finding al triplet classes this package implements
@@ -186,110 +382,85 @@ public class AfpClasses {
 				LOG.trace("Found AfpTriplet: " + tripClassName);
 			}
 			tripletCode2class.put(i, (Class<AfpTriplet>) tripClass);
+			tripletCreators[i] = makeTripletCreator(tripClass);
 		}
 	}
 
 	public AfpRecord instantiateSpecific(AfpRecord record, AfpFactory fact)
 			throws AfpException {
 
-		// Get record class
-		Class<AfpRecord> cls = getSpecificAfpRecordClass(record);
-
-		// Do nothing if no class
-		if (cls == null) {
-			LOG.warn("No specific class found for AFP identifier '"
-					+ record.getSFIdentifierAbbrev() + "'/"
-					+ record.getSFIdentifierString());
-			return record;
-		}
-
-		// Get constructor
-		Constructor<AfpRecord> constr;
-		try {
-			Class[] prams = { AfpRecord.class, AfpFactory.class };
-			constr = cls.getConstructor(prams);
-		} catch (SecurityException e) {
-			throw new AfpException(e.getMessage(), e);
-		} catch (NoSuchMethodException e) {
-			LOG.error("No constructor found accepting AfpRecord in class "
-					+ cls.getName(), e);
+		// Get record creator
+		AfpRecordCreator creator = getAfpRecordCreator(record
+				.getSFIdentifier());
+
+		// Do nothing if no creator
+		if (creator == null) {
+			if (isFirstWarning(record.getSFIdentifier())) {
+				LOG.warn("No specific class found for AFP identifier '"
+						+ record.getSFIdentifierAbbrev() + "'/"
+						+ record.getSFIdentifierString()
+						+ ". Further warnings for it are suppressed.");
+			}
 			return record;
 		}
 
 		// Instantiate
-		try {
-			Object[] prams = { record, fact };
-			AfpRecord inst = constr.newInstance(prams);
-			return inst;
-		} catch (IllegalArgumentException e) {
-			LOG.error("Unexpected exception: " + e.getMessage(), e);
-			return record;
-		} catch (InstantiationException e) {
-			LOG.error("Unexpected exception: " + e.getMessage(), e);
-			return record;
-		} catch (IllegalAccessException e) {
-			LOG.error("Unexpected exception: " + e.getMessage(), e);
-			return record;
-		} catch (InvocationTargetException e) {
-			Throwable cause = e.getCause();
-			if (cause instanceof AfpException) {
-				throw (AfpException) cause;
-			}
-			LOG.error("Unexpected exception: " + e.getMessage(), e);
-			return record;
-		}
+		return creator.create(record, fact);
 	}
 
 	public AfpTriplet instantiateSpecific(AfpTriplet triplet, AfpFactory fact)
 			throws AfpException {
 
-		// Get triplet class
-		Class<AfpTriplet> cls = getSpecificAfpTripletClass(triplet);
-
-		// Do nothing if no class
-		if (cls == null) {
-			LOG.warn("No specific class found for AFP triplet 0x"
-					+ Integer.toString(triplet.getTid(), 16));
+		// Get triplet creator
+		AfpTripletCreator creator = getAfpTripletCreator(triplet.getTid());
+
+		// Do nothing if no creator
+		if (creator == null) {
+			int tid = triplet.getTid();
+			if (tid >= 0 && tid < tripletWarned.length
+					&& !tripletWarned[tid]) {
+				tripletWarned[tid] = true;
+				LOG.warn("No specific class found for AFP triplet 0x"
+						+ Integer.toString(tid, 16)
+						+ ". Further warnings for it are suppressed.");
+			}
 			return triplet;
 		}
 
-		// Get constructor
-		Constructor<AfpTriplet> constr;
-		try {
-			constr = cls.getConstructor(AfpTriplet.class);
-		} catch (SecurityException e) {
-			throw new AfpException(e.getMessage(), e);
-		} catch (NoSuchMethodException e) {
-			LOG.error("No constructor found accepting AfpTriplet in class "
-					+ cls.getName());
-			return triplet;
-		}
-		if (LOG.isTraceEnabled()) {
-			LOG.trace("Constructor found accepting AfpTriplet in class "
-					+ cls.getName());
+		// Instantiate
+		return creator.create(triplet);
+	}
+
+	/**
+	 * Sets the creator of specific records for the supplied SFID.
+	 * 
+	 * @param code
+	 *            the SFID.
+	 * @param creator
+	 *            the creator of specific records or <code>null</code> to
+	 *            create none.
+	 */
+	public synchronized void setAfpRecordCreator(int code,
+			AfpRecordCreator creator) {
+		if (code >> 16 == SF_CLASS) {
+			recordCreators[code & 0xffff] = creator;
+		} else {
+			recordCode2creator.put(code, creator);
 		}
+	}
 
-		// Instantiate
-		try {
-			Object[] prams = { triplet };
-			AfpTriplet inst = constr.newInstance(prams);
-			return inst;
-		} catch (IllegalArgumentException e) {
-			LOG.error("Unexpected exception: " + e.getMessage(), e);
-			return triplet;
-		} catch (InstantiationException e) {
-			LOG.error("Unexpected exception: " + e.getMessage(), e);
-			return triplet;
-		} catch (IllegalAccessException e) {
-			LOG.error("Unexpected exception: " + e.getMessage(), e);
-			return triplet;
-		} catch (InvocationTargetException e) {
-			Throwable cause = e.getCause();
-			if (cause instanceof AfpException) {
-				throw (AfpException) cause;
+	// Returns true on the first call for an SFID. Flags of MO:DCA SFIDs are
+	// checked without locking, so a warning may rarely be repeated.
+	private boolean isFirstWarning(int code) {
+		if (code >> 16 == SF_CLASS) {
+			if (recordWarned[code & 0xffff]) {
+				return false;
 			}
-			LOG.error("Unexpected exception: " + e.getMessage(), e);
-			return triplet;
+			recordWarned[code & 0xffff] = true;
+			return true;
+		}
+		synchronized (warnedRecordCodes) {
+			return warnedRecordCodes.add(code);
 		}
 	}
 }
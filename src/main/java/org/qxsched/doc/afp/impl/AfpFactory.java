@@ -1,8 +1,7 @@
 package org.qxsched.doc.afp.impl;
 
-import java.io.IOException;
+import java.io.File;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,9 +9,11 @@ import org.apache.log4j.Logger;
 import org.qxsched.doc.afp.AfpException;
 import org.qxsched.doc.afp.AfpReadWriteProperties;
 import org.qxsched.doc.afp.AfpRecord;
+import org.qxsched.doc.afp.AfpRecordCursor;
 import org.qxsched.doc.afp.AfpTriplet;
 import org.qxsched.doc.afp.GenericAfpRecord;
 import org.qxsched.doc.afp.GenericAfpTriplet;
+import org.qxsched.doc.afp.ReadAheadInputStream;
 
 /*
  * 
@@ -49,42 +50,76 @@ public class AfpFactory extends org.qxsched.doc.afp.AfpFactory {
 	private static Logger LOG = Logger.getLogger(AfpFactory.class);
 
 	private AfpClasses classes;
-	private PushbackInputStream in;
+	private AfpRecordCursor cursor;
+	private InputStream in;
 	private AfpReadWriteProperties props = AfpReadWriteProperties.instance();
+	private ReadAheadInputStream readAhead;
+
+	/**
+	 * Stops reading ahead and closes the file opened through
+	 * {@link #setInputFile(File)}.
+	 * 
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	@Override
+	public void close() throws AfpException {
+		stopReadAhead();
+		super.close();
+	}
 
 	@Override
 	public AfpRecord createAfpRecord() throws AfpException {
 
-		// Return if no more bytes
-		try {
-			if (in.available() == 0) {
-				return null;
-			}
-		} catch (IOException e) {
-			throw new AfpException("Unexpected exception ", e);
-		}
-
 		// Initialize
 		init();
 
-		// Read record
-		AfpRecord rec = new GenericAfpRecord(in);
+		// Read records until one must be returned
+		GenericAfpRecord rec;
+		do {
+
+			// Return if no more records
+			if (cursor == null) {
+				InputStream cin = in;
+				if (props.getReadAheadDepth() > 0) {
+					readAhead = new ReadAheadInputStream(in, props
+							.getReadBufferSize(), props.getReadAheadDepth());
+					cin = readAhead;
+				}
+				cursor = new AfpRecordCursor(cin, props.getReadBufferSize());
+			}
+			if (!cursor.next()) {
+				return null;
+			}
+
+			// Read record
+			rec = new GenericAfpRecord(cursor, props);
+		} while (rec.isDataSkipped() && !props.isReturnSkipped());
 
 		// Return if the record must not be read into a specific class
-		if (!props.isConvertSpecific(rec)) {
+		if (rec.isDataSkipped() || !props.isConvertSpecific(rec)) {
+			return rec;
+		}
+
+		// Return the generic record if converted lazily
+		if (props.isConvertLazy()) {
+			rec.setAfpFactory(this);
 			return rec;
 		}
 
 		// Instantiate specific class
-		rec = classes.instantiateSpecific(rec, this);
+		AfpRecord ret = classes.instantiateSpecific(rec, this);
 
 		// Return
-		return rec;
+		return ret;
 	}
 
 	public AfpTriplet[] createAfpTriplets(byte[] data, int offset, int max)
 			throws AfpException {
 
+		// Initialize
+		init();
+
 		// Make list
 		List<AfpTriplet> list = new ArrayList<AfpTriplet>();
 
@@ -121,9 +156,36 @@ public class AfpFactory extends org.qxsched.doc.afp.AfpFactory {
 		return ret;
 	}
 
+	@Override
+	public AfpRecord createSpecificAfpRecord(AfpRecord record)
+			throws AfpException {
+		return getAfpClasses().instantiateSpecific(record, this);
+	}
+
 	@Override
 	public InputStream getInputStream() throws AfpException {
-		return in;
+		return readAhead == null ? in : readAhead;
+	}
+
+	/**
+	 * Returns the object's read/write properties.
+	 * 
+	 * @return the object's read/write properties.
+	 */
+	protected AfpReadWriteProperties getAfpReadWriteProperties() {
+		return props;
+	}
+
+	/**
+	 * Returns the specific record classes, initializing them if necessary.
+	 * 
+	 * @return the specific record classes.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	protected AfpClasses getAfpClasses() throws AfpException {
+		init();
+		return classes;
 	}
 
 	private void init() throws AfpException {
@@ -139,12 +201,47 @@ public class AfpFactory extends org.qxsched.doc.afp.AfpFactory {
 		this.props = props;
 	}
 
+	/**
+	 * Sets the object's input file. The file is not wrapped in a buffered
+	 * input stream as the records are read through a block-buffered
+	 * {@link AfpRecordCursor}.
+	 * 
+	 * @param file
+	 *            the object's input file.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	@Override
+	public void setInputFile(File file) throws AfpException {
+		setInputStream(openInputFile(file));
+	}
+
+	/**
+	 * Sets the object's input stream. The records are read from the stream
+	 * in blocks of {@link AfpReadWriteProperties#getReadBufferSize()} bytes,
+	 * so the stream need not be buffered and reads past the records returned
+	 * by {@link #createAfpRecord()}. If
+	 * {@link AfpReadWriteProperties#getReadAheadDepth()} is positive, the
+	 * stream is read ahead on a dedicated I/O thread from the first call to
+	 * {@link #createAfpRecord()} until {@link #close()}.
+	 * 
+	 * @param in
+	 *            the object's input stream.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
 	@Override
 	public void setInputStream(InputStream in) throws AfpException {
-		if (in instanceof PushbackInputStream) {
-			this.in = (PushbackInputStream) in;
-		} else {
-			this.in = new PushbackInputStream(in);
+		stopReadAhead();
+		this.in = in;
+		cursor = null;
+	}
+
+	// Stops the I/O thread reading ahead
+	private void stopReadAhead() {
+		if (readAhead != null) {
+			readAhead.stop();
+			readAhead = null;
 		}
 	}
 }
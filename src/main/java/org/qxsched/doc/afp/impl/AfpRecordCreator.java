@@ -0,0 +1,52 @@
+package org.qxsched.doc.afp.impl;
+
+import org.qxsched.doc.afp.AfpException;
+import org.qxsched.doc.afp.AfpFactory;
+import org.qxsched.doc.afp.AfpRecord;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Interface {@link AfpRecordCreator} must be implemented by classes that
+ * create specific {@link AfpRecord} objects from generic ones. Creators are
+ * registered in {@link AfpClasses}.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public interface AfpRecordCreator {
+
+	/**
+	 * Creates a specific record from the supplied generic record.
+	 * 
+	 * @param record
+	 *            the generic record.
+	 * @param fact
+	 *            the AFP factory.
+	 * @return the specific record.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpRecord create(AfpRecord record, AfpFactory fact)
+			throws AfpException;
+}
@@ -93,6 +93,25 @@ public class AfpRecordNOP extends GenericAfpRecord {
 		setEndsInCrLf(record.isEndsInCrLf());
 	}
 
+	public AfpRecordNOP(int flags, int reserved, byte[] data)
+			throws AfpException {
+
+		// Init
+		init();
+
+		// Set identifier
+		setSFIdentifier(myIdentifier);
+
+		// Set flags
+		setFlags(flags);
+
+		// Set reserved
+		setReserved(reserved);
+
+		// Set data
+		setData(data);
+	}
+
 	public void writeData(BufferedWriter out, AfpReadWriteProperties props,
 			String prefix) throws IOException, AfpException {
 
@@ -300,6 +300,9 @@ public class AfpRecordTLE extends GenericAfpRecord {
 		// Make data
 		byte[] data = makeData(trips);
 
+		// Remember triplets
+		this.trips = trips;
+
 		// Set data
 		super.setData(data);
 	}
@@ -322,7 +325,7 @@ public class AfpRecordTLE extends GenericAfpRecord {
 			AfpTriplet trip = trips[i];
 			byte[] tData = trip.getData();
 			System.arraycopy(tData, 0, ret, offset, tData.length);
-			offset++;
+			offset += tData.length;
 		}
 
 		// Return
@@ -75,6 +75,39 @@ public class AfpTriplet36 extends GenericAfpTriplet {
 
 	}
 
+	public AfpTriplet36(String attVal) throws AfpException {
+		this(attVal, null);
+	}
+
+	public AfpTriplet36(String attVal, Charset cs) throws AfpException {
+
+		// Store character set
+		if (cs != null) {
+			this.cs = cs;
+		}
+
+		// Check attVal
+		if (attVal == null) {
+			throw new AfpException("Illegal value for AttVal: null");
+		}
+		byte[] attValB = attVal.getBytes(this.cs);
+		if (attValB.length > 250) {
+			throw new AfpException(
+					"Supplied AttVal yields to byte array with more than 250 bytes: "
+							+ attValB.length);
+		}
+
+		// Make data
+		byte[] data = new byte[attValB.length + 4];
+		data[0] = (byte) (attValB.length + 4 & 0xff);
+		data[1] = TID;
+		System.arraycopy(attValB, 0, data, 4, attValB.length);
+
+		// Set data
+		setTid(TID);
+		setData(data);
+	}
+
 	public String getAttVal() {
 		return attVal;
 	}
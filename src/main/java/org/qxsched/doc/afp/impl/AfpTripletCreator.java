@@ -0,0 +1,48 @@
+package org.qxsched.doc.afp.impl;
+
+import org.qxsched.doc.afp.AfpException;
+import org.qxsched.doc.afp.AfpTriplet;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Interface {@link AfpTripletCreator} must be implemented by classes that
+ * create specific {@link AfpTriplet} objects from generic ones. Creators are
+ * registered in {@link AfpClasses}.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public interface AfpTripletCreator {
+
+	/**
+	 * Creates a specific triplet from the supplied generic triplet.
+	 * 
+	 * @param triplet
+	 *            the generic triplet.
+	 * @return the specific triplet.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public AfpTriplet create(AfpTriplet triplet) throws AfpException;
+}
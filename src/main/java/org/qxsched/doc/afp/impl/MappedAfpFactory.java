@@ -0,0 +1,230 @@
+package org.qxsched.doc.afp.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import org.qxsched.doc.afp.AfpException;
+import org.qxsched.doc.afp.AfpReadWriteProperties;
+import org.qxsched.doc.afp.AfpRecord;
+import org.qxsched.doc.afp.AfpRecordCursor;
+import org.qxsched.doc.afp.GenericAfpRecord;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link MappedAfpFactory} creates {@link AfpRecord} objects from a
+ * memory mapped AFP file. The records are {@link MappedAfpRecord} objects
+ * whose data are read-only slices of the mapping. The file is read through an
+ * {@link AfpRecordCursor} which maps it in windows so files larger than 2GB
+ * can be read.
+ * 
+ * If the input stream is not a {@link FileInputStream} the records are read
+ * as done by {@link AfpFactory}.
+ * 
+ * To use this factory by default set it in resource
+ * <code>org/qxsched/doc/afp/AfpFactory.properties</code>.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class MappedAfpFactory extends AfpFactory {
+
+	/**
+	 * Contains the default size of the mapped windows.
+	 */
+	public static final long WINDOW_SIZE_DEF = AfpRecordCursor.WINDOW_SIZE_DEF;
+
+	private AfpRecordCursor cursor;
+	private FileInputStream in;
+	private long windowSize = WINDOW_SIZE_DEF;
+
+	@Override
+	public void close() throws AfpException {
+		cursor = null;
+		in = null;
+		super.close();
+	}
+
+	@Override
+	public AfpRecord createAfpRecord() throws AfpException {
+
+		// Read from stream if not mapped
+		if (cursor == null) {
+			return super.createAfpRecord();
+		}
+
+		// Read from cursor
+		return createAfpRecord(cursor);
+	}
+
+	/**
+	 * Creates the next {@link AfpRecord} object from the supplied cursor.
+	 * Records whose data must not be read are returned as header-only records
+	 * or skipped as set in the read/write properties.
+	 * 
+	 * @param cursor
+	 *            the cursor to read from.
+	 * @return the next record or <code>null</code> if no more records.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	protected AfpRecord createAfpRecord(AfpRecordCursor cursor)
+			throws AfpException {
+
+		// Skip records whose data must not be read nor returned
+		AfpReadWriteProperties props = getAfpReadWriteProperties();
+		boolean readData;
+		do {
+
+			// Return if no more records
+			if (!cursor.next()) {
+				return null;
+			}
+			readData = props.isReadData(cursor.getSFIdentifier());
+		} while (!readData && !props.isReturnSkipped());
+
+		// Make header-only record if data must not be read
+		if (!readData) {
+			return new GenericAfpRecord(cursor.getLength(), cursor
+					.getSFIdentifier(), cursor.getFlags(),
+					cursor.getReserved(), cursor.isEndsInCrLf());
+		}
+
+		// Make record
+		MappedAfpRecord rec = new MappedAfpRecord(cursor.getLength(), cursor
+				.getSFIdentifier(), cursor.getFlags(), cursor.getReserved(),
+				cursor.sliceData(), cursor.isEndsInCrLf());
+
+		// Return if the record must not be read into a specific class
+		if (!props.isConvertSpecific(rec)) {
+			return rec;
+		}
+
+		// Return the generic record if converted lazily
+		if (props.isConvertLazy()) {
+			rec.setAfpFactory(this);
+			return rec;
+		}
+
+		// Instantiate specific class
+		return getAfpClasses().instantiateSpecific(rec, this);
+	}
+
+	@Override
+	public InputStream getInputStream() throws AfpException {
+		if (cursor == null) {
+			return super.getInputStream();
+		}
+		return in;
+	}
+
+	/**
+	 * Returns the size of the mapped windows.
+	 * 
+	 * @return the size of the mapped windows.
+	 */
+	public long getWindowSize() {
+		return windowSize;
+	}
+
+	@Override
+	public void setInputFile(File file) throws AfpException {
+		setInputStream(openInputFile(file));
+	}
+
+	/**
+	 * Sets the object's input to a range of the supplied file. The range must
+	 * start at a record and end after a record. The file is opened by the
+	 * object and must be closed through {@link #close()}.
+	 * 
+	 * @param file
+	 *            the object's input file.
+	 * @param start
+	 *            the offset of the first record.
+	 * @param end
+	 *            the offset after the last record.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	public void setInputRange(File file, long start, long end)
+			throws AfpException {
+		in = openInputFile(file);
+		cursor = new AfpRecordCursor(in.getChannel(), start, end, windowSize);
+	}
+
+	/**
+	 * Sets the object's input stream. If the input stream is a
+	 * {@link FileInputStream} its channel is mapped starting at the channel's
+	 * current position. Otherwise the input stream is read as done by
+	 * {@link AfpFactory}.
+	 * 
+	 * @param in
+	 *            the object's input stream.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	@Override
+	public void setInputStream(InputStream in) throws AfpException {
+
+		// Reset
+		cursor = null;
+		this.in = null;
+
+		// Read as stream if not a file
+		if (!(in instanceof FileInputStream)) {
+			super.setInputStream(in);
+			return;
+		}
+
+		// Make cursor on channel
+		this.in = (FileInputStream) in;
+		FileChannel channel = this.in.getChannel();
+		try {
+			cursor = new AfpRecordCursor(channel, channel.position(), channel
+					.size(), windowSize);
+		} catch (IOException e) {
+			throw new AfpException("Failed to get position and size of file",
+					e);
+		}
+	}
+
+	/**
+	 * Sets the size of the mapped windows for input set hereafter. The size
+	 * may not be smaller than the maximum record size.
+	 * 
+	 * @param windowSize
+	 *            the size of the mapped windows.
+	 * @throws AfpException
+	 *             if the size is too small.
+	 */
+	public void setWindowSize(long windowSize) throws AfpException {
+		if (windowSize < AfpRecordCursor.RECORD_MAX) {
+			throw new AfpException("Window size must be at least "
+					+ AfpRecordCursor.RECORD_MAX);
+		}
+		this.windowSize = windowSize;
+	}
+}
@@ -0,0 +1,99 @@
+package org.qxsched.doc.afp.impl;
+
+import java.nio.ByteBuffer;
+
+import org.qxsched.doc.afp.AfpException;
+import org.qxsched.doc.afp.AfpRecord;
+import org.qxsched.doc.afp.GenericAfpRecord;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link MappedAfpRecord} implements an {@link AfpRecord} whose data is
+ * a read-only slice of a memory mapped AFP file. The data is only copied into
+ * a byte array when {@link #getData()} is called.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class MappedAfpRecord extends GenericAfpRecord {
+
+	private byte[] data;
+	private ByteBuffer dataBuffer;
+
+	/**
+	 * Constructor accepting the structured field introducer and the data
+	 * slice.
+	 * 
+	 * @param length
+	 *            the length from the structured field introducer.
+	 * @param identifier
+	 *            the structured field identifier.
+	 * @param flags
+	 *            the flags.
+	 * @param reserved
+	 *            the reserved field.
+	 * @param dataBuffer
+	 *            the read-only data slice.
+	 * @param endsInCrLf
+	 *            the flag to denote that the record is ended with CR LF.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public MappedAfpRecord(int length, int identifier, int flags,
+			int reserved, ByteBuffer dataBuffer, boolean endsInCrLf)
+			throws AfpException {
+		super(length, identifier, flags, reserved, endsInCrLf);
+
+		// Check data size
+		if (dataBuffer.remaining() != length - 8) {
+			throw new AfpException("Data buffer size " + dataBuffer.remaining()
+					+ " does not match record length " + length);
+		}
+		this.dataBuffer = dataBuffer;
+	}
+
+	/**
+	 * Returns the record data as byte array. The data is copied from the
+	 * mapping on first call.
+	 * 
+	 * @return the record data as byte array.
+	 */
+	public synchronized byte[] getData() {
+		if (data == null) {
+			byte[] copy = new byte[dataBuffer.remaining()];
+			dataBuffer.duplicate().get(copy);
+			data = copy;
+		}
+		return data;
+	}
+
+	public ByteBuffer getDataBuffer() {
+		return dataBuffer.duplicate();
+	}
+
+	@Override
+	public boolean isDataSkipped() {
+		return false;
+	}
+}
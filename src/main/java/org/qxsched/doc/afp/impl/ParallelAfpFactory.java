@@ -0,0 +1,411 @@
+package org.qxsched.doc.afp.impl;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.AfpException;
+import org.qxsched.doc.afp.AfpRecord;
+import org.qxsched.doc.afp.AfpRecordCursor;
+import org.qxsched.doc.afp.AfpStructuredFieldDefinitions;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link ParallelAfpFactory} creates {@link AfpRecord} objects from an
+ * AFP file parsing chunks of the file in parallel. The records are delivered
+ * by {@link #createAfpRecord()} in their original order.
+ * 
+ * The file is split in chunks of {@link #getChunkSize()} bytes. The start of
+ * every chunk is moved to the first position holding a carriage control
+ * character followed by a structured field identifier known to
+ * {@link AfpStructuredFieldDefinitions#getCodes()} and from which the record
+ * lengths chain over the next records. Each chunk is parsed on a worker
+ * thread. A limited number of chunks is parsed ahead of the consumer.
+ * 
+ * If the input stream is not a {@link FileInputStream} the records are read
+ * as done by {@link AfpFactory}.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class ParallelAfpFactory extends MappedAfpFactory {
+
+	/**
+	 * Contains the default chunk size.
+	 */
+	public static final long CHUNK_SIZE_DEF = 16L * 1024L * 1024L;
+
+	/**
+	 * Contains the number of records that must chain from a resynchronization
+	 * point.
+	 */
+	public static final int CHAIN = 4;
+
+	private static Logger LOG = Logger.getLogger(ParallelAfpFactory.class);
+
+	private FileChannel channel;
+	private long chunkSize = CHUNK_SIZE_DEF;
+	private int chunkCount;
+	private Set<Integer> codes;
+	private Iterator<AfpRecord> current;
+	private ExecutorService executor;
+	private LinkedList<Future<List<AfpRecord>>> futures =
+			new LinkedList<Future<List<AfpRecord>>>();
+	private int nextChunk;
+	private boolean ownExecutor;
+	private long size;
+	private long start;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	// Checks if the records chain from the supplied buffer index
+	private static boolean isChained(ByteBuffer buff, int idx, long offset,
+			long size, Set<Integer> codes) {
+
+		int p = idx;
+		int limit = buff.limit();
+		for (int n = 0; n < CHAIN; n++) {
+
+			// End of file reached exactly
+			if (offset + p == size) {
+				return n > 0;
+			}
+			if (p + 9 > limit) {
+				return false;
+			}
+
+			// Expect the CCC
+			if ((buff.get(p) & 0xff) != 0x5a) {
+				return false;
+			}
+
+			// Expect a known identifier first and structured fields next
+			int length = buff.getShort(p + 1) & 0xffff;
+			int identifier = (buff.get(p + 3) & 0xff) << 16
+					| (buff.get(p + 4) & 0xff) << 8 | buff.get(p + 5) & 0xff;
+			if (length < 8) {
+				return false;
+			}
+			if (n == 0 ? !codes.contains(identifier)
+					: identifier >> 16 != 0xd3) {
+				return false;
+			}
+
+			// Next record, allowing trailing CR LF
+			p += 1 + length;
+			if (p + 1 < limit && buff.get(p) == 0x0d
+					&& buff.get(p + 1) == 0x0a) {
+				p += 2;
+			}
+		}
+		return p <= limit;
+	}
+
+	/**
+	 * Returns the offset of the first record at or after the supplied
+	 * position. A record is accepted if it has a known structured field
+	 * identifier and {@link #CHAIN} records chain from it, or if the chain
+	 * ends exactly at the end of the file.
+	 * 
+	 * @param channel
+	 *            the file channel.
+	 * @param pos
+	 *            the position to start searching.
+	 * @param size
+	 *            the size of the file.
+	 * @param codes
+	 *            the known structured field identifiers.
+	 * @return the offset of the first record at or after the supplied position
+	 *         or the size if the position is at the end of the file.
+	 * @throws AfpException
+	 *             if no record is found.
+	 */
+	public static long resync(FileChannel channel, long pos, long size,
+			Set<Integer> codes) throws AfpException {
+
+		// Return if at end
+		if (pos >= size) {
+			return size;
+		}
+
+		// Map enough to check the chain of any candidate
+		long len = Math.min(size - pos, (long) AfpRecordCursor.RECORD_MAX
+				* (CHAIN + 1));
+		ByteBuffer buff;
+		try {
+			buff = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+		} catch (IOException e) {
+			throw new AfpException("Failed to map " + len
+					+ " bytes at offset " + pos, e);
+		}
+
+		// Find first chaining record
+		int scan = (int) Math.min(len, AfpRecordCursor.RECORD_MAX);
+		for (int i = 0; i < scan; i++) {
+			if (isChained(buff, i, pos, size, codes)) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Resynchronized offset " + pos + " to "
+							+ (pos + i));
+				}
+				return pos + i;
+			}
+		}
+		throw new AfpException("No record found in " + scan
+				+ " bytes at offset " + pos);
+	}
+
+	@Override
+	public void close() throws AfpException {
+		reset();
+		super.close();
+	}
+
+	@Override
+	public AfpRecord createAfpRecord() throws AfpException {
+
+		// Read as done by super class if not chunked
+		if (channel == null) {
+			return super.createAfpRecord();
+		}
+
+		// Get the next parsed chunk if the current one is done
+		while (current == null || !current.hasNext()) {
+
+			// Return if no more chunks
+			if (futures.isEmpty()) {
+				return null;
+			}
+
+			// Keep workers busy and wait for the chunk
+			Future<List<AfpRecord>> future = futures.removeFirst();
+			submit();
+			try {
+				current = future.get().iterator();
+			} catch (InterruptedException e) {
+				throw new AfpException("Interrupted while parsing chunk", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof AfpException) {
+					throw (AfpException) e.getCause();
+				}
+				throw new AfpException("Failed to parse chunk", e.getCause());
+			}
+		}
+
+		// Return
+		return current.next();
+	}
+
+	/**
+	 * Returns the chunk size.
+	 * 
+	 * @return the chunk size.
+	 */
+	public long getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Returns the number of worker threads.
+	 * 
+	 * @return the number of worker threads.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	// Parses a chunk
+	private List<AfpRecord> parse(int chunk) throws AfpException {
+
+		// Resynchronize chunk boundaries
+		long from = start + chunk * chunkSize;
+		long to = from + chunkSize;
+		if (chunk > 0) {
+			from = resync(channel, from, size, codes);
+		}
+		to = chunk == chunkCount - 1 ? size : resync(channel, to, size, codes);
+
+		// Parse
+		List<AfpRecord> ret = new ArrayList<AfpRecord>();
+		if (from < to) {
+			AfpRecordCursor cursor = new AfpRecordCursor(channel, from, to,
+					getWindowSize());
+			AfpRecord rec = createAfpRecord(cursor);
+			while (rec != null) {
+				ret.add(rec);
+				rec = createAfpRecord(cursor);
+			}
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Parsed chunk " + chunk + " from " + from + " to " + to
+					+ ": " + ret.size() + " records");
+		}
+		return ret;
+	}
+
+	// Resets the state
+	private void reset() {
+
+		// Cancel pending chunks
+		for (Future<List<AfpRecord>> future : futures) {
+			future.cancel(true);
+		}
+		futures.clear();
+		current = null;
+		channel = null;
+
+		// Shut down own executor
+		if (ownExecutor && executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Sets the chunk size for input set hereafter. The size may not be smaller
+	 * than the maximum record size.
+	 * 
+	 * @param chunkSize
+	 *            the chunk size.
+	 * @throws AfpException
+	 *             if the size is too small.
+	 */
+	public void setChunkSize(long chunkSize) throws AfpException {
+		if (chunkSize < AfpRecordCursor.RECORD_MAX) {
+			throw new AfpException("Chunk size must be at least "
+					+ AfpRecordCursor.RECORD_MAX);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets the executor service to parse chunks for input set hereafter. If
+	 * not set, the factory creates one with {@link #getThreads()} threads and
+	 * shuts it down on {@link #close()}.
+	 * 
+	 * @param executor
+	 *            the executor service.
+	 */
+	public void setExecutorService(ExecutorService executor) {
+		reset();
+		this.executor = executor;
+		ownExecutor = false;
+	}
+
+	/**
+	 * Sets the object's input stream. If the input stream is a
+	 * {@link FileInputStream} its channel is parsed in chunks starting at the
+	 * channel's current position. Otherwise the input stream is read as done
+	 * by {@link AfpFactory}.
+	 * 
+	 * @param in
+	 *            the object's input stream.
+	 * @throws AfpException
+	 *             if an AFP exception occurred.
+	 */
+	@Override
+	public void setInputStream(InputStream in) throws AfpException {
+
+		// Reset
+		reset();
+
+		// Read as super class if not a file
+		super.setInputStream(in);
+		if (!(in instanceof FileInputStream)) {
+			return;
+		}
+
+		// Get file range
+		channel = ((FileInputStream) in).getChannel();
+		try {
+			start = channel.position();
+			size = channel.size();
+		} catch (IOException e) {
+			throw new AfpException("Failed to get position and size of file",
+					e);
+		}
+		long chunks = (size - start + chunkSize - 1) / chunkSize;
+		if (chunks > Integer.MAX_VALUE) {
+			throw new AfpException("Too many chunks: " + chunks);
+		}
+		chunkCount = (int) chunks;
+		nextChunk = 0;
+		codes = AfpStructuredFieldDefinitions.instance().getCodes();
+
+		// Make executor
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads);
+			ownExecutor = true;
+		}
+
+		// Submit first chunks
+		for (int i = 0; i < threads * 2; i++) {
+			submit();
+		}
+	}
+
+	/**
+	 * Sets the number of worker threads for input set hereafter. Twice as
+	 * many chunks are parsed ahead of the consumer.
+	 * 
+	 * @param threads
+	 *            the number of worker threads.
+	 * @throws AfpException
+	 *             if the number is smaller than 1.
+	 */
+	public void setThreads(int threads) throws AfpException {
+		if (threads < 1) {
+			throw new AfpException("Number of threads must be at least 1");
+		}
+		this.threads = threads;
+	}
+
+	// Submits the next chunk
+	private void submit() {
+
+		// Return if no more chunks
+		if (nextChunk >= chunkCount) {
+			return;
+		}
+
+		// Submit
+		final int chunk = nextChunk++;
+		futures.add(executor.submit(new Callable<List<AfpRecord>>() {
+			public List<AfpRecord> call() throws Exception {
+				return parse(chunk);
+			}
+		}));
+	}
+}
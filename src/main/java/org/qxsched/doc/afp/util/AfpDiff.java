@@ -0,0 +1,866 @@
+package org.qxsched.doc.afp.util;
+
+import jargs.gnu.CmdLineParser;
+import jargs.gnu.CmdLineParser.IllegalOptionValueException;
+import jargs.gnu.CmdLineParser.UnknownOptionException;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.AfpDigest;
+import org.qxsched.doc.afp.AfpException;
+import org.qxsched.doc.afp.AfpFactory;
+import org.qxsched.doc.afp.AfpReadWriteProperties;
+import org.qxsched.doc.afp.AfpRecord;
+import org.qxsched.doc.afp.AfpRecordGroup;
+import org.qxsched.doc.afp.AfpRecordGrouper;
+import org.qxsched.doc.afp.AfpStructuredFieldDefinitions;
+import org.qxsched.doc.afp.util.AfpDiff.Options.OptionsException;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpDiff} compares two AFP files record by record. Both files
+ * are read in lockstep and only a limited number of pages is held in memory.
+ * Records are equal if their structured field identifiers, flags, reserved
+ * fields, lengths, CR LF flags and data digests are equal. Records with
+ * ignored structured field identifiers, e.g. NOP records holding time stamps,
+ * are skipped on both sides.
+ * 
+ * Pages (BPG..EPG groups) are aligned: if one file has a page where the other
+ * has records outside pages, the latter records are reported as unmatched
+ * and the page is compared with the next page of the other file. The digests
+ * of the page records are computed on {@link #getThreads()} threads. The
+ * comparison stops after {@link #getMaxDifferences()} differences.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpDiff {
+
+	/**
+	 * Contains the default maximum number of differences reported.
+	 */
+	public static final int MAX_DIFFERENCES_DEF = 10;
+
+	private static final int BPG = 0xD3A8AF;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static Logger LOG = Logger.getLogger(AfpDiff.class);
+
+	protected class Options {
+
+		// Private class for illegal options.
+		protected class OptionsException extends Exception {
+
+			private static final long serialVersionUID = -3036580961617457362L;
+
+			public OptionsException(String message) {
+				super(message);
+			}
+		}
+
+		// The command line parser
+		private CmdLineParser cmdLineParser = null;
+
+		// Option -h
+		private boolean help = false;
+		private CmdLineParser.Option help_opt;
+
+		// Option -i
+		private Set<Integer> ignore = new HashSet<Integer>();
+		private CmdLineParser.Option ignore_opt;
+
+		// Option -m
+		private int max_diffs;
+		private CmdLineParser.Option max_diffs_opt;
+
+		// Option --md-alg
+		private String md_alg;
+		private CmdLineParser.Option md_alg_opt;
+
+		// Option -o
+		private String out_file;
+		private CmdLineParser.Option out_file_opt;
+
+		// Option --threads
+		private int threads;
+		private CmdLineParser.Option threads_opt;
+
+		// Value remaining arguments
+		private String[] remainingArgs;
+
+		protected Options(String[] args) throws IllegalOptionValueException,
+				UnknownOptionException, OptionsException, AfpException {
+
+			// Initialize
+			initOptions();
+
+			// Parse the options
+			parseOptions(args);
+		}
+
+		/**
+		 * Returns the structured field identifiers to ignore.
+		 * 
+		 * @return the structured field identifiers to ignore.
+		 */
+		protected Set<Integer> getIgnore() {
+			return ignore;
+		}
+
+		/**
+		 * Returns the maximum number of differences.
+		 * 
+		 * @return the maximum number of differences.
+		 */
+		protected int getMax_diffs() {
+			return max_diffs;
+		}
+
+		/**
+		 * Returns the message digest algorithm.
+		 * 
+		 * @return the message digest algorithm.
+		 */
+		protected String getMd_alg() {
+			return md_alg;
+		}
+
+		/**
+		 * Returns the output file.
+		 * 
+		 * @return the output file.
+		 */
+		protected String getOutFile() {
+			return out_file;
+		}
+
+		/**
+		 * Returns the remaining arguments.
+		 * 
+		 * @return the remaining arguments.
+		 */
+		protected String[] getRemainingArgs() {
+			return remainingArgs;
+		}
+
+		/**
+		 * Returns the number of threads computing digests.
+		 * 
+		 * @return the number of threads computing digests.
+		 */
+		protected int getThreads() {
+			return threads;
+		}
+
+		/**
+		 * Returns the help option.
+		 * 
+		 * @return the help option.
+		 */
+		protected boolean isHelp() {
+			return help;
+		}
+
+		private void initOptions() {
+
+			// Return if cmdLineParser is defined
+			if (cmdLineParser != null)
+				return;
+
+			// Create the command line parser
+			cmdLineParser = new CmdLineParser();
+
+			// Help
+			help_opt = new CmdLineParser.Option.BooleanOption(OPT_HELP_CHR,
+					OPT_HELP_STR);
+			cmdLineParser.addOption(help_opt);
+
+			// Ignore
+			ignore_opt = new CmdLineParser.Option.StringOption(OPT_IGNORE_CHR,
+					OPT_IGNORE_STR);
+			cmdLineParser.addOption(ignore_opt);
+
+			// Maximum differences
+			max_diffs_opt = new CmdLineParser.Option.IntegerOption(
+					OPT_MAX_DIFFS_CHR, OPT_MAX_DIFFS_STR);
+			cmdLineParser.addOption(max_diffs_opt);
+
+			// Message digest algorithm
+			md_alg_opt = new CmdLineParser.Option.StringOption(OPT_MD_ALG_STR);
+			cmdLineParser.addOption(md_alg_opt);
+
+			// Out file
+			out_file_opt = new CmdLineParser.Option.StringOption(
+					OPT_OUT_FILE_CHR, OPT_OUT_FILE_STR);
+			cmdLineParser.addOption(out_file_opt);
+
+			// Threads
+			threads_opt = new CmdLineParser.Option.IntegerOption(
+					OPT_THREADS_STR);
+			cmdLineParser.addOption(threads_opt);
+		}
+
+		private void parseOptions(String args[])
+				throws IllegalOptionValueException, UnknownOptionException,
+				OptionsException, AfpException {
+
+			// Parse the command line
+			cmdLineParser.parse(args);
+
+			// Option -h
+			Boolean boolVal = (Boolean) cmdLineParser.getOptionValue(help_opt);
+			if (boolVal != null) {
+				help = boolVal.booleanValue();
+			}
+
+			// Option -i
+			String valS = (String) cmdLineParser.getOptionValue(ignore_opt);
+			if (valS == null) {
+				valS = OPT_IGNORE_VAL_DEF;
+			}
+			AfpStructuredFieldDefinitions defs = AfpStructuredFieldDefinitions
+					.instance();
+			StringBuffer error = new StringBuffer();
+			String[] valArr = valS.split("\\s*,\\s*");
+			for (int i = 0; i < valArr.length; i++) {
+
+				// Skip empty
+				if (valArr[i].equals("")) {
+					continue;
+				}
+
+				// Get code for abbreviated type
+				Integer code = defs.getCode(valArr[i]);
+				if (code == null) {
+					error.append("Cannot obtain record code for '");
+					error.append(valArr[i]);
+					error.append("'. ");
+					continue;
+				}
+				ignore.add(code);
+			}
+			if (error.length() > 0) {
+				throw new OptionsException(error.toString());
+			}
+
+			// Option -m
+			Integer intVal = (Integer) cmdLineParser
+					.getOptionValue(max_diffs_opt);
+			max_diffs = intVal == null ? MAX_DIFFERENCES_DEF : intVal
+					.intValue();
+			if (max_diffs < 1) {
+				throw new OptionsException(
+						"Maximum number of differences must be at least 1.");
+			}
+
+			// Option --md-alg
+			md_alg = (String) cmdLineParser.getOptionValue(md_alg_opt);
+			if (md_alg == null) {
+				md_alg = AfpDigest.MD5;
+			}
+			try {
+				AfpDigest.digest(md_alg, new byte[0]);
+			} catch (AfpException e) {
+				throw new OptionsException("Unsupported digest algorithm '"
+						+ md_alg + "'.");
+			}
+
+			// Option -o
+			out_file = (String) cmdLineParser.getOptionValue(out_file_opt);
+
+			// Option --threads
+			intVal = (Integer) cmdLineParser.getOptionValue(threads_opt);
+			threads = intVal == null ? 1 : intVal.intValue();
+			if (threads < 1) {
+				throw new OptionsException(
+						"Number of threads must be at least 1.");
+			}
+
+			// Remaining arguments
+			remainingArgs = cmdLineParser.getRemainingArgs();
+			if (!help && remainingArgs.length != 2) {
+				throw new OptionsException(
+						"Two file names must be specified after the options.");
+			}
+		}
+	}
+
+	private static final char OPT_HELP_CHR = 'h';
+	private static final String OPT_HELP_STR = "help";
+
+	private static final char OPT_IGNORE_CHR = 'i';
+	private static final String OPT_IGNORE_STR = "ignore";
+	private static final String OPT_IGNORE_VAL_DEF = "nop";
+
+	private static final char OPT_MAX_DIFFS_CHR = 'm';
+	private static final String OPT_MAX_DIFFS_STR = "max-diffs";
+
+	private static final String OPT_MD_ALG_STR = "md-alg";
+
+	private static final char OPT_OUT_FILE_CHR = 'o';
+	private static final String OPT_OUT_FILE_STR = "out";
+
+	private static final String OPT_THREADS_STR = "threads";
+
+	// Reads items, i.e. pages and records outside pages, from one file
+	private class Side {
+
+		private AfpFactory factory;
+		private AfpRecordGrouper grouper;
+		private AfpRecord next;
+		private long seq;
+
+		public Side(File file) throws AfpException {
+			factory = AfpFactory.createAfpFactory();
+			factory.setAfpReadWriteProperties(props);
+			factory.setInputFile(file);
+			grouper = new AfpRecordGrouper(factory, AfpRecordGrouper
+					.noGroupExcept(BPG));
+		}
+
+		public void close() throws AfpException {
+			factory.close();
+		}
+
+		// Returns the next item without consuming it, skipping ignored records
+		public AfpRecord peek() throws AfpException {
+			while (next == null) {
+				AfpRecord rec = grouper.getAfpRecord();
+				if (rec == null) {
+					return null;
+				}
+				if (!isPage(rec) && ignore.contains(rec.getSFIdentifier())) {
+					seq++;
+					continue;
+				}
+				next = rec;
+			}
+			return next;
+		}
+
+		// Consumes the next item and returns its records
+		public List<AfpRecord> take() throws AfpException {
+			List<AfpRecord> ret = new ArrayList<AfpRecord>();
+			flatten(peek(), ret);
+			next = null;
+			return ret;
+		}
+	}
+
+	// Compares records of both files
+	private class Compare implements Callable<List<String>> {
+
+		private List<AfpRecord> recsA;
+		private List<AfpRecord> recsB;
+		private long seqA;
+		private long seqB;
+
+		public Compare(List<AfpRecord> recsA, long seqA, List<AfpRecord> recsB,
+				long seqB) {
+			this.recsA = recsA;
+			this.seqA = seqA;
+			this.recsB = recsB;
+			this.seqB = seqB;
+		}
+
+		public List<String> call() throws AfpException {
+			List<String> ret = new ArrayList<String>();
+			int i = 0;
+			int j = 0;
+			while (true) {
+
+				// Skip ignored records
+				while (i < recsA.size()
+						&& ignore.contains(recsA.get(i).getSFIdentifier())) {
+					i++;
+				}
+				while (j < recsB.size()
+						&& ignore.contains(recsB.get(j).getSFIdentifier())) {
+					j++;
+				}
+
+				// Report unmatched records
+				boolean hasA = i < recsA.size();
+				boolean hasB = j < recsB.size();
+				if (!hasA && !hasB) {
+					return ret;
+				}
+				if (!hasB) {
+					ret.add("a#" + (seqA + i) + " " + describe(recsA.get(i++))
+							+ " <> b: none");
+					continue;
+				}
+				if (!hasA) {
+					ret.add("a: none <> b#" + (seqB + j) + " "
+							+ describe(recsB.get(j++)));
+					continue;
+				}
+
+				// Compare records, describing them only if different
+				AfpRecord recA = recsA.get(i);
+				AfpRecord recB = recsB.get(j);
+				byte[] digestA = AfpDigest.digest(algorithm, recA.getData());
+				byte[] digestB = AfpDigest.digest(algorithm, recB.getData());
+				if (recA.getSFIdentifier() != recB.getSFIdentifier()
+						|| recA.getLength() != recB.getLength()
+						|| recA.getFlags() != recB.getFlags()
+						|| recA.getReserved() != recB.getReserved()
+						|| recA.isEndsInCrLf() != recB.isEndsInCrLf()
+						|| !Arrays.equals(digestA, digestB)) {
+					ret.add("a#" + (seqA + i) + " " + describe(recA, digestA)
+							+ " <> b#" + (seqB + j) + " "
+							+ describe(recB, digestB));
+				}
+				i++;
+				j++;
+			}
+		}
+	}
+
+	private String algorithm = AfpDigest.MD5;
+	private File fileA;
+	private File fileB;
+	private Set<Integer> ignore = new HashSet<Integer>();
+	private int maxDifferences = MAX_DIFFERENCES_DEF;
+	private Options opts;
+	private AfpReadWriteProperties props;
+	private int threads = 1;
+
+	/**
+	 * Constructor accepting the two files to compare.
+	 * 
+	 * @param fileA
+	 *            the first file.
+	 * @param fileB
+	 *            the second file.
+	 */
+	public AfpDiff(File fileA, File fileB) {
+		this.fileA = fileA;
+		this.fileB = fileB;
+
+		// Read generic records only
+		props = new AfpReadWriteProperties();
+		props.setConvertSpecificNone();
+	}
+
+	// Constructor accepting command line arguments
+	private AfpDiff(String[] args) throws IllegalOptionValueException,
+			UnknownOptionException, OptionsException, AfpException {
+
+		// Make options
+		opts = this.new Options(args);
+		if (opts.isHelp()) {
+			return;
+		}
+
+		// Set up
+		fileA = new File(opts.getRemainingArgs()[0]);
+		fileB = new File(opts.getRemainingArgs()[1]);
+		props = new AfpReadWriteProperties();
+		props.setConvertSpecificNone();
+		ignore.addAll(opts.getIgnore());
+		setDigestAlgorithm(opts.getMd_alg());
+		setMaxDifferences(opts.getMax_diffs());
+		setThreads(opts.getThreads());
+	}
+
+	/**
+	 * Adds a structured field identifier to ignore in both files.
+	 * 
+	 * @param identifier
+	 *            the structured field identifier to ignore.
+	 */
+	public void addIgnore(int identifier) {
+		ignore.add(identifier);
+	}
+
+	// Describes a record by its header fields and the digest of its data
+	private String describe(AfpRecord rec) throws AfpException {
+		return describe(rec, AfpDigest.digest(algorithm, rec.getData()));
+	}
+
+	// Describes a record by its header fields and the supplied digest
+	private String describe(AfpRecord rec, byte[] digest) {
+		StringBuffer sb = new StringBuffer();
+		sb.append(rec.getSFIdentifierAbbrev());
+		sb.append(" length:");
+		sb.append(StringUtils.leftPad(AfpStructuredFieldDefinitions.hexString(
+				rec.getLength(), 4), 4, '0'));
+		sb.append(" flags:");
+		sb.append(StringUtils.leftPad(AfpStructuredFieldDefinitions.hexString(
+				rec.getFlags(), 2), 2, '0'));
+		sb.append(" reserved:");
+		sb.append(StringUtils.leftPad(AfpStructuredFieldDefinitions.hexString(
+				rec.getReserved(), 4), 4, '0'));
+		sb.append(" CRLF:");
+		sb.append(rec.isEndsInCrLf());
+		sb.append(" ");
+		sb.append(algorithm);
+		sb.append(":");
+		for (int i = 0; i < digest.length; i++) {
+			sb.append(HEX[digest[i] >> 4 & 0xf]);
+			sb.append(HEX[digest[i] & 0xf]);
+		}
+		return sb.toString();
+	}
+
+	// Adds the records of the supplied item to the list
+	private static void flatten(AfpRecord rec, List<AfpRecord> list) {
+		if (!(rec instanceof AfpRecordGroup)) {
+			list.add(rec);
+			return;
+		}
+		AfpRecordGroup group = (AfpRecordGroup) rec;
+		list.add(group.getBeginRecord());
+		for (AfpRecord member : group.getMemberList()) {
+			flatten(member, list);
+		}
+		if (group.getEndRecord() != null) {
+			list.add(group.getEndRecord());
+		}
+	}
+
+	/**
+	 * Returns the digest algorithm. See {@link AfpDigest} for the supported
+	 * algorithms.
+	 * 
+	 * @return the digest algorithm.
+	 */
+	public String getDigestAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Returns the maximum number of differences reported.
+	 * 
+	 * @return the maximum number of differences reported.
+	 */
+	public int getMaxDifferences() {
+		return maxDifferences;
+	}
+
+	/**
+	 * Returns the number of threads computing digests.
+	 * 
+	 * @return the number of threads computing digests.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	// Checks if the supplied item is a page
+	private static boolean isPage(AfpRecord rec) {
+		return rec instanceof AfpRecordGroup && rec.getSFIdentifier() == BPG;
+	}
+
+	public static void main(String[] arg) {
+
+		int differences = 0;
+		try {
+
+			// Instantiate
+			AfpDiff afpDiff = new AfpDiff(arg);
+
+			// Usage
+			if (afpDiff.opts.isHelp()) {
+				System.err.print(usage());
+				System.exit(0);
+			}
+
+			// Open output file for writing
+			OutputStream os;
+			if (afpDiff.opts.getOutFile() == null) {
+				os = new BufferedOutputStream(System.out);
+			} else {
+				os = new BufferedOutputStream(new FileOutputStream(afpDiff.opts
+						.getOutFile()));
+			}
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(os));
+
+			// Run
+			try {
+				differences = afpDiff.run(out);
+			} finally {
+				out.close();
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(2);
+		}
+
+		// Exit 1 if files differ
+		System.exit(differences == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Compares the files and writes a line per difference to the supplied
+	 * writer. Each line describes the record of the first file, if any,
+	 * followed by <code>&lt;&gt;</code> and the record of the second file, if
+	 * any. Records are numbered from 0 including ignored records.
+	 * 
+	 * @param out
+	 *            the writer to write the differences to.
+	 * @return the number of differences written.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 * @throws IOException
+	 *             if writing fails.
+	 */
+	public int run(BufferedWriter out) throws AfpException, IOException {
+
+		// Open files
+		Side a = new Side(fileA);
+		Side b = null;
+		ExecutorService executor = null;
+		LinkedList<Future<List<String>>> pending =
+				new LinkedList<Future<List<String>>>();
+		int differences = 0;
+
+		try {
+			b = new Side(fileB);
+			if (threads > 1) {
+				executor = Executors.newFixedThreadPool(threads);
+			}
+
+			// Compare items in lockstep
+			while (differences < maxDifferences) {
+				AfpRecord itemA = a.peek();
+				AfpRecord itemB = b.peek();
+				if (itemA == null && itemB == null) {
+					break;
+				}
+
+				// Align pages, comparing records outside a page with nothing
+				long seqA = a.seq;
+				long seqB = b.seq;
+				List<AfpRecord> recsA = new ArrayList<AfpRecord>();
+				List<AfpRecord> recsB = new ArrayList<AfpRecord>();
+				if (itemA != null && itemB != null
+						&& isPage(itemA) != isPage(itemB)) {
+					if (isPage(itemA)) {
+						recsB = b.take();
+					} else {
+						recsA = a.take();
+					}
+				} else {
+					if (itemA != null) {
+						recsA = a.take();
+					}
+					if (itemB != null) {
+						recsB = b.take();
+					}
+				}
+				a.seq += recsA.size();
+				b.seq += recsB.size();
+
+				// Compare on executor or now
+				Compare compare = new Compare(recsA, seqA, recsB, seqB);
+				if (executor == null) {
+					FutureTask<List<String>> done = new FutureTask<List<String>>(
+							compare);
+					done.run();
+					pending.add(done);
+				} else {
+					pending.add(executor.submit(compare));
+				}
+
+				// Write finished comparisons, waiting if too many in flight
+				while (!pending.isEmpty()
+						&& (pending.getFirst().isDone() || pending
+								.size() > threads * 4)) {
+					differences += write(out, pending.removeFirst(),
+							maxDifferences - differences);
+				}
+			}
+
+			// Write remaining comparisons
+			while (!pending.isEmpty() && differences < maxDifferences) {
+				differences += write(out, pending.removeFirst(), maxDifferences
+						- differences);
+			}
+		} finally {
+
+			// Cancel remaining work
+			for (Future<List<String>> future : pending) {
+				future.cancel(true);
+			}
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+
+			// Close files
+			a.close();
+			if (b != null) {
+				b.close();
+			}
+		}
+
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Found " + differences + " differences");
+		}
+		out.flush();
+		return differences;
+	}
+
+	/**
+	 * Sets the digest algorithm.
+	 * 
+	 * @param algorithm
+	 *            the digest algorithm.
+	 * @throws AfpException
+	 *             if the algorithm is not supported.
+	 */
+	public void setDigestAlgorithm(String algorithm) throws AfpException {
+		AfpDigest.digest(algorithm, new byte[0]);
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Sets the maximum number of differences reported. The comparison stops
+	 * when the maximum is reached.
+	 * 
+	 * @param maxDifferences
+	 *            the maximum number of differences reported.
+	 * @throws AfpException
+	 *             if the number is smaller than 1.
+	 */
+	public void setMaxDifferences(int maxDifferences) throws AfpException {
+		if (maxDifferences < 1) {
+			throw new AfpException(
+					"Maximum number of differences must be at least 1");
+		}
+		this.maxDifferences = maxDifferences;
+	}
+
+	/**
+	 * Sets the number of threads computing digests.
+	 * 
+	 * @param threads
+	 *            the number of threads computing digests.
+	 * @throws AfpException
+	 *             if the number is smaller than 1.
+	 */
+	public void setThreads(int threads) throws AfpException {
+		if (threads < 1) {
+			throw new AfpException("Number of threads must be at least 1");
+		}
+		this.threads = threads;
+	}
+
+	private static String usage() {
+		String nl = System.getProperty("line.separator");
+		StringBuffer sb = new StringBuffer();
+		sb.append(AfpDiff.class.getName());
+		sb.append(" \\");
+		sb.append(nl);
+		sb.append("\t[-");
+		sb.append(OPT_HELP_CHR);
+		sb.append("|--");
+		sb.append(OPT_HELP_STR);
+		sb.append("] \\");
+		sb.append(nl);
+		sb.append("\t[-");
+		sb.append(OPT_IGNORE_CHR);
+		sb.append("|--");
+		sb.append(OPT_IGNORE_STR);
+		sb.append(" [nop...]] \\ # Defaults to '");
+		sb.append(OPT_IGNORE_VAL_DEF);
+		sb.append("'. Supply empty string for none.");
+		sb.append(nl);
+		sb.append("\t[-");
+		sb.append(OPT_MAX_DIFFS_CHR);
+		sb.append("|--");
+		sb.append(OPT_MAX_DIFFS_STR);
+		sb.append(" <n>] \\ # Defaults to '");
+		sb.append(MAX_DIFFERENCES_DEF);
+		sb.append("'.");
+		sb.append(nl);
+		sb.append("\t[--");
+		sb.append(OPT_MD_ALG_STR);
+		sb.append(" <algorithm>] \\ # Defaults to '");
+		sb.append(AfpDigest.MD5);
+		sb.append("'.");
+		sb.append(nl);
+		sb.append("\t[-");
+		sb.append(OPT_OUT_FILE_CHR);
+		sb.append("|--");
+		sb.append(OPT_OUT_FILE_STR);
+		sb.append(" <out-file>] \\");
+		sb.append(nl);
+		sb.append("\t[--");
+		sb.append(OPT_THREADS_STR);
+		sb.append(" <n>] \\ # Defaults to '1'.");
+		sb.append(nl);
+		sb.append("\t<afp-a> <afp-b>");
+		sb.append(nl);
+		return sb.toString();
+	}
+
+	// Waits for a comparison and writes up to the supplied number of lines
+	private static int write(BufferedWriter out, Future<List<String>> future,
+			int max) throws AfpException, IOException {
+
+		// Wait
+		List<String> lines;
+		try {
+			lines = future.get();
+		} catch (InterruptedException e) {
+			throw new AfpException("Interrupted while comparing records", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof AfpException) {
+				throw (AfpException) e.getCause();
+			}
+			throw new AfpException("Failed to compare records", e.getCause());
+		}
+
+		// Write
+		int n = Math.min(max, lines.size());
+		for (int i = 0; i < n; i++) {
+			out.write(lines.get(i));
+			out.newLine();
+		}
+		return n;
+	}
+}
@@ -4,22 +4,34 @@ import jargs.gnu.CmdLineParser;
 import jargs.gnu.CmdLineParser.IllegalOptionValueException;
 import jargs.gnu.CmdLineParser.UnknownOptionException;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.AfpBinaryDumpWriter;
+import org.qxsched.doc.afp.AfpDigest;
+import org.qxsched.doc.afp.AfpDumpWriter;
 import org.qxsched.doc.afp.AfpException;
 import org.qxsched.doc.afp.AfpFactory;
+import org.qxsched.doc.afp.AfpHexFormatter;
+import org.qxsched.doc.afp.AfpJsonDumpWriter;
 import org.qxsched.doc.afp.AfpReadWriteProperties;
 import org.qxsched.doc.afp.AfpRecord;
 import org.qxsched.doc.afp.AfpRecordGrouper;
@@ -91,6 +103,10 @@ public class AfpDump {
 		private Map<Integer, Object> convert_specific;
 		private CmdLineParser.Option convert_specific_opt;
 
+		// Option --format
+		private String format;
+		private CmdLineParser.Option format_opt;
+
 		// Option --group-records
 		private boolean group_records = false;
 		private CmdLineParser.Option group_records_opt;
@@ -99,6 +115,10 @@ public class AfpDump {
 		private boolean help = false;
 		private CmdLineParser.Option help_opt;
 
+		// Option --md-alg
+		private String md_alg;
+		private CmdLineParser.Option md_alg_opt;
+
 		// Option --md-thold
 		private Integer md_thold;
 		private CmdLineParser.Option md_thold_opt;
@@ -111,6 +131,10 @@ public class AfpDump {
 		private String out_file_cs;
 		private CmdLineParser.Option out_file_cs_opt;
 
+		// Option --threads
+		private int threads;
+		private CmdLineParser.Option threads_opt;
+
 		// Value remaining argument
 		private String remainingArg;
 
@@ -135,6 +159,24 @@ public class AfpDump {
 			return convert_specific;
 		}
 
+		/**
+		 * Returns the output format.
+		 * 
+		 * @return the output format.
+		 */
+		protected String getFormat() {
+			return format;
+		}
+
+		/**
+		 * Returns the message digest algorithm.
+		 * 
+		 * @return the message digest algorithm.
+		 */
+		protected String getMd_alg() {
+			return md_alg;
+		}
+
 		/**
 		 * Returns the message digest threshold.
 		 * 
@@ -162,6 +204,15 @@ public class AfpDump {
 			return out_file_cs;
 		}
 
+		/**
+		 * Returns the number of threads formatting records.
+		 * 
+		 * @return the number of threads formatting records.
+		 */
+		protected int getThreads() {
+			return threads;
+		}
+
 		/**
 		 * Returns the remaining argument.
 		 * 
@@ -191,6 +242,16 @@ public class AfpDump {
 			}
 			cmdLineParser.addOption(convert_specific_opt);
 
+			// Format
+			if (OPT_FORMAT_CHR == null) {
+				format_opt = new CmdLineParser.Option.StringOption(
+						OPT_FORMAT_STR);
+			} else {
+				format_opt = new CmdLineParser.Option.StringOption(
+						OPT_FORMAT_CHR.charValue(), OPT_FORMAT_STR);
+			}
+			cmdLineParser.addOption(format_opt);
+
 			// Group records
 			if (OPT_GROUP_RECORDS_CHR == null) {
 				group_records_opt = new CmdLineParser.Option.BooleanOption(
@@ -211,6 +272,16 @@ public class AfpDump {
 			}
 			cmdLineParser.addOption(help_opt);
 
+			// Message digest algorithm
+			if (OPT_MD_ALG_CHR == null) {
+				md_alg_opt = new CmdLineParser.Option.StringOption(
+						OPT_MD_ALG_STR);
+			} else {
+				md_alg_opt = new CmdLineParser.Option.StringOption(
+						OPT_MD_ALG_CHR.charValue(), OPT_MD_ALG_STR);
+			}
+			cmdLineParser.addOption(md_alg_opt);
+
 			// Message digest threshold
 			if (OPT_MD_THOLD_CHR == null) {
 				md_thold_opt = new CmdLineParser.Option.IntegerOption(
@@ -241,6 +312,16 @@ public class AfpDump {
 			}
 			cmdLineParser.addOption(out_file_cs_opt);
 
+			// Threads
+			if (OPT_THREADS_CHR == null) {
+				threads_opt = new CmdLineParser.Option.IntegerOption(
+						OPT_THREADS_STR);
+			} else {
+				threads_opt = new CmdLineParser.Option.IntegerOption(
+						OPT_THREADS_CHR.charValue(), OPT_THREADS_STR);
+			}
+			cmdLineParser.addOption(threads_opt);
+
 		}
 
 		/**
@@ -317,6 +398,17 @@ public class AfpDump {
 				}
 			}
 
+			// Option --format
+			format = (String) cmdLineParser.getOptionValue(format_opt);
+			if (format == null) {
+				format = OPT_FORMAT_VAL_DEF;
+			} else if (!format.equals(FORMAT_TEXT)
+					&& !format.equals(FORMAT_JSONL)
+					&& !format.equals(FORMAT_BINARY)) {
+				throw new OptionsException("Unsupported format '" + format
+						+ "'.");
+			}
+
 			// Option --group-records
 			Boolean boolVal = (Boolean) cmdLineParser
 					.getOptionValue(group_records_opt);
@@ -330,6 +422,18 @@ public class AfpDump {
 				help = boolVal.booleanValue();
 			}
 
+			// Option --md-alg
+			md_alg = (String) cmdLineParser.getOptionValue(md_alg_opt);
+			if (md_alg == null) {
+				md_alg = OPT_MD_ALG_VAL_DEF;
+			}
+			try {
+				AfpDigest.digest(md_alg, new byte[0]);
+			} catch (AfpException e) {
+				throw new OptionsException("Unsupported digest algorithm '"
+						+ md_alg + "'.");
+			}
+
 			// Option --md-thold
 			md_thold = (Integer) cmdLineParser.getOptionValue(md_thold_opt);
 			if (md_thold == null) {
@@ -345,6 +449,19 @@ public class AfpDump {
 			out_file_cs = (String) cmdLineParser
 					.getOptionValue(out_file_cs_opt);
 
+			// Option --threads
+			Integer intVal = (Integer) cmdLineParser.getOptionValue(threads_opt);
+			threads = intVal == null ? OPT_THREADS_VAL_DEF : intVal.intValue();
+			if (threads < 1) {
+				throw new OptionsException(
+						"Number of threads must be at least 1.");
+			}
+			if (threads > 1 && !format.equals(FORMAT_TEXT)) {
+				throw new OptionsException("Option --" + OPT_THREADS_STR
+						+ " is only supported with format '" + FORMAT_TEXT
+						+ "'.");
+			}
+
 			// Remaining arguments
 			String[] remainingArgs = cmdLineParser.getRemainingArgs();
 			switch (remainingArgs.length) {
@@ -369,12 +486,24 @@ public class AfpDump {
 	private static final String OPT_CONVERT_SPECIFIC_STR = "convert-specific";
 	private static final String OPT_CONVERT_SPECIFIC_VAL_DEF = "nop";
 
+	private static final String FORMAT_BINARY = "binary";
+	private static final String FORMAT_JSONL = "jsonl";
+	private static final String FORMAT_TEXT = "text";
+
+	private static final Character OPT_FORMAT_CHR = null;
+	private static final String OPT_FORMAT_STR = "format";
+	private static final String OPT_FORMAT_VAL_DEF = FORMAT_TEXT;
+
 	private static final Character OPT_GROUP_RECORDS_CHR = new Character('g');
 	private static final String OPT_GROUP_RECORDS_STR = "group-records";
 
 	private static final Character OPT_HELP_CHR = new Character('h');
 	private static final String OPT_HELP_STR = "help";
 
+	private static final Character OPT_MD_ALG_CHR = null;
+	private static final String OPT_MD_ALG_STR = "md-alg";
+	private static final String OPT_MD_ALG_VAL_DEF = AfpDigest.MD5;
+
 	private static final Character OPT_MD_THOLD_CHR = null;
 	private static final String OPT_MD_THOLD_STR = "md-thold";
 	private static final int OPT_MD_THOLD_VAL_DEF = 0;
@@ -385,6 +514,13 @@ public class AfpDump {
 	private static final Character OPT_OUT_FILE_CS_CHR = null;
 	private static final String OPT_OUT_FILE_CS_STR = "out-cs";
 
+	private static final Character OPT_THREADS_CHR = null;
+	private static final String OPT_THREADS_STR = "threads";
+	private static final int OPT_THREADS_VAL_DEF = 1;
+
+	// Number of records formatted per task
+	private static final int BATCH_SIZE = 256;
+
 	public static void main(String[] arg) {
 
 		try {
@@ -430,6 +566,28 @@ public class AfpDump {
 		sb.append("'. Supply empty string for none.");
 		sb.append(System.getProperty("line.separator"));
 
+		// OPT_FORMAT
+		sb.append("\t");
+		sb.append("[");
+		if (OPT_FORMAT_CHR != null) {
+			sb.append("-");
+			sb.append(OPT_FORMAT_CHR);
+			sb.append("|");
+		}
+		sb.append("--");
+		sb.append(OPT_FORMAT_STR);
+		sb.append(" <format>]");
+		sb.append(" \\ # Defaults to '");
+		sb.append(OPT_FORMAT_VAL_DEF);
+		sb.append("'. One of ");
+		sb.append(FORMAT_TEXT);
+		sb.append(", ");
+		sb.append(FORMAT_JSONL);
+		sb.append(" or ");
+		sb.append(FORMAT_BINARY);
+		sb.append(".");
+		sb.append(System.getProperty("line.separator"));
+
 		// OPT_GROUP_RECORDS
 		sb.append("\t");
 		sb.append("[");
@@ -458,6 +616,30 @@ public class AfpDump {
 		sb.append(" \\");
 		sb.append(System.getProperty("line.separator"));
 
+		// OPT_MD_ALG
+		sb.append("\t");
+		sb.append("[");
+		if (OPT_MD_ALG_CHR != null) {
+			sb.append("-");
+			sb.append(OPT_MD_ALG_CHR);
+			sb.append("|");
+		}
+		sb.append("--");
+		sb.append(OPT_MD_ALG_STR);
+		sb.append(" <algorithm>]");
+		sb.append(" \\ # Defaults to '");
+		sb.append(OPT_MD_ALG_VAL_DEF);
+		sb.append("'. One of ");
+		sb.append(AfpDigest.MD5);
+		sb.append(", ");
+		sb.append(AfpDigest.SHA1);
+		sb.append(", ");
+		sb.append(AfpDigest.CRC32);
+		sb.append(", ");
+		sb.append(AfpDigest.FNV64);
+		sb.append(" or another MessageDigest algorithm.");
+		sb.append(System.getProperty("line.separator"));
+
 		// OPT_MD_THOLD
 		sb.append("\t");
 		sb.append("[");
@@ -502,6 +684,24 @@ public class AfpDump {
 		sb.append(" \\");
 		sb.append(System.getProperty("line.separator"));
 
+		// OPT_THREADS
+		sb.append("\t");
+		sb.append("[");
+		if (OPT_THREADS_CHR != null) {
+			sb.append("-");
+			sb.append(OPT_THREADS_CHR);
+			sb.append("|");
+		}
+		sb.append("--");
+		sb.append(OPT_THREADS_STR);
+		sb.append(" <n>]");
+		sb.append(" \\ # Defaults to '");
+		sb.append(OPT_THREADS_VAL_DEF);
+		sb.append("'. Records are formatted on n threads. Format '");
+		sb.append(FORMAT_TEXT);
+		sb.append("' only.");
+		sb.append(System.getProperty("line.separator"));
+
 		// In-File
 		sb.append("\t[in-file]");
 		sb.append(System.getProperty("line.separator"));
@@ -522,6 +722,9 @@ public class AfpDump {
 	// Output file
 	private BufferedWriter out;
 
+	// Machine readable output
+	private AfpDumpWriter dumpWriter;
+
 	public AfpDump(String[] args) throws IllegalOptionValueException,
 			UnknownOptionException, OptionsException, AfpException {
 
@@ -532,24 +735,25 @@ public class AfpDump {
 		makeAfpReadWriteProperties();
 	}
 
-	private void filesClose() throws IOException {
-		in.close();
-		out.close();
+	private void filesClose() throws IOException, AfpException {
+		if (in != null) {
+			in.close();
+		}
+		if (dumpWriter != null) {
+			dumpWriter.close();
+		} else {
+			out.close();
+		}
 	}
 
 	private void filesOpen() throws IOException {
 
-		// Open input file for reading
+		// Open STDIN for reading. Input files are opened by the AfpFactory.
 		if (opts.getRemainingArg() == null) {
 			if (LOG.isDebugEnabled()) {
 				LOG.debug("Using STDIN as input");
 			}
-			in = new BufferedInputStream(System.in);
-		} else {
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Using " + opts.getRemainingArg() + " as input");
-			}
-			in = new BufferedInputStream(new FileInputStream(opts.getRemainingArg()));
+			in = System.in;
 		}
 
 		// Open output file for writing
@@ -562,9 +766,22 @@ public class AfpDump {
 						.getOutFile()));
 			}
 		} catch (IOException e) {
-			in.close();
+			if (in != null) {
+				in.close();
+			}
 			throw e;
 		}
+
+		// Make machine readable output
+		if (opts.getFormat().equals(FORMAT_JSONL)) {
+			dumpWriter = new AfpJsonDumpWriter(os, arwProps);
+			return;
+		} else if (opts.getFormat().equals(FORMAT_BINARY)) {
+			dumpWriter = new AfpBinaryDumpWriter(os, arwProps);
+			return;
+		}
+
+		// Make text output
 		String cs = opts.getOutFileCs();
 		if (cs == null) {
 			out = new BufferedWriter(new OutputStreamWriter(
@@ -593,6 +810,9 @@ public class AfpDump {
 			}
 		}
 
+		// Message digest algorithm
+		arwProps.setMessageDigestAlgorithm(opts.getMd_alg());
+
 		// Message digest threshold
 		if (opts.getMd_thold() != null) {
 			arwProps.setMessageDigestThreshold(opts.getMd_thold().intValue());
@@ -610,16 +830,49 @@ public class AfpDump {
 		// Open files
 		filesOpen();
 
+		// Create AfpFactory
+		AfpFactory fact = null;
+
 		try {
 
 			// Create AfpFactory
-			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact = AfpFactory.createAfpFactory();
 			fact.setAfpReadWriteProperties(arwProps);
 
-			// Set input stream
-			fact.setInputStream(in);
+			// Set input file or stream
+			if (in == null) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Using " + opts.getRemainingArg() + " as input");
+				}
+				fact.setInputFile(new File(opts.getRemainingArg()));
+			} else {
+				fact.setInputStream(in);
+			}
+
+			if (dumpWriter != null) {
+
+				// Write machine readable records, converting TLE records with
+				// the factory
+				dumpWriter.setAfpFactory(fact);
+				AfpRecordGrouper grouper = null;
+				if (opts.isGroup_records()) {
+					grouper = new AfpRecordGrouper(fact);
+				}
+				for (AfpRecord rec = nextRecord(fact, grouper); rec != null; rec = nextRecord(
+						fact, grouper)) {
+					dumpWriter.write(rec);
+				}
+
+			} else if (opts.getThreads() > 1) {
+
+				// Format records on threads
+				AfpRecordGrouper grouper = null;
+				if (opts.isGroup_records()) {
+					grouper = new AfpRecordGrouper(fact);
+				}
+				writeParallel(fact, grouper);
 
-			if (opts.isGroup_records()) {
+			} else if (opts.isGroup_records()) {
 
 				AfpRecordGrouper grouper = new AfpRecordGrouper(fact);
 
@@ -642,61 +895,118 @@ public class AfpDump {
 			}
 		} finally {
 			// Close files
+			if (fact != null) {
+				fact.close();
+			}
 			filesClose();
 		}
 	}
 
-	public static void dumpData(BufferedWriter out,
-			AfpReadWriteProperties props, String label, String prefix,
-			byte[] data) throws IOException {
+	// Formats records on a pool of threads and writes them in original order
+	private void writeParallel(AfpFactory fact, AfpRecordGrouper grouper)
+			throws AfpException, IOException {
+
+		// Make executor and reorder buffer
+		int threads = opts.getThreads();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
 
-		// Loop
-		for (int i = 0; i < data.length;) {
+		try {
+
+			// Read input until finished and submit batches
+			List<AfpRecord> batch = new ArrayList<AfpRecord>(BATCH_SIZE);
+			AfpRecord rec = nextRecord(fact, grouper);
+			while (rec != null) {
+				batch.add(rec);
+				rec = nextRecord(fact, grouper);
+				if (batch.size() < BATCH_SIZE && rec != null) {
+					continue;
+				}
 
-			int iStart = i;
-			out.write(prefix);
-			out.write("    ");
-			out.write(label);
+				// Wait for the oldest batch if too many in flight
+				if (pending.size() >= threads * 4) {
+					writeFormatted(pending.removeFirst());
+				}
 
-			for (int j = i; j < data.length && j < iStart + 16; j++) {
-				i++;
+				// Submit batch
+				pending.add(executor.submit(new Formatter(batch)));
+				batch = new ArrayList<AfpRecord>(BATCH_SIZE);
+			}
 
-				int val = data[j] & 0xff;
-				out.write(StringUtils.leftPad(Integer.toString(val, 16)
-						.toLowerCase(), 2, '0'));
-				out.write(" ");
+			// Write remaining batches
+			while (!pending.isEmpty()) {
+				writeFormatted(pending.removeFirst());
+			}
+		} finally {
 
+			// Cancel remaining work on failure
+			for (Future<String> future : pending) {
+				future.cancel(true);
 			}
-			out.newLine();
+			executor.shutdownNow();
 		}
 	}
 
-	public static void dumpData(StringBuffer sb, AfpReadWriteProperties props,
-			String label, String prefix, byte[] data, boolean doLastNl) {
+	// Reads the next record from the grouper if set or else from the factory
+	private static AfpRecord nextRecord(AfpFactory fact,
+			AfpRecordGrouper grouper) throws AfpException {
+		if (grouper == null) {
+			return fact.createAfpRecord();
+		}
+		return grouper.getAfpRecord();
+	}
 
-		// Loop
-		for (int i = 0; i < data.length;) {
+	// Waits for a formatted batch and writes it
+	private void writeFormatted(Future<String> future) throws AfpException,
+			IOException {
+		try {
+			out.write(future.get());
+		} catch (InterruptedException e) {
+			throw new AfpException("Interrupted while formatting records", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof AfpException) {
+				throw (AfpException) e.getCause();
+			}
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new AfpException("Failed to format records", e.getCause());
+		}
+	}
 
-			int iStart = i;
-			sb.append(prefix);
-			sb.append("    ");
-			sb.append(label);
+	// Formats a batch of records
+	private class Formatter implements Callable<String> {
 
-			for (int j = i; j < data.length && j < iStart + 16; j++) {
-				i++;
+		private List<AfpRecord> batch;
 
-				int val = data[j] & 0xff;
-				sb.append(StringUtils.leftPad(Integer.toString(val, 16)
-						.toLowerCase(), 2, '0'));
-				sb.append(" ");
+		public Formatter(List<AfpRecord> batch) {
+			this.batch = batch;
+		}
 
+		public String call() throws AfpException, IOException {
+			StringWriter sw = new StringWriter();
+			BufferedWriter bw = new BufferedWriter(sw);
+			for (AfpRecord rec : batch) {
+				rec.write(bw, arwProps, 0);
 			}
-			if (doLastNl) {
-				sb.append(System.getProperty("line.separator"));
-			}
+			bw.flush();
+			return sw.toString();
 		}
 	}
 
+	public static void dumpData(BufferedWriter out,
+			AfpReadWriteProperties props, String label, String prefix,
+			byte[] data) throws IOException {
+		String head = prefix + "    " + label;
+		AfpHexFormatter.write(out, head, head, data);
+	}
+
+	public static void dumpData(StringBuffer sb, AfpReadWriteProperties props,
+			String label, String prefix, byte[] data, boolean doLastNl) {
+		String head = prefix + "    " + label;
+		AfpHexFormatter.append(sb, head, head, data, doLastNl);
+	}
+
 	public static String dumpData(AfpReadWriteProperties props, String label,
 			String prefix, byte[] data, boolean doLastNl) {
 		StringBuffer sb = new StringBuffer();
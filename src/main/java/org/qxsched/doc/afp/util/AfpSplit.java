@@ -1,10 +1,8 @@
 package org.qxsched.doc.afp.util;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.zip.ZipEntry;
@@ -97,9 +95,6 @@ public class AfpSplit {
 			entryPre = arg[2];
 		}
 
-		// Open AFP file for reading
-		InputStream in = new BufferedInputStream(new FileInputStream(fnIn));
-
 		// Open output file for writing records
 		ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(
 				new FileOutputStream(fnOut)));
@@ -108,8 +103,8 @@ public class AfpSplit {
 		AfpFactory fact = AfpFactory.createAfpFactory();
 		fact.setAfpReadWriteProperties(props);
 
-		// Set input stream
-		fact.setInputStream(in);
+		// Open AFP file for reading
+		fact.setInputFile(new File(fnIn));
 		long i = 0;
 		for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
 				.createAfpRecord()) {
@@ -147,7 +142,7 @@ public class AfpSplit {
 		}
 
 		// Close files
-		in.close();
+		fact.close();
 		out.close();
 	}
 
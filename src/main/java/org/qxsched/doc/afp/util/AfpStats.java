@@ -0,0 +1,383 @@
+package org.qxsched.doc.afp.util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+
+import org.qxsched.doc.afp.AfpEventHandler;
+import org.qxsched.doc.afp.AfpEventParser;
+import org.qxsched.doc.afp.AfpException;
+import org.qxsched.doc.afp.AfpRecordCursor;
+import org.qxsched.doc.afp.AfpStructuredFieldDefinitions;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpStats} collects statistics of an AFP stream in a single
+ * sequential read: the number of records, the total and maximum data bytes
+ * per structured field identifier, the number of pages and documents and the
+ * largest pages. The records are read with an {@link AfpEventParser}, so no
+ * record objects are created, and the numbers are kept in arrays indexed by
+ * structured field identifier.
+ * 
+ * The statistics are written as tab separated values. Each line starts with
+ * its kind:
+ * 
+ * <pre>
+ * sfid   identifier  abbreviation  count  bytes  max-bytes  description
+ * total  records|bytes|pages|documents  value
+ * page   page-number  records  bytes
+ * </pre>
+ * 
+ * Page numbers start at 0 and bytes are data bytes, i.e. without the record
+ * header, carriage control and CR LF.
+ * 
+ * @author Vincenzo Zocca
+ * 
+ */
+public class AfpStats implements AfpEventHandler {
+
+	/**
+	 * Contains the default number of largest pages kept.
+	 */
+	public static final int LARGEST_PAGES_DEF = 10;
+
+	private static final int BDT = 0xD3A8A8;
+	private static final int BPG = 0xD3A8AF;
+	private static final int EPG = 0xD3A9AF;
+
+	// Counters indexed by the type and category bytes of D3 identifiers. The
+	// last index holds other identifiers.
+	private static final int OTHER = 0x10000;
+
+	private long[] bytes = new long[OTHER + 1];
+	private long[] count = new long[OTHER + 1];
+	private int[] max = new int[OTHER + 1];
+
+	private long documents;
+	private boolean inPage;
+	private long pageBytes;
+	private long pageRecords;
+	private long pages;
+	private long records;
+	private long totalBytes;
+
+	// Largest pages, descending by bytes
+	private long[] topBytes;
+	private long[] topPage;
+	private long[] topRecords;
+	private int topSize;
+
+	/**
+	 * Constructor keeping the {@link #LARGEST_PAGES_DEF} largest pages.
+	 */
+	public AfpStats() {
+		this(LARGEST_PAGES_DEF);
+	}
+
+	/**
+	 * Constructor accepting the number of largest pages to keep.
+	 * 
+	 * @param largestPages
+	 *            the number of largest pages to keep.
+	 */
+	public AfpStats(int largestPages) {
+		topBytes = new long[largestPages];
+		topPage = new long[largestPages];
+		topRecords = new long[largestPages];
+	}
+
+	// Counts a record
+	private void count(int sfid, int len) {
+		int idx = index(sfid);
+		count[idx]++;
+		bytes[idx] += len;
+		if (len > max[idx]) {
+			max[idx] = len;
+		}
+		records++;
+		totalBytes += len;
+		if (inPage) {
+			pageRecords++;
+			pageBytes += len;
+		}
+	}
+
+	/**
+	 * Returns the total data bytes of records with the supplied structured
+	 * field identifier.
+	 * 
+	 * @param sfid
+	 *            the structured field identifier.
+	 * @return the total data bytes.
+	 */
+	public long getBytes(int sfid) {
+		return bytes[index(sfid)];
+	}
+
+	/**
+	 * Returns the number of records with the supplied structured field
+	 * identifier.
+	 * 
+	 * @param sfid
+	 *            the structured field identifier.
+	 * @return the number of records.
+	 */
+	public long getCount(int sfid) {
+		return count[index(sfid)];
+	}
+
+	/**
+	 * Returns the number of documents (BDT records).
+	 * 
+	 * @return the number of documents.
+	 */
+	public long getDocumentCount() {
+		return documents;
+	}
+
+	/**
+	 * Returns the page numbers of the largest pages, largest first.
+	 * 
+	 * @return the page numbers of the largest pages.
+	 */
+	public long[] getLargestPages() {
+		long[] ret = new long[topSize];
+		System.arraycopy(topPage, 0, ret, 0, topSize);
+		return ret;
+	}
+
+	/**
+	 * Returns the maximum data bytes of records with the supplied structured
+	 * field identifier.
+	 * 
+	 * @param sfid
+	 *            the structured field identifier.
+	 * @return the maximum data bytes.
+	 */
+	public int getMaxBytes(int sfid) {
+		return max[index(sfid)];
+	}
+
+	/**
+	 * Returns the number of pages (BPG records).
+	 * 
+	 * @return the number of pages.
+	 */
+	public long getPageCount() {
+		return pages;
+	}
+
+	/**
+	 * Returns the number of records.
+	 * 
+	 * @return the number of records.
+	 */
+	public long getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Returns the total data bytes.
+	 * 
+	 * @return the total data bytes.
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	// Returns the counter index of the supplied identifier
+	private static int index(int sfid) {
+		return sfid >> 16 == 0xD3 ? sfid & 0xffff : OTHER;
+	}
+
+	public static void main(String[] arg) {
+
+		try {
+
+			// Run
+			run(arg);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		// Exit OK
+		System.exit(0);
+	}
+
+	public void onGroupBegin(int sfid, ByteBuffer buffer, int off, int len)
+			throws AfpException {
+
+		// Begin document or page
+		if (sfid == BDT) {
+			documents++;
+		} else if (sfid == BPG) {
+			inPage = true;
+			pageRecords = 0;
+			pageBytes = 0;
+		}
+		count(sfid, len);
+	}
+
+	public void onGroupEnd(int sfid, ByteBuffer buffer, int off, int len)
+			throws AfpException {
+
+		// End page
+		count(sfid, len);
+		if (sfid == EPG && inPage) {
+			inPage = false;
+			rank(pages++, pageRecords, pageBytes);
+		}
+	}
+
+	public void onRecord(int sfid, ByteBuffer buffer, int off, int len)
+			throws AfpException {
+		count(sfid, len);
+	}
+
+	// Keeps the page if it is among the largest pages
+	private void rank(long page, long pageRecords, long pageBytes) {
+
+		// Find position
+		int pos = topSize;
+		while (pos > 0 && topBytes[pos - 1] < pageBytes) {
+			pos--;
+		}
+		if (pos == topBytes.length) {
+			return;
+		}
+
+		// Insert
+		int move = Math.min(topSize, topBytes.length - 1) - pos;
+		System.arraycopy(topBytes, pos, topBytes, pos + 1, move);
+		System.arraycopy(topPage, pos, topPage, pos + 1, move);
+		System.arraycopy(topRecords, pos, topRecords, pos + 1, move);
+		topBytes[pos] = pageBytes;
+		topPage[pos] = page;
+		topRecords[pos] = pageRecords;
+		if (topSize < topBytes.length) {
+			topSize++;
+		}
+	}
+
+	public static void run(String[] arg) throws Exception {
+
+		// Check arguments
+		if (arg.length < 1 || arg.length > 2) {
+			throw new Exception("Usage error: " + usage());
+		}
+
+		// Make statistics
+		AfpStats stats = arg.length > 1 ? new AfpStats(Integer
+				.parseInt(arg[1])) : new AfpStats();
+
+		// Parse from file or STDIN
+		if (arg[0].equals("-")) {
+			new AfpEventParser(new AfpRecordCursor(System.in)).parse(stats);
+		} else {
+			AfpEventParser.parse(new File(arg[0]), stats);
+		}
+
+		// Write
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+				new BufferedOutputStream(System.out)));
+		stats.write(out);
+		out.close();
+	}
+
+	private static String usage() {
+		return AfpStats.class.getName() + " <afp-in>|- [largest-pages]";
+	}
+
+	/**
+	 * Writes the statistics as tab separated values.
+	 * 
+	 * @param out
+	 *            the writer to write to.
+	 * @throws IOException
+	 *             if writing fails.
+	 * @throws AfpException
+	 *             if an AFP exception occurs.
+	 */
+	public void write(BufferedWriter out) throws IOException, AfpException {
+
+		// Write counters per identifier
+		AfpStructuredFieldDefinitions defs = AfpStructuredFieldDefinitions
+				.instance();
+		for (int idx = 0; idx <= OTHER; idx++) {
+			if (count[idx] == 0) {
+				continue;
+			}
+			int sfid = 0xD30000 | idx;
+			String abbrev = idx == OTHER ? null : defs.getAbbreviation(sfid);
+			String desc = idx == OTHER ? null : defs.getDescription(sfid);
+			out.write("sfid\t");
+			out.write(idx == OTHER ? "other" : AfpStructuredFieldDefinitions
+					.hexString(sfid, 6));
+			out.write("\t");
+			out.write(abbrev == null ? "" : abbrev);
+			out.write("\t");
+			out.write(Long.toString(count[idx]));
+			out.write("\t");
+			out.write(Long.toString(bytes[idx]));
+			out.write("\t");
+			out.write(Integer.toString(max[idx]));
+			out.write("\t");
+			out.write(desc == null ? "" : desc);
+			out.newLine();
+		}
+
+		// Write totals
+		writeTotal(out, "records", records);
+		writeTotal(out, "bytes", totalBytes);
+		writeTotal(out, "pages", pages);
+		writeTotal(out, "documents", documents);
+
+		// Write largest pages
+		for (int i = 0; i < topSize; i++) {
+			out.write("page\t");
+			out.write(Long.toString(topPage[i]));
+			out.write("\t");
+			out.write(Long.toString(topRecords[i]));
+			out.write("\t");
+			out.write(Long.toString(topBytes[i]));
+			out.newLine();
+		}
+		out.flush();
+	}
+
+	// Writes a total line
+	private static void writeTotal(BufferedWriter out, String name, long value)
+			throws IOException {
+		out.write("total\t");
+		out.write(name);
+		out.write("\t");
+		out.write(Long.toString(value));
+		out.newLine();
+	}
+}
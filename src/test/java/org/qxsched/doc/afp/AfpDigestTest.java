@@ -0,0 +1,77 @@
+package org.qxsched.doc.afp;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+public class AfpDigestTest extends TestCase {
+
+	// Returns the bytes of a hexadecimal string
+	private static byte[] hex(String str) {
+		byte[] ret = new byte[str.length() / 2];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = (byte) Integer.parseInt(str.substring(i * 2, i * 2 + 2),
+					16);
+		}
+		return ret;
+	}
+
+	public void testDigest() {
+
+		try {
+
+			// Known values, computed twice to use the cached objects
+			byte[] abc = "abc".getBytes("US-ASCII");
+			byte[] check = "123456789".getBytes("US-ASCII");
+			for (int i = 0; i < 2; i++) {
+				assertTrue(Arrays.equals(hex("900150983cd24fb0d6963f7d28e17f72"),
+						AfpDigest.digest(AfpDigest.MD5, abc)));
+				assertTrue(Arrays.equals(
+						hex("a9993e364706816aba3e25717850c26c9cd0d89d"),
+						AfpDigest.digest(AfpDigest.SHA1, abc)));
+				assertTrue(Arrays.equals(hex("cbf43926"), AfpDigest.digest(
+						AfpDigest.CRC32, check)));
+				assertTrue(Arrays.equals(hex("e71fa2190541574b"), AfpDigest
+						.digest(AfpDigest.FNV64, abc)));
+				assertTrue(Arrays.equals(hex("cbf29ce484222325"), AfpDigest
+						.digest(AfpDigest.FNV64, new byte[0])));
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	public void testUnsupported() {
+
+		try {
+			AfpDigest.digest("NO-SUCH-DIGEST", new byte[0]);
+			fail("Expected exception for unsupported algorithm");
+		} catch (AfpException e) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package org.qxsched.doc.afp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+public class AfpDumpWriterTest extends TestCase {
+
+	private static final int TLE = 0xD3A090;
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	// Dumps the sample with the supplied writer, returns the record count
+	private static int dump(AfpDumpWriter writer, AfpReadWriteProperties props)
+			throws AfpException {
+		AfpFactory fact = AfpFactory.createAfpFactory();
+		fact.setAfpReadWriteProperties(props);
+		fact.setInputFile(sample1In);
+		AfpRecordGrouper grouper = new AfpRecordGrouper(fact);
+		int ret = 0;
+		for (AfpRecord rec = grouper.getAfpRecord(); rec != null; rec = grouper
+				.getAfpRecord()) {
+			writer.write(rec);
+			ret++;
+		}
+		fact.close();
+		writer.close();
+		return ret;
+	}
+
+	public void testBinary() {
+
+		try {
+
+			// Dump with digests of long data
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setMessageDigestThreshold(32);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			dump(new AfpBinaryDumpWriter(out, props), props);
+
+			// Read entries
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					out.toByteArray()));
+			long offset = 0;
+			int records = 0;
+			int tles = 0;
+			while (in.available() > 0) {
+				int size = in.readInt();
+				assertEquals(offset, in.readLong());
+				int sfid = in.readInt();
+				in.readUnsignedByte();
+				in.readUnsignedShort();
+				int length = in.readUnsignedShort();
+				int bits = in.readUnsignedByte();
+				in.skipBytes(size - 18);
+				offset += 1 + length
+						+ ((bits & AfpBinaryDumpWriter.BIT_CRLF) != 0 ? 2 : 0);
+				if ((bits & AfpBinaryDumpWriter.BIT_TLE) != 0) {
+					assertEquals(TLE, sfid);
+					tles++;
+				}
+				if (length - 8 > 32) {
+					assertTrue((bits & AfpBinaryDumpWriter.BIT_DIGEST) != 0);
+				}
+				records++;
+			}
+			assertEquals(272, records);
+			assertEquals(44, tles);
+			assertEquals(sample1In.length(), offset);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	public void testJson() {
+
+		try {
+
+			// Dump
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			dump(new AfpJsonDumpWriter(out, props), props);
+			String[] lines = new String(out.toByteArray(), "UTF-8").split("\n");
+			assertEquals(272, lines.length);
+			assertTrue(lines[0].startsWith("{\"offset\":0,\"sfid\":\"0x"));
+			int tles = 0;
+			for (int i = 0; i < lines.length; i++) {
+				assertTrue(lines[i].endsWith("}"));
+				if (lines[i].indexOf("\"abbrev\":\"TLE\"") > -1) {
+					assertTrue(lines[i].indexOf("\"attName\":\"") > -1);
+					tles++;
+				}
+			}
+			assertEquals(44, tles);
+
+			// Escape strings
+			out = new ByteArrayOutputStream();
+			AfpJsonDumpWriter writer = new AfpJsonDumpWriter(out, props);
+			writer.write(AfpEditor.tle("a\"b", "c\\d"));
+			writer.close();
+			String line = new String(out.toByteArray(), "UTF-8");
+			assertTrue(line.indexOf("\"attName\":\"a\\\"b\"") > -1);
+			assertTrue(line.indexOf("\"attVal\":\"c\\\\d\"") > -1);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}
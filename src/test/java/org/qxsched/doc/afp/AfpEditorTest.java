@@ -0,0 +1,158 @@
+package org.qxsched.doc.afp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.qxsched.doc.afp.impl.AfpRecordTLE;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpEditorTest} tests class {@link AfpEditor}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpEditorTest extends TestCase {
+
+	private static final int BPG = 0xD3A8AF;
+
+	private static final int EDT = 0xD3A9A8;
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	private static File sample1Out = new File(
+			"target/test-classes/sample1-editor.afp");
+
+	// Makes an editor inserting a TLE after pages and a NOP before EDT
+	private static AfpEditor editor() throws AfpException {
+		AfpEditor editor = new AfpEditor();
+		editor.insertAfter(BPG, new AfpInsertion() {
+			public AfpRecord[] insert(AfpRecord rec, long seq)
+					throws AfpException {
+				return new AfpRecord[] { AfpEditor.tle("page", "" + (seq + 1)) };
+			}
+		});
+		editor.insertBefore(EDT, AfpEditor.constant(AfpEditor.nop("end")));
+		return editor;
+	}
+
+	// Edits the sample with the supplied executor
+	private static byte[] edit(ExecutorService executor) throws Exception {
+		AfpReadWriteProperties props = new AfpReadWriteProperties();
+		props.setConvertSpecificNone();
+		AfpFactory fact = AfpFactory.createAfpFactory();
+		fact.setAfpReadWriteProperties(props);
+		fact.setInputFile(sample1In);
+		AfpEditor editor = editor();
+		editor.setExecutorService(executor);
+		editor.setMaxInFlight(3);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(3, editor.run(fact, new AfpWriter(out)));
+		fact.close();
+		return out.toByteArray();
+	}
+
+	public void test1() {
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+
+			// Edit sequentially and in parallel
+			byte[] seq = edit(null);
+			byte[] par = edit(executor);
+			assertTrue(Arrays.equals(seq, par));
+
+			// Edit through channels
+			FileInputStream in = new FileInputStream(sample1In);
+			FileOutputStream out = new FileOutputStream(sample1Out);
+			assertEquals(3, editor().run(in.getChannel(), out.getChannel()));
+			in.close();
+			out.close();
+			assertTrue(Arrays.equals(seq, FileBytes.read(sample1Out)));
+
+			// Check the inserted TLE records
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(sample1Out);
+			boolean afterPage = false;
+			int pages = 0;
+			for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+					.createAfpRecord()) {
+				if (afterPage) {
+					AfpRecordTLE tle = (AfpRecordTLE) rec;
+					assertEquals("page", tle.getAttName());
+					assertEquals("" + pages, tle.getAttVal());
+				}
+				afterPage = rec.getSFIdentifier() == BPG;
+				if (afterPage) {
+					pages++;
+				}
+			}
+			fact.close();
+			assertEquals(2, pages);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			executor.shutdown();
+			sample1Out.delete();
+		}
+	}
+
+	public void testCrLf() {
+
+		try {
+
+			// Insert a shared record ending in CR LF
+			AfpRecord nop = AfpEditor.nop("end");
+			nop.setEndsInCrLf(true);
+			AfpEditor editor = new AfpEditor();
+			editor.insertBefore(EDT, AfpEditor.constant(nop));
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(sample1In);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertEquals(1, editor.run(fact, new AfpWriter(out)));
+			fact.close();
+
+			// Inserted without CR LF, the shared record unchanged
+			assertEquals(sample1In.length() + 12, out.size());
+			assertTrue(nop.isEndsInCrLf());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}
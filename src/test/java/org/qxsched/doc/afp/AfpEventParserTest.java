@@ -0,0 +1,115 @@
+package org.qxsched.doc.afp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpEventParserTest} tests class {@link AfpEventParser}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpEventParserTest extends TestCase {
+
+	private static Logger LOG = Logger.getLogger(AfpEventParserTest.class);
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	// Counts events
+	private static class Counter implements AfpEventHandler {
+
+		private int depth;
+		private int documents;
+		private int pages;
+		private int records;
+		private long size;
+		private int tles;
+
+		public void onGroupBegin(int sfid, ByteBuffer buffer, int off, int len) {
+			depth++;
+			records++;
+			size += len;
+			if (sfid == 0xD3A8A8) {
+				documents++;
+			} else if (sfid == 0xD3A8AF) {
+				pages++;
+			}
+		}
+
+		public void onGroupEnd(int sfid, ByteBuffer buffer, int off, int len) {
+			depth--;
+			records++;
+			size += len;
+		}
+
+		public void onRecord(int sfid, ByteBuffer buffer, int off, int len) {
+			records++;
+			size += len;
+			if (sfid == 0xD3A090) {
+				tles++;
+			}
+		}
+	}
+
+	public void test1() {
+
+		InputStream in = null;
+		try {
+
+			// Parse file mapped
+			Counter mapped = new Counter();
+			assertEquals(272, AfpEventParser.parse(sample1In, mapped));
+			assertEquals(272, mapped.records);
+			assertEquals(0, mapped.depth);
+			assertEquals(1, mapped.documents);
+			assertEquals(2, mapped.pages);
+			assertEquals(44, mapped.tles);
+
+			// Parse stream
+			in = new FileInputStream(sample1In);
+			Counter streamed = new Counter();
+			new AfpEventParser(new AfpRecordCursor(in)).parse(streamed);
+			assertEquals(mapped.records, streamed.records);
+			assertEquals(mapped.size, streamed.size);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			try {
+				if (in != null) {
+					in.close();
+				}
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package org.qxsched.doc.afp;
+
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.lang.StringUtils;
+import org.qxsched.doc.afp.util.AfpDump;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpHexFormatterTest} tests class {@link AfpHexFormatter}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpHexFormatterTest extends TestCase {
+
+	private static final String NL = System.getProperty("line.separator");
+
+	// Formats as done before the formatter existed
+	private static String reference(String first, String next, byte[] data) {
+		StringBuffer sb = new StringBuffer();
+		for (int i = 0; i < data.length;) {
+			int iStart = i;
+			sb.append(i == 0 ? first : next);
+			for (int j = i; j < data.length && j < iStart + 16; j++) {
+				i++;
+				int val = data[j] & 0xff;
+				sb.append(StringUtils.leftPad(Integer.toString(val, 16)
+						.toLowerCase(), 2, '0'));
+				sb.append(" ");
+			}
+			sb.append(NL);
+		}
+		return sb.toString();
+	}
+
+	public void test1() {
+
+		try {
+
+			// All byte values and line lengths
+			byte[] all = new byte[256 + 7];
+			for (int i = 0; i < all.length; i++) {
+				all[i] = (byte) i;
+			}
+			for (int len = 0; len <= all.length; len += 1 + len / 8) {
+				byte[] data = new byte[len];
+				System.arraycopy(all, 0, data, 0, len);
+
+				// Dump
+				StringWriter sw = new StringWriter();
+				BufferedWriter out = new BufferedWriter(sw);
+				AfpDump.dumpData(out, null, "MD5: ", " ", data);
+				out.flush();
+				assertEquals(reference("     MD5: ", "     MD5: ", data), sw
+						.toString());
+				assertEquals(reference("    ", "    ", data), AfpDump
+						.dumpData(null, "", "", data, true));
+
+				// Triplet
+				if (len < 3 || len > 255) {
+					continue;
+				}
+				data[0] = (byte) len;
+				sw = new StringWriter();
+				out = new BufferedWriter(sw);
+				new GenericAfpTriplet(data).write(out, null, "  ");
+				out.flush();
+				assertEquals(reference("    TRP ", "        ", data), sw
+						.toString());
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}
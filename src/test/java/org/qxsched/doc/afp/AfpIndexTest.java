@@ -0,0 +1,161 @@
+package org.qxsched.doc.afp;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpIndexTest} tests class {@link AfpIndex}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpIndexTest extends TestCase {
+
+	@SuppressWarnings("unused")
+	private static Logger LOG = Logger.getLogger(AfpIndexTest.class);
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	public void test1() {
+
+		try {
+
+			// Build and write sidecar
+			File indexFile = AfpIndex.getIndexFile(sample1In);
+			indexFile.delete();
+			AfpIndex index = AfpIndex.open(sample1In);
+			assertTrue("Expected index file", indexFile.exists());
+			assertTrue(index.isValidFor(sample1In));
+
+			// Check records
+			assertEquals(272, index.getRecordCount());
+			assertEquals(2, index.getPageCount());
+			assertEquals(1, index.getDocumentCount());
+			long size = 0;
+			for (int i = 0; i < index.getRecordCount(); i++) {
+				assertEquals(size, index.getOffset(i));
+				size += index.getSize(i);
+			}
+			assertEquals(sample1In.length(), size);
+
+			// Read sidecar and compare
+			AfpIndex read = AfpIndex.read(indexFile);
+			assertEquals(index.getRecordCount(), read.getRecordCount());
+			for (int i = 0; i < index.getRecordCount(); i++) {
+				assertEquals(index.getOffset(i), read.getOffset(i));
+				assertEquals(index.getLength(i), read.getLength(i));
+				assertEquals(index.getSFIdentifier(i), read
+						.getSFIdentifier(i));
+			}
+			for (int i = 0; i < index.getPageCount(); i++) {
+				assertEquals(index.getPageBegin(i), read.getPageBegin(i));
+				assertEquals(index.getPageEnd(i), read.getPageEnd(i));
+			}
+			assertEquals(index.getDocumentBegin(0), read.getDocumentBegin(0));
+			assertEquals(index.getDocumentEnd(0), read.getDocumentEnd(0));
+
+			// Read pages
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			RandomAccessFile raf = new RandomAccessFile(sample1In, "r");
+			try {
+				for (int i = index.getPageCount() - 1; i >= 0; i--) {
+					List<AfpRecord> recs = index.readRecords(raf, index
+							.getPageBegin(i), index.getPageEnd(i), props);
+					assertEquals(index.getPageEnd(i) - index.getPageBegin(i)
+							+ 1, recs.size());
+					assertEquals(0xD3A8AF, recs.get(0).getSFIdentifier());
+					assertEquals(0xD3A9AF, recs.get(recs.size() - 1)
+							.getSFIdentifier());
+				}
+			} finally {
+				raf.close();
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	public void testCorrupt() {
+
+		File indexFile = AfpIndex.getIndexFile(sample1In);
+		try {
+
+			// Sidecar with huge and negative record counts
+			indexFile.delete();
+			AfpIndex.open(sample1In);
+			int[] counts = { Integer.MAX_VALUE, -1 };
+			for (int count : counts) {
+				RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+				raf.seek(24);
+				raf.writeInt(count);
+				raf.close();
+				try {
+					AfpIndex.read(indexFile);
+					fail("Expected exception for count " + count);
+				} catch (AfpException e) {
+					// Expected
+				}
+
+				// Rebuilt on open
+				assertEquals(272, AfpIndex.open(sample1In).getRecordCount());
+				assertEquals(272, AfpIndex.read(indexFile).getRecordCount());
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			indexFile.delete();
+		}
+	}
+
+		public void testUnwritable() {
+
+		// Directory in place of the sidecar
+		File indexFile = AfpIndex.getIndexFile(sample1In);
+		indexFile.delete();
+		assertTrue(indexFile.mkdir());
+		try {
+
+			// Index built but not written
+			AfpIndex index = AfpIndex.open(sample1In);
+			assertEquals(272, index.getRecordCount());
+			assertTrue(indexFile.isDirectory());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			indexFile.delete();
+		}
+	}
+}
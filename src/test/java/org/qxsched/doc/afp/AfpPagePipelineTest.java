@@ -0,0 +1,95 @@
+package org.qxsched.doc.afp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpPagePipelineTest} tests class {@link AfpPagePipeline}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpPagePipelineTest extends TestCase {
+
+	@SuppressWarnings("unused")
+	private static Logger LOG = Logger.getLogger(AfpPagePipelineTest.class);
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	public void test1() {
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+
+			// Props
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+
+			// Make pipeline with identity transformer
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(sample1In);
+			AfpPagePipeline pipeline = new AfpPagePipeline(fact,
+					new AfpPageTransformer() {
+						public AfpRecord transform(AfpRecordGroup page)
+								throws AfpException {
+							Thread.yield();
+							return page;
+						}
+					}, executor);
+			pipeline.setAfpReadWriteProperties(props);
+			pipeline.setMaxInFlight(2);
+
+			// Run
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertEquals(2, pipeline.run(out));
+			fact.close();
+
+			// Compare with input
+			byte[] exp = new byte[(int) sample1In.length()];
+			FileInputStream in = new FileInputStream(sample1In);
+			int read = 0;
+			while (read < exp.length) {
+				read += in.read(exp, read, exp.length - read);
+			}
+			in.close();
+			assertTrue("Expected identical output", Arrays.equals(exp, out
+					.toByteArray()));
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
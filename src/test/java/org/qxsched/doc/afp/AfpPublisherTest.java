@@ -0,0 +1,185 @@
+package org.qxsched.doc.afp;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpPublisherTest} tests class {@link AfpPublisher}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpPublisherTest extends TestCase {
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	// Requests one record at a time and cancels after a maximum
+	private static class Counter<T extends AfpRecord> implements
+			AfpSubscriber<T> {
+
+		private volatile boolean completed;
+		private volatile int count;
+		private CountDownLatch done = new CountDownLatch(1);
+		private volatile Throwable error;
+		private int max;
+		private AfpSubscription subscription;
+
+		public Counter(int max) {
+			this.max = max;
+		}
+
+		public void onComplete() {
+			completed = true;
+			done.countDown();
+		}
+
+		public void onError(Throwable throwable) {
+			error = throwable;
+			done.countDown();
+		}
+
+		public void onNext(T record) {
+			count++;
+			if (count == max) {
+				subscription.cancel();
+				done.countDown();
+			} else {
+				subscription.request(1);
+			}
+		}
+
+		public void onSubscribe(AfpSubscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+	}
+
+	// Makes a factory on the sample file
+	private static AfpFactory factory() throws AfpException {
+		AfpReadWriteProperties props = new AfpReadWriteProperties();
+		props.setConvertSpecificNone();
+		AfpFactory fact = AfpFactory.createAfpFactory();
+		fact.setAfpReadWriteProperties(props);
+		fact.setInputFile(sample1In);
+		return fact;
+	}
+
+	public void test1() {
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+
+			// All records
+			AfpFactory fact = factory();
+			Counter<AfpRecord> records = new Counter<AfpRecord>(-1);
+			AfpPublisher.records(fact, executor).subscribe(records);
+			assertTrue(records.done.await(30, TimeUnit.SECONDS));
+			assertNull(records.error);
+			assertTrue(records.completed);
+			assertEquals(272, records.count);
+			fact.close();
+
+			// Pages
+			fact = factory();
+			Counter<AfpRecordGroup> pages = new Counter<AfpRecordGroup>(-1);
+			AfpPublisher.pages(fact, executor).subscribe(pages);
+			assertTrue(pages.done.await(30, TimeUnit.SECONDS));
+			assertNull(pages.error);
+			assertEquals(2, pages.count);
+			fact.close();
+
+			// Cancel after some records, no more delivered
+			fact = factory();
+			Counter<AfpRecord> some = new Counter<AfpRecord>(5);
+			AfpPublisher<AfpRecord> pub = AfpPublisher.records(fact, executor);
+			pub.subscribe(some);
+			assertTrue(some.done.await(30, TimeUnit.SECONDS));
+			Thread.sleep(100);
+			assertEquals(5, some.count);
+			assertFalse(some.completed);
+
+			// Second subscriber is rejected
+			Counter<AfpRecord> second = new Counter<AfpRecord>(-1);
+			pub.subscribe(second);
+			assertTrue(second.error instanceof IllegalStateException);
+			fact.close();
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testErrors() {
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+
+			// Non-positive first request is signalled as error
+			AfpFactory fact = factory();
+			Counter<AfpRecord> zero = new Counter<AfpRecord>(-1) {
+				@Override
+				public void onSubscribe(AfpSubscription subscription) {
+					subscription.request(0);
+				}
+			};
+			AfpPublisher.records(fact, executor).subscribe(zero);
+			assertTrue(zero.done.await(30, TimeUnit.SECONDS));
+			assertTrue(zero.error instanceof IllegalArgumentException);
+			assertFalse(zero.completed);
+			fact.close();
+
+			// Throwing subscriber is signalled as error
+			fact = factory();
+			Counter<AfpRecord> thrower = new Counter<AfpRecord>(-1) {
+				@Override
+				public void onNext(AfpRecord record) {
+					super.onNext(record);
+					if (record.getSFIdentifier() != 0) {
+						throw new IllegalStateException("Subscriber failed");
+					}
+				}
+			};
+			AfpPublisher.records(fact, executor).subscribe(thrower);
+			assertTrue(thrower.done.await(30, TimeUnit.SECONDS));
+			assertTrue(thrower.error instanceof IllegalStateException);
+			Thread.sleep(100);
+			assertEquals(1, thrower.count);
+			fact.close();
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package org.qxsched.doc.afp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpRecordCursorTest} tests class {@link AfpRecordCursor}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpRecordCursorTest extends TestCase {
+
+	private static Logger LOG = Logger.getLogger(AfpRecordCursorTest.class);
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+	private static File sample1CrLf = new File(sample1In.getPath()
+			+ ".crlf.afp");
+
+	// Compares all records from the cursor with the records from a factory
+	private void compare(AfpRecordCursor cursor, boolean readData)
+			throws Exception {
+		compare(sample1In, cursor, readData);
+	}
+
+	// Compares all records from the cursor with the records from a factory
+	private void compare(File file, AfpRecordCursor cursor, boolean readData)
+			throws Exception {
+
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+
+			// Make factory
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputStream(in);
+
+			// Compare
+			long offset = 0;
+			for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+					.createAfpRecord()) {
+
+				assertTrue("Expected cursor record", cursor.next());
+				assertEquals(offset, cursor.getOffset());
+				assertEquals(rec.getSFIdentifier(), cursor.getSFIdentifier());
+				assertEquals(rec.getLength(), cursor.getLength());
+				assertEquals(rec.getFlags(), cursor.getFlags());
+				assertEquals(rec.getReserved(), cursor.getReserved());
+				assertEquals(rec.getData().length, cursor.getDataLength());
+
+				// Compare data in buffer
+				if (readData) {
+					ByteBuffer buff = cursor.getBuffer().duplicate();
+					buff.position(cursor.getDataPosition());
+					buff.limit(cursor.getDataPosition()
+							+ cursor.getDataLength());
+					assertEquals(ByteBuffer.wrap(rec.getData()), buff);
+					assertEquals(rec.isEndsInCrLf(), cursor.isEndsInCrLf());
+					offset = cursor.getEndOffset();
+				} else {
+					offset += 1 + rec.getLength()
+							+ (rec.isEndsInCrLf() ? 2 : 0);
+				}
+			}
+			assertFalse("Expected no more cursor records", cursor.next());
+			assertFalse("Expected no more cursor records", cursor.next());
+		} finally {
+			in.close();
+		}
+	}
+
+	public void testChannel() {
+
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(sample1In);
+			compare(new AfpRecordCursor(in.getChannel(), 0, sample1In
+					.length(), AfpRecordCursor.RECORD_MAX), true);
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+			fail(e.getMessage());
+		} finally {
+			close(in);
+		}
+	}
+
+	public void testCrLf() {
+
+		FileInputStream in = null;
+		try {
+
+			// Write sample with CR LF after every record
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(sample1In);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+					sample1CrLf));
+			for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+					.createAfpRecord()) {
+				rec.setEndsInCrLf(true);
+				rec.write(out, props);
+			}
+			out.close();
+			fact.close();
+
+			// Compare stream and channel
+			in = new FileInputStream(sample1CrLf);
+			compare(sample1CrLf, new AfpRecordCursor(in,
+					AfpRecordCursor.RECORD_MAX), false);
+			in.close();
+			in = new FileInputStream(sample1CrLf);
+			compare(sample1CrLf, new AfpRecordCursor(in.getChannel()), true);
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+			fail(e.getMessage());
+		} finally {
+			close(in);
+		}
+	}
+
+	public void testStream() {
+
+		InputStream in = null;
+		try {
+
+			// Short reads to test buffer refills
+			in = new FilterInputStream(new FileInputStream(sample1In)) {
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					return super.read(b, off, Math.min(len, 1000));
+				}
+			};
+			compare(new AfpRecordCursor(in, AfpRecordCursor.RECORD_MAX), true);
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+			fail(e.getMessage());
+		} finally {
+			close(in);
+		}
+	}
+
+	public void testStreamSkip() {
+
+		InputStream in = null;
+		try {
+			in = new FileInputStream(sample1In);
+			compare(new AfpRecordCursor(in, AfpRecordCursor.RECORD_MAX), false);
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+			fail(e.getMessage());
+		} finally {
+			close(in);
+		}
+	}
+
+	private void close(InputStream in) {
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+}
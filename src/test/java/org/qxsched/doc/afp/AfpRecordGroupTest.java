@@ -0,0 +1,115 @@
+package org.qxsched.doc.afp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpRecordGroupTest} tests class {@link AfpRecordGroup}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpRecordGroupTest extends TestCase {
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	public void test1() {
+
+		try {
+
+			// Group records
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(sample1In);
+			AfpRecordGrouper grouper = new AfpRecordGrouper(fact);
+			List<AfpRecord> recs = new ArrayList<AfpRecord>();
+			for (AfpRecord rec = grouper.getAfpRecord(); rec != null; rec = grouper
+					.getAfpRecord()) {
+				recs.add(rec);
+			}
+			fact.close();
+
+			// Freeze groups
+			long size = 0;
+			int groups = 0;
+			for (AfpRecord rec : recs) {
+				if (rec instanceof AfpRecordGroup) {
+					AfpRecordGroup group = (AfpRecordGroup) rec;
+					long groupSize = group.getSerializedSize();
+					group.freeze();
+					assertTrue(group.isFrozen());
+					assertEquals(groupSize, group.getSerializedSize());
+					assertEquals(groupSize, group.getFrozenBuffer().remaining());
+					size += groupSize;
+					groups++;
+				} else {
+					size += 1 + rec.getLength() + (rec.isEndsInCrLf() ? 2 : 0);
+				}
+			}
+			assertTrue("Expected groups", groups > 0);
+			assertEquals(sample1In.length(), size);
+
+			// Write twice through stream and writer
+			byte[] expect = FileBytes.read(sample1In);
+			for (int i = 0; i < 2; i++) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				for (AfpRecord rec : recs) {
+					rec.write(out, props);
+				}
+				assertTrue(Arrays.equals(expect, out.toByteArray()));
+				out = new ByteArrayOutputStream();
+				AfpWriter writer = new AfpWriter(out, 1000);
+				for (AfpRecord rec : recs) {
+					writer.write(rec);
+				}
+				writer.flush();
+				assertTrue(Arrays.equals(expect, out.toByteArray()));
+			}
+
+			// Frozen groups take no members
+			for (AfpRecord rec : recs) {
+				if (rec instanceof AfpRecordGroup) {
+					try {
+						((AfpRecordGroup) rec).addMember(rec);
+						fail("Expected exception adding to frozen group");
+					} catch (IllegalStateException e) {
+						// Expected
+					}
+					break;
+				}
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}
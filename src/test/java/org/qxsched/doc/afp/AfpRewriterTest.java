@@ -0,0 +1,128 @@
+package org.qxsched.doc.afp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpRewriterTest} tests class {@link AfpRewriter}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpRewriterTest extends TestCase {
+
+	private static final int BPG = 0xD3A8AF;
+
+	private static final int NOP = 0xD3EEEE;
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	private static File sample1Out = new File(
+			"target/test-classes/sample1-rewriter.afp");
+
+	// Inserts a NOP record before pages
+	private static class NopInserter implements AfpRewriteHandler {
+
+		private boolean insert;
+
+		public NopInserter(boolean insert) {
+			this.insert = insert;
+		}
+
+		public boolean accept(AfpRecordCursor cursor) {
+			return insert && cursor.getSFIdentifier() == BPG;
+		}
+
+		public void rewrite(AfpRecord rec, AfpWriter writer)
+				throws AfpException {
+			GenericAfpRecord nop = new GenericAfpRecord(NOP, 0, 0, "page"
+					.getBytes());
+			nop.setEndsInCrLf(rec.isEndsInCrLf());
+			writer.write(nop);
+			writer.write(rec);
+		}
+	}
+
+	// Counts the NOP records of the output file
+	private static int countNops() throws AfpException, IOException {
+		int ret = 0;
+		FileInputStream in = new FileInputStream(sample1Out);
+		try {
+			AfpRecordCursor cursor = new AfpRecordCursor(in.getChannel());
+			while (cursor.next()) {
+				if (cursor.getSFIdentifier() == NOP) {
+					ret++;
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return ret;
+	}
+
+	// Rewrites the sample file to the output file
+	private static AfpRewriter rewrite(boolean insert) throws AfpException,
+			IOException {
+		FileInputStream in = new FileInputStream(sample1In);
+		FileOutputStream out = new FileOutputStream(sample1Out);
+		try {
+			AfpRewriter ret = new AfpRewriter(in.getChannel(),
+					new NopInserter(insert));
+			ret.run(out.getChannel());
+			return ret;
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	public void test1() {
+
+		try {
+
+			// Copy all records
+			AfpRewriter rewriter = rewrite(false);
+			int nops = countNops();
+			assertEquals(sample1In.length(), sample1Out.length());
+			assertEquals(sample1In.length(), rewriter.getCopiedBytes());
+			assertEquals(0, rewriter.getRewrittenRecords());
+
+			// Insert NOP before pages
+			rewriter = rewrite(true);
+			assertEquals(nops + 2, countNops());
+			assertEquals(2, rewriter.getRewrittenRecords());
+			assertTrue(sample1Out.length() > sample1In.length());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			sample1Out.delete();
+		}
+	}
+}
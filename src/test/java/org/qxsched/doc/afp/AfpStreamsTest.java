@@ -0,0 +1,107 @@
+package org.qxsched.doc.afp;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpStreamsTest} tests class {@link AfpStreams}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpStreamsTest extends TestCase {
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	public void test1() {
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+
+			// Count records in one go
+			int cnt = 0;
+			for (@SuppressWarnings("unused")
+			AfpRecord rec : AfpStreams.records(sample1In)) {
+				cnt++;
+			}
+			assertEquals(272, cnt);
+
+			// Count records and pages of ranges in parallel
+			final AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			long[] bounds = AfpStreams.splitRecords(sample1In, 4);
+			assertTrue("Expected several ranges", bounds.length > 2);
+			assertEquals(272, count(executor, bounds, props, false));
+			bounds = AfpStreams.splitPages(sample1In, 4);
+			assertEquals(3, bounds.length);
+			assertEquals(2, count(executor, bounds, props, true));
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// Counts the records or pages of all ranges on the executor
+	private static int count(ExecutorService executor, long[] bounds,
+			final AfpReadWriteProperties props, final boolean pages)
+			throws Exception {
+
+		// Submit
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < bounds.length - 1; i++) {
+			final long start = bounds[i];
+			final long end = bounds[i + 1];
+			futures.add(executor.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					int cnt = 0;
+					Iterable<? extends AfpRecord> it = pages ? AfpStreams
+							.pages(sample1In, start, end, props) : AfpStreams
+							.records(sample1In, start, end, props);
+					for (@SuppressWarnings("unused")
+					AfpRecord rec : it) {
+						cnt++;
+					}
+					return cnt;
+				}
+			}));
+		}
+
+		// Sum
+		int ret = 0;
+		for (Future<Integer> future : futures) {
+			ret += future.get();
+		}
+		return ret;
+	}
+}
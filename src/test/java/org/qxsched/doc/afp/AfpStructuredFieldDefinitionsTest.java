@@ -71,4 +71,36 @@ public class AfpStructuredFieldDefinitionsTest extends TestCase {
 			fail(e.getMessage());
 		}
 	}
-}
\ No newline at end of file
+
+	public void test2() {
+
+		try {
+
+			// Get instance
+			AfpStructuredFieldDefinitions instance = AfpStructuredFieldDefinitions
+					.instance();
+
+			// Primitive lookups must match boxed lookups
+			for (int i = -1; i <= 0x10000; i++) {
+				int code = i < 0 ? 0xD4A8AF : 0xD30000 + i;
+				Integer codeObj = code;
+				assertEquals(instance.getAbbreviation(codeObj), instance
+						.getAbbreviation(code));
+				assertEquals(instance.getDescription(codeObj), instance
+						.getDescription(code));
+				assertEquals(instance.isGroupBegin(codeObj).booleanValue(),
+						instance.isGroupBegin(code));
+				assertEquals(instance.isGroupEnd(codeObj).booleanValue(),
+						instance.isGroupEnd(code));
+				Integer codeEnd = instance.getGroupEnd(codeObj);
+				assertEquals(codeEnd == null ? -1 : codeEnd.intValue(),
+						instance.getGroupEndCode(code));
+			}
+			assertEquals(0xD3A9AF, instance.getGroupEndCode(0xD3A8AF));
+
+		} catch (AfpException e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.qxsched.doc.afp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.qxsched.doc.afp.impl.MappedAfpFactory;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpWriterTest} tests class {@link AfpWriter}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpWriterTest extends TestCase {
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	private static File sample1Out = new File(
+			"target/test-classes/sample1-writer.afp");
+
+	// Writes all records of the supplied factory
+	private static void write(AfpFactory fact, AfpWriter writer, boolean group)
+			throws AfpException {
+		if (group) {
+			AfpRecordGrouper grouper = new AfpRecordGrouper(fact);
+			for (AfpRecord rec = grouper.getAfpRecord(); rec != null; rec = grouper
+					.getAfpRecord()) {
+				writer.write(rec);
+			}
+		} else {
+			for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+					.createAfpRecord()) {
+				writer.write(rec);
+			}
+		}
+		fact.close();
+	}
+
+	public void test1() {
+
+		try {
+
+			// Props
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			byte[] expect = FileBytes.read(sample1In);
+
+			// Mapped records to file channel, small batch to gather often
+			MappedAfpFactory mapped = new MappedAfpFactory();
+			mapped.setAfpReadWriteProperties(props);
+			mapped.setInputFile(sample1In);
+			AfpWriter writer = new AfpWriter(new FileOutputStream(sample1Out),
+					1000);
+			write(mapped, writer, false);
+			writer.close();
+			assertTrue(Arrays.equals(expect, FileBytes.read(sample1Out)));
+
+			// Grouped stream records to stream
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(sample1In);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			writer = new AfpWriter(out, 1000);
+			write(fact, writer, true);
+			writer.flush();
+			assertTrue(Arrays.equals(expect, out.toByteArray()));
+
+			// Specific records with default batch
+			props.setConvertSpecificAll();
+			fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(sample1In);
+			out = new ByteArrayOutputStream();
+			writer = new AfpWriter(out);
+			write(fact, writer, false);
+			writer.flush();
+			assertTrue(Arrays.equals(expect, out.toByteArray()));
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			sample1Out.delete();
+		}
+	}
+
+	public void testLargeRecord() {
+
+		try {
+
+			// Record larger than the batch
+			final byte[] data = new byte[2000];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = (byte) i;
+			}
+			GenericAfpRecord rec = new GenericAfpRecord(0xD3EEEE, 0, 0, data);
+			rec.setEndsInCrLf(true);
+			ByteArrayOutputStream expect = new ByteArrayOutputStream();
+			rec.write(expect, null);
+
+			// Write to stream, the data straight from the record
+			final boolean[] direct = new boolean[1];
+			ByteArrayOutputStream out = new ByteArrayOutputStream() {
+				@Override
+				public synchronized void write(byte[] b, int off, int len) {
+					direct[0] |= b == data;
+					super.write(b, off, len);
+				}
+			};
+			AfpWriter writer = new AfpWriter(out, 1000);
+			writer.write(rec);
+			writer.write(rec);
+			writer.flush();
+			assertTrue(direct[0]);
+			byte[] once = expect.toByteArray();
+			expect.write(once);
+			assertTrue(Arrays.equals(expect.toByteArray(), out.toByteArray()));
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package org.qxsched.doc.afp;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link FileBytes} is a test utility reading the bytes of files.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class FileBytes {
+
+	/**
+	 * Returns the bytes of the supplied file.
+	 * 
+	 * @param file
+	 *            the file to read.
+	 * @return the bytes of the file.
+	 * @throws IOException
+	 *             if the file is shorter than its length or reading fails.
+	 */
+	public static byte[] read(File file) throws IOException {
+		byte[] ret = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int n = 0;
+			while (n < ret.length) {
+				int got = in.read(ret, n, ret.length - n);
+				if (got < 0) {
+					throw new EOFException("Unexpected end of file " + file
+							+ " after " + n + " bytes");
+				}
+				n += got;
+			}
+		} finally {
+			in.close();
+		}
+		return ret;
+	}
+}
@@ -96,4 +96,47 @@ public class GenericAfpRecordTest extends TestCase {
 			fail(e.getMessage());
 		}
 	}
-}
\ No newline at end of file
+
+	public void test2() {
+
+		try {
+
+			// Props reading TLE data only
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setReadDataNone();
+			props.setReadData(0xD3A090);
+
+			// Open sample input file for reading
+			PushbackInputStream in = new PushbackInputStream(
+					new BufferedInputStream(new FileInputStream(sample1In)));
+
+			// Read input until finished
+			long size = 0;
+			int cntTle = 0;
+			while (in.available() > 0) {
+
+				// Read record
+				GenericAfpRecord rec = new GenericAfpRecord(in, props);
+				size += 1 + rec.getLength() + (rec.isEndsInCrLf() ? 2 : 0);
+
+				// Check data
+				if (rec.getSFIdentifier() == 0xD3A090) {
+					assertFalse("Expected TLE data", rec.isDataSkipped());
+					assertEquals(rec.getLength() - 8, rec.getData().length);
+					cntTle++;
+				} else {
+					assertTrue("Expected skipped data", rec.isDataSkipped());
+				}
+			}
+			in.close();
+
+			// Check
+			assertEquals(44, cntTle);
+			assertEquals(sample1In.length(), size);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package org.qxsched.doc.afp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link RandomAccessAfpReaderTest} tests class
+ * {@link RandomAccessAfpReader}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class RandomAccessAfpReaderTest extends TestCase {
+
+	private static Logger LOG = Logger
+			.getLogger(RandomAccessAfpReaderTest.class);
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	public void test1() {
+
+		RandomAccessAfpReader reader = null;
+		RandomAccessFile raf = null;
+		try {
+
+			// Props
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+
+			// Open reader
+			AfpIndex index = AfpIndex.build(sample1In);
+			reader = new RandomAccessAfpReader(sample1In, index, props);
+			assertEquals(2, reader.getPageCount());
+			raf = new RandomAccessFile(sample1In, "r");
+
+			// Document prolog
+			List<AfpRecord> prolog = reader.getDocumentProlog(0);
+			assertEquals(0xD3A8A8, prolog.get(0).getSFIdentifier());
+
+			// Read pages in reverse order
+			for (int i = reader.getPageCount() - 1; i >= 0; i--) {
+				AfpRecordGroup page = reader.getPage(i);
+				assertEquals(0xD3A8AF, page.getSFIdentifier());
+				assertEquals(0, reader.getPageDocument(i));
+
+				// Written page must equal file bytes
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				page.write(out, props);
+				byte[] exp = index.readBytes(raf, index.getPageBegin(i), index
+						.getPageEnd(i));
+				assertTrue("Expected equal bytes for page " + i, Arrays.equals(
+						exp, out.toByteArray()));
+
+				// Page prolog must fill the gap to the previous page
+				List<AfpRecord> pageProlog = reader.getPageProlog(i);
+				int first = i == 0 ? index.getPageBegin(i) : index
+						.getPageEnd(i - 1) + 1;
+				assertEquals(index.getPageBegin(i) - first, pageProlog.size());
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			try {
+				if (raf != null) {
+					raf.close();
+				}
+				if (reader != null) {
+					reader.close();
+				}
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+}
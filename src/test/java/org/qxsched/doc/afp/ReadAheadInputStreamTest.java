@@ -0,0 +1,133 @@
+package org.qxsched.doc.afp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link ReadAheadInputStreamTest} tests class
+ * {@link ReadAheadInputStream}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class ReadAheadInputStreamTest extends TestCase {
+
+	private static Logger LOG = Logger
+			.getLogger(ReadAheadInputStreamTest.class);
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	// Reads the supplied stream fully
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buff = new byte[1000];
+		for (int n = in.read(buff); n > -1; n = in.read(buff)) {
+			out.write(buff, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	public void test1() {
+
+		InputStream in = null;
+		InputStream inAhead = null;
+		try {
+
+			// Read plain and ahead with blocks not aligned to reads
+			in = new FileInputStream(sample1In);
+			byte[] plain = readFully(in);
+			inAhead = new ReadAheadInputStream(new FileInputStream(sample1In),
+					4093, 2);
+			byte[] ahead = readFully(inAhead);
+
+			// Compare
+			assertEquals(sample1In.length(), ahead.length);
+			for (int i = 0; i < plain.length; i++) {
+				assertEquals("Byte " + i, plain[i], ahead[i]);
+			}
+			assertEquals(-1, inAhead.read());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			try {
+				if (in != null) {
+					in.close();
+				}
+				if (inAhead != null) {
+					inAhead.close();
+				}
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+
+	public void test2() {
+
+		AfpFactory fact = null;
+		try {
+
+			// Props reading ahead
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			props.setReadBufferSize(0x10000 + 3);
+			props.setReadAheadDepth(3);
+
+			// Read and write all records
+			fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(sample1In);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int cnt = 0;
+			for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+					.createAfpRecord()) {
+				rec.write(out, props);
+				cnt++;
+			}
+			assertEquals(272, cnt);
+			assertEquals(sample1In.length(), out.size());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			try {
+				if (fact != null) {
+					fact.close();
+				}
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+}
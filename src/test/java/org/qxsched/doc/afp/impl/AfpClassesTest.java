@@ -0,0 +1,69 @@
+package org.qxsched.doc.afp.impl;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.AfpFactory;
+import org.qxsched.doc.afp.AfpRecord;
+import org.qxsched.doc.afp.GenericAfpRecord;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpClassesTest} tests class {@link AfpClasses}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpClassesTest extends TestCase {
+
+	private static Logger LOG = Logger.getLogger(AfpClassesTest.class);
+
+	public void test1() {
+
+		try {
+
+			// Creators of this package
+			AfpClasses classes = AfpClasses.instance();
+			assertNotNull(classes.getAfpRecordCreator(0xD3A090));
+			assertNotNull(classes.getAfpRecordCreator(0xD3EEEE));
+			assertNotNull(classes.getAfpTripletCreator(0x02));
+			assertNull(classes.getAfpTripletCreator(0x100));
+
+			// Unknown SFID is returned as is
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			AfpRecord rec = new GenericAfpRecord(0xD3A8A8, 0, 0, new byte[0]);
+			for (int i = 0; i < 3; i++) {
+				assertSame(rec, classes.instantiateSpecific(rec, fact));
+			}
+
+			// NOP is created by direct call
+			rec = new GenericAfpRecord(0xD3EEEE, 0, 0, new byte[] { 0x40 });
+			assertTrue(classes.instantiateSpecific(rec, fact)
+					instanceof AfpRecordNOP);
+
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+			fail(e.getMessage());
+		}
+	}
+}
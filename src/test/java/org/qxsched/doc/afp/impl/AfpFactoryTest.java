@@ -0,0 +1,100 @@
+package org.qxsched.doc.afp.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.AfpReadWriteProperties;
+import org.qxsched.doc.afp.AfpRecord;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link AfpFactoryTest} tests class {@link AfpFactory}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class AfpFactoryTest extends TestCase {
+
+	private static Logger LOG = Logger.getLogger(AfpFactoryTest.class);
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	public void test1() {
+
+		InputStream in = null;
+		try {
+
+			// Props with smallest read buffer
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			props.setReadBufferSize(0x10000 + 3);
+
+			// Stream returning few bytes at a time and nothing available, as
+			// pipes do
+			in = new FilterInputStream(new FileInputStream(sample1In)) {
+				@Override
+				public int available() {
+					return 0;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					return super.read(b, off, Math.min(len, 7));
+				}
+			};
+			AfpFactory fact = new AfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputStream(in);
+
+			// Read and write all records
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int cnt = 0;
+			for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+					.createAfpRecord()) {
+				rec.write(out, props);
+				cnt++;
+			}
+			assertEquals(272, cnt);
+			assertEquals(sample1In.length(), out.size());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			try {
+				if (in != null) {
+					in.close();
+				}
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+}
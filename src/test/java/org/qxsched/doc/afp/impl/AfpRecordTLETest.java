@@ -180,4 +180,36 @@ public class AfpRecordTLETest extends TestCase {
 			fail(e.getMessage());
 		}
 	}
-}
\ No newline at end of file
+
+	public void test_3() {
+
+		try {
+
+			// Create AfpFactory converting lazily
+			AfpReadWriteProperties arwProps = new AfpReadWriteProperties();
+			arwProps.setConvertLazy(true);
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(arwProps);
+			fact.setInputFile(TLE_SAMPLE);
+
+			// Read generic record
+			AfpRecord rec = fact.createAfpRecord();
+			fact.close();
+			assertFalse("Expected generic record",
+					rec instanceof AfpRecordTLE);
+
+			// Convert on first access and cache
+			AfpRecordTLE afpRecordTLE = rec.as(AfpRecordTLE.class);
+			assertNotNull("Expected TLE record", afpRecordTLE);
+			assertSame(afpRecordTLE, rec.as(AfpRecordTLE.class));
+			assertSame(rec, rec.as(AfpRecord.class));
+			assertNull(rec.as(AfpRecordNOP.class));
+			LOG.info("AttName: " + afpRecordTLE.getAttName());
+			LOG.info("AttVal: " + afpRecordTLE.getAttVal());
+
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+			fail(e.getMessage());
+		}
+	}
+}
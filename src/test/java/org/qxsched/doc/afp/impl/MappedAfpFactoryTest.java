@@ -0,0 +1,149 @@
+package org.qxsched.doc.afp.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.AfpReadWriteProperties;
+import org.qxsched.doc.afp.AfpRecord;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link MappedAfpFactoryTest} tests class {@link MappedAfpFactory}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class MappedAfpFactoryTest extends TestCase {
+
+	private static Logger LOG = Logger.getLogger(MappedAfpFactoryTest.class);
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	public void test1() {
+
+		InputStream in = null;
+		MappedAfpFactory mapped = new MappedAfpFactory();
+		try {
+
+			// Props
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+
+			// Stream factory
+			AfpFactory fact = new AfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			in = new BufferedInputStream(new FileInputStream(sample1In));
+			fact.setInputStream(in);
+
+			// Mapped factory, small windows to force remapping
+			mapped.setAfpReadWriteProperties(props);
+			mapped.setWindowSize(0x10000 + 3);
+			mapped.setInputFile(sample1In);
+
+			// Compare records
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int cnt = 0;
+			for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+					.createAfpRecord()) {
+
+				AfpRecord recMapped = mapped.createAfpRecord();
+				assertNotNull("Expected mapped record " + cnt, recMapped);
+				assertEquals(rec.getSFIdentifier(), recMapped.getSFIdentifier());
+				assertEquals(rec.getLength(), recMapped.getLength());
+				assertEquals(rec.getFlags(), recMapped.getFlags());
+				assertEquals(rec.getReserved(), recMapped.getReserved());
+
+				// Data slice must be read-only and equal to the stream data
+				ByteBuffer buff = recMapped.getDataBuffer();
+				assertTrue("Expected read-only data", buff.isReadOnly());
+				assertEquals(ByteBuffer.wrap(rec.getData()), buff);
+
+				recMapped.write(out, props);
+				cnt++;
+			}
+			assertNull("Expected no more mapped records", mapped
+					.createAfpRecord());
+			assertEquals(sample1In.length(), out.size());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			try {
+				if (in != null) {
+					in.close();
+				}
+				mapped.close();
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+
+	public void test2() {
+
+		MappedAfpFactory mapped = new MappedAfpFactory();
+		AfpFactory fact = new AfpFactory();
+		try {
+
+			// Props returning TLE records only
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setReadDataNone();
+			props.setReadData(0xD3A090);
+			props.setReturnSkipped(false);
+
+			// Read from both factories
+			AfpFactory[] facts = new AfpFactory[] { fact, mapped };
+			for (int i = 0; i < facts.length; i++) {
+				facts[i].setAfpReadWriteProperties(props);
+				facts[i].setInputFile(sample1In);
+				int cnt = 0;
+				for (AfpRecord rec = facts[i].createAfpRecord(); rec != null; rec = facts[i]
+						.createAfpRecord()) {
+					assertEquals(0xD3A090, rec.getSFIdentifier());
+					assertEquals(rec.getLength() - 8, rec.getData().length);
+					cnt++;
+				}
+				assertEquals(44, cnt);
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			try {
+				fact.close();
+				mapped.close();
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+}
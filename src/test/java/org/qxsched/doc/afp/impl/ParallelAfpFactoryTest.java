@@ -0,0 +1,106 @@
+package org.qxsched.doc.afp.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.AfpReadWriteProperties;
+import org.qxsched.doc.afp.AfpRecord;
+import org.qxsched.doc.afp.AfpRecordCursor;
+import org.qxsched.doc.afp.GenericAfpRecord;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Class {@link ParallelAfpFactoryTest} tests class {@link ParallelAfpFactory}.
+ * 
+ * @author Vincenzo Zocca
+ */
+public class ParallelAfpFactoryTest extends TestCase {
+
+	private static Logger LOG = Logger.getLogger(ParallelAfpFactoryTest.class);
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	public void test1() {
+
+		InputStream in = null;
+		ParallelAfpFactory parallel = new ParallelAfpFactory();
+		try {
+
+			// Props
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+
+			// Stream factory
+			AfpFactory fact = new AfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			in = new BufferedInputStream(new FileInputStream(sample1In));
+			fact.setInputStream(in);
+
+			// Parallel factory, small chunks to force resynchronization
+			parallel.setAfpReadWriteProperties(props);
+			parallel.setThreads(3);
+			parallel.setChunkSize(AfpRecordCursor.RECORD_MAX);
+			parallel.setInputFile(sample1In);
+
+			// Compare records
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int cnt = 0;
+			for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+					.createAfpRecord()) {
+
+				AfpRecord recParallel = parallel.createAfpRecord();
+				assertNotNull("Expected parallel record " + cnt, recParallel);
+				if (rec.getClass() != GenericAfpRecord.class) {
+					assertEquals(rec.getClass(), recParallel.getClass());
+				}
+				assertEquals(rec.getSFIdentifier(), recParallel
+						.getSFIdentifier());
+				assertEquals(rec.getLength(), recParallel.getLength());
+				recParallel.write(out, props);
+				cnt++;
+			}
+			assertNull("Expected no more parallel records", parallel
+					.createAfpRecord());
+			assertEquals(sample1In.length(), out.size());
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		} finally {
+			try {
+				if (in != null) {
+					in.close();
+				}
+				parallel.close();
+			} catch (Exception e) {
+				LOG.error(e.getMessage(), e);
+			}
+		}
+	}
+}
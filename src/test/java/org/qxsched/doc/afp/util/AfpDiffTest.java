@@ -0,0 +1,98 @@
+package org.qxsched.doc.afp.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.qxsched.doc.afp.AfpEditor;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+public class AfpDiffTest extends TestCase {
+
+	private static final int BPG = 0xD3A8AF;
+
+	private static final int NOP = 0xD3EEEE;
+
+	private static final String NL = System.getProperty("line.separator");
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	private static File sample1Out = new File(
+			"target/test-classes/sample1-diff.afp");
+
+	// Compares the sample with the edited sample
+	private static String diff(File fileB, boolean ignoreNop, int max,
+			int threads) throws Exception {
+		AfpDiff diff = new AfpDiff(sample1In, fileB);
+		if (ignoreNop) {
+			diff.addIgnore(NOP);
+		}
+		diff.setMaxDifferences(max);
+		diff.setThreads(threads);
+		StringWriter sw = new StringWriter();
+		BufferedWriter out = new BufferedWriter(sw);
+		int n = diff.run(out);
+		out.close();
+		String ret = sw.toString();
+		assertEquals(n, ret.length() == 0 ? 0 : ret.split(NL).length);
+		return ret;
+	}
+
+	public void test1() {
+
+		try {
+
+			// Insert a NOP record at the start of each page
+			AfpEditor editor = new AfpEditor();
+			editor.insertAfter(BPG, AfpEditor.constant(AfpEditor.nop("x")));
+			FileInputStream in = new FileInputStream(sample1In);
+			FileOutputStream out = new FileOutputStream(sample1Out);
+			editor.run(in.getChannel(), out.getChannel());
+			in.close();
+			out.close();
+
+			// Equal files
+			assertEquals("", diff(sample1In, false, 10, 1));
+
+			// Equal if NOP records are ignored
+			assertEquals("", diff(sample1Out, true, 10, 1));
+			assertEquals("", diff(sample1Out, true, 10, 4));
+
+			// Different, stopping at the maximum
+			String diff1 = diff(sample1Out, false, 1000, 1);
+			assertTrue(diff1.startsWith("a#"));
+			assertTrue(diff1.indexOf("<> b#") > 0);
+			assertEquals(diff1, diff(sample1Out, false, 1000, 4));
+			assertEquals(3, diff(sample1Out, false, 3, 4).split(NL).length);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}
@@ -1,10 +1,14 @@
 package org.qxsched.doc.afp.util;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.TestCase;
 
 import org.apache.log4j.Logger;
+import org.qxsched.doc.afp.FileBytes;
 
 /*
  * 
@@ -42,6 +46,20 @@ public class AfpDumpTest extends TestCase {
 	// private static File sample1Out = new File(sample1In.getPath() + ".out");
 	// private static File sample1Dump = new File(sample1In.getPath() +
 	// ".dump");
+	private static File sample1Serial = new File(sample1In.getPath()
+			+ ".serial.dump");
+	private static File sample1Threads = new File(sample1In.getPath()
+			+ ".threads.dump");
+
+	// Dumps the sample file with the supplied options and threads
+	private static void dump(String[] opts, String threads, File out)
+			throws Exception {
+		List<String> arg = new ArrayList<String>(Arrays.asList(opts));
+		arg.addAll(Arrays.asList(new String[] { "--md-thold", "20", "-c",
+				"tle,nop", "--threads", threads, "-o", out.getPath(),
+				sample1In.getPath() }));
+		new AfpDump(arg.toArray(new String[arg.size()])).run();
+	}
 
 	public void test1() {
 
@@ -60,4 +78,25 @@ public class AfpDumpTest extends TestCase {
 			fail(e.getMessage());
 		}
 	}
-}
\ No newline at end of file
+
+	public void testThreads() {
+
+		try {
+
+			// Dump serially and on threads, with and without grouping
+			String[][] args = { {}, { "-g" } };
+			for (String[] arg : args) {
+				dump(arg, "1", sample1Serial);
+				dump(arg, "4", sample1Threads);
+
+				// Compare
+				assertTrue("Expected identical dumps", Arrays.equals(FileBytes
+						.read(sample1Serial), FileBytes.read(sample1Threads)));
+			}
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}
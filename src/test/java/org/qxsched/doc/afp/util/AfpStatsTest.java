@@ -0,0 +1,97 @@
+package org.qxsched.doc.afp.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.qxsched.doc.afp.AfpEventParser;
+import org.qxsched.doc.afp.AfpFactory;
+import org.qxsched.doc.afp.AfpReadWriteProperties;
+import org.qxsched.doc.afp.AfpRecord;
+
+/*
+ * 
+ * Copyright 2009, 2010, 2011, 2015, 2016 Vincenzo Zocca
+ * 
+ * This file is part of Java library org.qxsched.doc.afp.
+ *
+ * Java library org.qxsched.doc.afp is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Java library org.qxsched.doc.afp is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Java library org.qxsched.doc.afp.
+ * If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+public class AfpStatsTest extends TestCase {
+
+	private static final int TLE = 0xD3A090;
+
+	private static final String NL = System.getProperty("line.separator");
+
+	private static File sample1In = new File("target/test-classes/sample1.afp");
+
+	public void test1() {
+
+		try {
+
+			// Collect
+			AfpStats stats = new AfpStats(1);
+			AfpEventParser.parse(sample1In, stats);
+			assertEquals(272, stats.getRecordCount());
+			assertEquals(2, stats.getPageCount());
+			assertEquals(1, stats.getDocumentCount());
+			assertEquals(44, stats.getCount(TLE));
+			assertEquals(1, stats.getLargestPages().length);
+
+			// Compare with records read by the factory
+			AfpReadWriteProperties props = new AfpReadWriteProperties();
+			props.setConvertSpecificNone();
+			AfpFactory fact = AfpFactory.createAfpFactory();
+			fact.setAfpReadWriteProperties(props);
+			fact.setInputFile(sample1In);
+			long total = 0;
+			long tle = 0;
+			int tleMax = 0;
+			for (AfpRecord rec = fact.createAfpRecord(); rec != null; rec = fact
+					.createAfpRecord()) {
+				int len = rec.getLength() - 8;
+				total += len;
+				if (rec.getSFIdentifier() == TLE) {
+					tle += len;
+					tleMax = Math.max(tleMax, len);
+				}
+			}
+			fact.close();
+			assertEquals(total, stats.getTotalBytes());
+			assertEquals(tle, stats.getBytes(TLE));
+			assertEquals(tleMax, stats.getMaxBytes(TLE));
+
+			// Write
+			StringWriter sw = new StringWriter();
+			BufferedWriter out = new BufferedWriter(sw);
+			stats.write(out);
+			out.close();
+			String str = sw.toString();
+			assertTrue(str.indexOf("sfid\t0xD3A090\tTLE\t44\t" + tle + "\t"
+					+ tleMax + "\t") > -1);
+			assertTrue(str.indexOf("total\tpages\t2" + NL) > -1);
+			assertTrue(str.endsWith(NL));
+			assertEquals(1, str.split("page\t").length - 1);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+}